@@ -0,0 +1,39 @@
+package com.javasharp.benchmarks;
+
+import com.javasharp.model.Length;
+import com.javasharp.model.Tuplet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link Length#getLength(int, Tuplet)} over every length, number of dots and tuplet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LengthBenchmark
+{
+    @Benchmark
+    public void getAllLengths(Blackhole blackhole)
+    {
+        for (Length length : Length.values())
+        {
+            for (int dots = 0; dots <= length.getMaxDots(); dots++)
+            {
+                for (Tuplet tuplet : Tuplet.values())
+                {
+                    blackhole.consume(length.getLength(dots, tuplet));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.javasharp.benchmarks;
+
+import com.javasharp.model.Length;
+import com.javasharp.model.Measure;
+import com.javasharp.model.MusicException;
+import com.javasharp.model.Note;
+import com.javasharp.model.NoteBuffer;
+import com.javasharp.model.Part;
+import com.javasharp.model.Rest;
+import com.javasharp.model.Score;
+import com.javasharp.model.ScoreCompiler;
+import com.javasharp.model.ScoreFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the model and the MIDI pipeline on generated scores of 1000, 10000 and 100000 measures. Each score has
+ * {@value #PARTS} parts with the measures spread evenly between them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class ScoreBenchmark
+{
+    private static final int PARTS = 4;
+    private static final int NOTES = 8;
+    
+    @Param({ "1000", "10000", "100000" })
+    private int              measures;
+    
+    private Score            score;
+    private Measure          last;
+    private File             file;
+    
+    
+    @Setup(Level.Trial)
+    public void setUp()
+        throws IOException,
+        MusicException
+    {
+        score = createScore(measures);
+        last = (Measure)((Part)score.getChild(PARTS - 1)).getChild(measures / PARTS - 1);
+        file = File.createTempFile("benchmark", ScoreFile.FILE_EXTENSION);
+        ScoreFile.write(score, file);
+    }
+    
+    
+    @TearDown(Level.Iteration)
+    public void clearHistory()
+    {
+        // The edits made by getLength and transpose would otherwise pile up in the undo history
+        score.getHistory().clear();
+    }
+    
+    
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+    
+    
+    @Benchmark
+    public int getLength()
+    {
+        // Adding and removing a note makes every cached length on the way up stale
+        last.addChild(new Note(Length.EIGHTH, 0));
+        last.removeChild(last.getChildCount() - 1);
+        return score.getLength();
+    }
+    
+    
+    @Benchmark
+    public Object compile()
+        throws MusicException
+    {
+        return ScoreCompiler.compile(score);
+    }
+    
+    
+    @Benchmark
+    public void transpose()
+    {
+        score.transpose(1);
+        score.transpose(-1);
+    }
+    
+    
+    @Benchmark
+    public void save()
+        throws MusicException
+    {
+        ScoreFile.write(score, file);
+    }
+    
+    
+    @Benchmark
+    public void load(Blackhole blackhole)
+        throws MusicException
+    {
+        Score loaded = ScoreFile.read(file);
+        // Parts are read lazily, so look into each of them to read it all
+        for (int i = 0; i < loaded.getChildCount(); i++)
+        {
+            blackhole.consume(((Part)loaded.getChild(i)).getChildCount());
+        }
+    }
+    
+    
+    /**
+     * Creates a score of packed measures of eighth notes and rests, spread evenly over the parts.
+     */
+    private static Score createScore(int measures)
+    {
+        Score score = new Score();
+        for (int p = 0; p < PARTS; p++)
+        {
+            Part part = new Part(null, p, score.getScoreContext());
+            for (int m = 0; m < measures / PARTS; m++)
+            {
+                Measure measure = new Measure(new NoteBuffer());
+                for (int n = 0; n < NOTES; n++)
+                {
+                    int staffPos = (n + m) % 9 - 4;
+                    measure.addChild(n % 5 == 4 ? new Rest(Length.EIGHTH, 0) : new Note(Length.EIGHTH, 0, staffPos));
+                }
+                part.addChild(measure);
+            }
+            score.addChild(part);
+        }
+        return score;
+    }
+}
@@ -0,0 +1,193 @@
+package com.javasharp.controller;
+
+import com.javasharp.model.MusicException;
+import com.javasharp.model.Score;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts every score under a folder to another format without opening any windows. Usage:
+ * 
+ * <pre>
+ * BatchConverter &lt;score|notation|midi|wave&gt; &lt;input folder&gt; &lt;output folder&gt; [workers]
+ * </pre>
+ * 
+ * Score files, notation files and MIDI files are picked up from the input folder and all folders below it, and
+ * written to the same place under the output folder with the extension of the new format. Files are converted by a
+ * pool of workers, one per core unless given. A file is only handed out when a worker is free, so no more scores than
+ * there are workers are ever in memory at once, however large the catalog. The time each file took is printed as it
+ * finishes.
+ * <p>
+ * Converting to wave renders offline, which needs the JDK's synthesizer exported to the program. Run it headless with
+ * the BatchConverter launch configuration, or from the command line with:
+ * 
+ * <pre>
+ * java -Djava.awt.headless=true --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED \
+ *     -cp bin com.javasharp.controller.BatchConverter wave &lt;input folder&gt; &lt;output folder&gt;
+ * </pre>
+ */
+public final class BatchConverter
+{
+    private static final String USAGE           =
+        "Usage: BatchConverter <score|notation|midi|wave> <input folder> <output folder> [workers]";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final ScoreFormat   format;
+    private final Path          input;
+    private final Path          output;
+    private final int           workers;
+    private final PrintStream   report;
+    private final AtomicInteger converted;
+    private final AtomicInteger failed;
+    
+    
+    public BatchConverter(ScoreFormat format, Path input, Path output, int workers, PrintStream report)
+    {
+        this.format = format;
+        this.input = input;
+        this.output = output;
+        this.workers = workers;
+        this.report = report;
+        converted = new AtomicInteger();
+        failed = new AtomicInteger();
+    }
+    
+    
+    public static void main(String[] args)
+    {
+        // Rendering and conversion never need a display, and a server may not have one
+        System.setProperty("java.awt.headless", "true");
+        
+        ScoreFormat format = args.length >= 3 ? ScoreFormat.forName(args[0]) : null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        try
+        {
+            if (args.length > 3)
+            {
+                workers = Integer.parseInt(args[3]);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            workers = 0;
+        }
+        if (format == null || workers < 1 || args.length > 4)
+        {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        
+        BatchConverter converter =
+            new BatchConverter(format, new File(args[1]).toPath(), new File(args[2]).toPath(), workers, System.out);
+        try
+        {
+            System.exit(converter.run() ? 0 : 1);
+        }
+        catch (MusicException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException e)
+        {
+            System.exit(1);
+        }
+    }
+    
+    
+    /**
+     * Converts every score under the input folder, returning once all of them are done.
+     * 
+     * @return true if every file was converted
+     * @throws MusicException
+     *             if the input folder cannot be listed
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for a free worker
+     */
+    public boolean run()
+        throws MusicException,
+        InterruptedException
+    {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input))
+        {
+            files = walk.filter(path -> Files.isRegularFile(path) && ScoreFormat.canRead(path.toFile()))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to list " + input, e);
+        }
+        
+        long started = System.nanoTime();
+        Semaphore freeWorkers = new Semaphore(workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try
+        {
+            for (Path file : files)
+            {
+                freeWorkers.acquire();
+                executor.execute(() -> {
+                    try
+                    {
+                        convert(file);
+                    }
+                    finally
+                    {
+                        freeWorkers.release();
+                    }
+                });
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        
+        report.printf("%d converted, %d failed in %.1f ms with %d workers%n", converted.get(), failed.get(),
+            (System.nanoTime() - started) / NANOS_PER_MILLI, workers);
+        return failed.get() == 0;
+    }
+    
+    
+    private void convert(Path file)
+    {
+        Path relative = input.relativize(file);
+        long started = System.nanoTime();
+        try
+        {
+            Path target = output.resolve(relative).resolveSibling(getTargetName(file));
+            Files.createDirectories(target.getParent());
+            Score score = ScoreFormat.read(file.toFile());
+            format.write(score, target.toFile());
+            converted.incrementAndGet();
+            report.printf("%10.1f ms  %s%n", (System.nanoTime() - started) / NANOS_PER_MILLI, relative);
+        }
+        catch (IOException | MusicException | RuntimeException e)
+        {
+            failed.incrementAndGet();
+            report.printf("%10s     %s: %s%n", "FAILED", relative, e.getMessage());
+        }
+    }
+    
+    
+    private String getTargetName(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + format.getExtension();
+    }
+}
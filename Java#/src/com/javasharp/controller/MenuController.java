@@ -1,65 +1,310 @@
-package com.javasharp.controller;
-
-import com.javasharp.view.JavaSharp;
-
-public final class MenuController
-{
-    
-    private JavaSharp view;
-    
-    
-    public MenuController(JavaSharp view)
-    {
-        this.view = view;
-    }
-    
-    
-    public void newMenuItem()
-    {
-        
-    }
-    
-    
-    public void openMenuItem()
-    {
-        
-    }
-    
-    
-    public void saveMenuItem()
-    {
-        
-    }
-    
-    
-    public void exportMenuItem()
-    {
-        
-    }
-    
-    
-    public void printMenuItem()
-    {
-        
-    }
-    
-    
-    public void exitMenuItem()
-    {
-        // TODO add unsaved work prompt
-        System.exit(0);
-    }
-    
-    
-    public void showHelpMenuItem()
-    {
-        view.showHelpDialog();
-    }
-    
-    
-    public void aboutMenuItem()
-    {
-        view.showAboutDialog();
-    }
-    
-}
+package com.javasharp.controller;
+
+import com.javasharp.model.EditHistory;
+import com.javasharp.model.EditJournal;
+import com.javasharp.model.MusicException;
+import com.javasharp.model.Score;
+import com.javasharp.model.util.MidiUtils;
+import com.javasharp.view.JavaSharp;
+import java.io.File;
+import javax.swing.JOptionPane;
+
+public final class MenuController
+{
+    
+    private JavaSharp   view;
+    private Score       score;
+    private File        scoreFile;
+    private EditJournal journal;
+    
+    
+    public MenuController(JavaSharp view)
+    {
+        this.view = view;
+    }
+    
+    
+    public void newMenuItem()
+    {
+        
+    }
+    
+    
+    public void openMenuItem()
+    {
+        if (!confirmDiscardChanges())
+        {
+            return;
+        }
+        File file = view.showOpenDialog();
+        if (file == null)
+        {
+            return;
+        }
+        try
+        {
+            Score opened = ScoreFormat.read(file);
+            // An imported score is saved as a new score file, never over the MIDI or notation file
+            setScore(opened, ScoreFormat.SCORE.accepts(file) ? file : null);
+            view.showScore(score);
+            view.postMessage("Opened " + file.getName());
+        }
+        catch (MusicException e)
+        {
+            view.postError(e.getMessage());
+        }
+    }
+    
+    
+    public void saveMenuItem()
+    {
+        if (score == null)
+        {
+            view.postError("There is no score to save");
+            return;
+        }
+        save();
+    }
+    
+    
+    public void exportMenuItem()
+    {
+        if (score == null)
+        {
+            view.postError("There is no score to export");
+            return;
+        }
+        File file = view.showExportDialog();
+        if (file == null)
+        {
+            return;
+        }
+        
+        // Rendering is faster than real time but still takes seconds for a long score, so keep it off the EDT. It
+        // renders a copy, since the score can be edited while it runs.
+        final Score exported = score.snapshot();
+        view.postMessage("Exporting " + file.getName() + "...");
+        Thread thread = new Thread(() -> {
+            try
+            {
+                ScoreFormat.WAVE.write(exported, file);
+                view.postMessage("Exported " + file.getName());
+            }
+            catch (MusicException e)
+            {
+                view.postError(e.getMessage());
+            }
+        }, "Java# export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    
+    public void undoMenuItem()
+    {
+        if (score == null || !score.getHistory().undo())
+        {
+            view.postMessage("Nothing to undo");
+            return;
+        }
+        showEdit();
+    }
+    
+    
+    public void redoMenuItem()
+    {
+        if (score == null || !score.getHistory().redo())
+        {
+            view.postMessage("Nothing to redo");
+            return;
+        }
+        showEdit();
+    }
+    
+    
+    public void zoomInMenuItem()
+    {
+        view.zoomIn();
+    }
+    
+    
+    public void zoomOutMenuItem()
+    {
+        view.zoomOut();
+    }
+    
+    
+    public void printMenuItem()
+    {
+        
+    }
+    
+    
+    public void exitMenuItem()
+    {
+        if (!confirmDiscardChanges())
+        {
+            return;
+        }
+        if (journal != null)
+        {
+            journal.discard();
+        }
+        MidiUtils.closeSynthesizer();
+        System.exit(0);
+    }
+    
+    
+    /**
+     * Offers to recover the work that was left unsaved when the program last stopped without exiting cleanly. Work the
+     * user does not want is thrown away.
+     */
+    public void recoverUnsavedWork()
+    {
+        for (EditJournal.RecoverableSession session : EditJournal.findRecoverable())
+        {
+            File file = session.getSavedFile();
+            String name = file != null ? file.getName() : "an unsaved score";
+            int choice = view.showRecoverDialog(name, session.getLastModified());
+            if (choice == JOptionPane.NO_OPTION)
+            {
+                session.discard();
+            }
+            if (choice != JOptionPane.YES_OPTION)
+            {
+                continue;
+            }
+            try
+            {
+                EditJournal recovered = session.recover();
+                if (journal != null)
+                {
+                    journal.discard();
+                }
+                journal = recovered;
+                score = recovered.getScore();
+                scoreFile = recovered.getSavedFile();
+                view.showScore(score);
+                view.postMessage("Recovered the unsaved work on " + name);
+                return;
+            }
+            catch (MusicException e)
+            {
+                view.postError(e.getMessage());
+            }
+        }
+    }
+    
+    
+    /**
+     * Shows the score after an edit, laying it out again only from the measure the edit changed if it changed just one.
+     */
+    private void showEdit()
+    {
+        int measure = score.getHistory().getChangedMeasure();
+        if (measure == EditHistory.ALL_MEASURES)
+        {
+            view.showScore(score);
+        }
+        else
+        {
+            view.showMeasureChanged(measure);
+        }
+    }
+    
+    
+    /**
+     * Saves the score to its file, asking for one if it has none yet.
+     * 
+     * @return true if the score was saved
+     */
+    private boolean save()
+    {
+        File file = scoreFile != null ? scoreFile : view.showSaveDialog();
+        if (file == null)
+        {
+            return false;
+        }
+        try
+        {
+            ScoreFormat.SCORE.write(score, file);
+            scoreFile = file;
+            view.postMessage("Saved " + file.getName());
+        }
+        catch (MusicException e)
+        {
+            view.postError(e.getMessage());
+            return false;
+        }
+        if (journal != null)
+        {
+            try
+            {
+                journal.markSaved(file);
+            }
+            catch (MusicException e)
+            {
+                view.postError("Autosave stopped: " + e.getMessage());
+                journal.close();
+                journal = null;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Asks whether to save the score first if it has unsaved changes.
+     * 
+     * @return false if the user cancelled, or the score could not be saved
+     */
+    private boolean confirmDiscardChanges()
+    {
+        if (score == null || (journal != null ? !journal.isModified() : !score.getHistory().canUndo()))
+        {
+            return true;
+        }
+        int choice = view.showSaveChangesDialog(scoreFile != null ? scoreFile.getName() : score.getTitle());
+        if (choice == JOptionPane.YES_OPTION)
+        {
+            return save();
+        }
+        return choice == JOptionPane.NO_OPTION;
+    }
+    
+    
+    /**
+     * Makes a score that has just been opened the current one, and starts autosaving it in place of the last one.
+     */
+    private void setScore(Score newScore, File file)
+    {
+        if (journal != null)
+        {
+            journal.discard();
+            journal = null;
+        }
+        score = newScore;
+        scoreFile = file;
+        try
+        {
+            journal = EditJournal.start(score, file);
+        }
+        catch (MusicException e)
+        {
+            view.postError("Autosave is off: " + e.getMessage());
+        }
+    }
+    
+    
+    public void showHelpMenuItem()
+    {
+        view.showHelpDialog();
+    }
+    
+    
+    public void aboutMenuItem()
+    {
+        view.showAboutDialog();
+    }
+    
+}
@@ -0,0 +1,155 @@
+package com.javasharp.controller;
+
+import com.javasharp.model.MidiImporter;
+import com.javasharp.model.MusicException;
+import com.javasharp.model.NotationDocument;
+import com.javasharp.model.Score;
+import com.javasharp.model.ScoreCompiler;
+import com.javasharp.model.ScoreFile;
+import com.javasharp.model.playback.OfflineRenderer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import javax.sound.midi.MidiSystem;
+
+/**
+ * The formats a score can be written in. Opening, saving and exporting in the editor and the batch converter all go
+ * through here, so a file converted in a batch is the same as one exported by hand.
+ */
+public enum ScoreFormat
+{
+    SCORE(ScoreFile.FILE_EXTENSION, "Java# score"),
+    NOTATION(NotationDocument.FILE_EXTENSION, "Java# notation"),
+    MIDI(".mid", "MIDI file"),
+    WAVE(".wav", "WAV audio");
+    
+    private static final int MULTI_TRACK_FILE = 1;
+    
+    private final String     extension;
+    private final String     description;
+    
+    
+    private ScoreFormat(String extension, String description)
+    {
+        this.extension = extension;
+        this.description = description;
+    }
+    
+    
+    public String getExtension()
+    {
+        return extension;
+    }
+    
+    
+    public String getDescription()
+    {
+        return description;
+    }
+    
+    
+    /**
+     * Writes a score in this format.
+     * 
+     * @param score
+     *            the score to write, which must not be edited while it is written
+     * @param file
+     *            the file to write
+     * @throws MusicException
+     *             if the score cannot be converted or the file cannot be written
+     */
+    public void write(Score score, File file)
+        throws MusicException
+    {
+        switch (this)
+        {
+            case SCORE:
+                ScoreFile.write(score, file);
+                break;
+            case NOTATION:
+                NotationDocument.write(score, file);
+                break;
+            case MIDI:
+                try
+                {
+                    MidiSystem.write(ScoreCompiler.compile(score), MULTI_TRACK_FILE, file);
+                }
+                catch (IOException e)
+                {
+                    throw new MusicException("Unable to write " + file, e);
+                }
+                break;
+            default:
+                OfflineRenderer.writeWave(score, file);
+                break;
+        }
+    }
+    
+    
+    /**
+     * Checks whether a file has the extension of this format.
+     * 
+     * @param file
+     *            the file
+     * @return true if the file is named as a file of this format
+     */
+    public boolean accepts(File file)
+    {
+        return this == MIDI ? MidiImporter.accepts(file) : file.getName().toLowerCase(Locale.ROOT).endsWith(extension);
+    }
+    
+    
+    /**
+     * Checks whether a file can be opened as a score.
+     * 
+     * @param file
+     *            the file
+     * @return true if the file is a score file, a notation file or a MIDI file
+     */
+    public static boolean canRead(File file)
+    {
+        return SCORE.accepts(file) || NOTATION.accepts(file) || MIDI.accepts(file);
+    }
+    
+    
+    /**
+     * Opens a score file, or imports a notation or MIDI file.
+     * 
+     * @param file
+     *            the file to read
+     * @return the score
+     * @throws MusicException
+     *             if the file cannot be read
+     */
+    public static Score read(File file)
+        throws MusicException
+    {
+        if (MIDI.accepts(file))
+        {
+            return MidiImporter.read(file);
+        }
+        return NOTATION.accepts(file) ? NotationDocument.read(file) : ScoreFile.read(file);
+    }
+    
+    
+    /**
+     * Finds a format by its name or file extension, ignoring case.
+     * 
+     * @param name
+     *            the name or extension, with or without its dot
+     * @return the format, or null if there is none by that name
+     */
+    public static ScoreFormat forName(String name)
+    {
+        String key = name.toLowerCase(Locale.ROOT);
+        for (ScoreFormat format : values())
+        {
+            if (format.name().toLowerCase(Locale.ROOT).equals(key) || format.extension.equals(key) ||
+                format.extension.substring(1).equals(key))
+            {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.javasharp.model;
+
+/**
+ * An accidental written in front of a note. A note without one takes its pitch from the key signature.
+ */
+public enum Accidental
+{
+    NONE("None", 0),
+    DOUBLE_FLAT("Double flat", -2),
+    FLAT("Flat", -1),
+    NATURAL("Natural", 0),
+    SHARP("Sharp", 1),
+    DOUBLE_SHARP("Double sharp", 2);
+    
+    private final String name;
+    private final int    semitones;
+    
+    
+    private Accidental(String name, int semitones)
+    {
+        this.name = name;
+        this.semitones = semitones;
+    }
+    
+    
+    /**
+     * Gets how far the accidental moves a natural pitch.
+     * 
+     * @return the change in semitones, which is 0 for both {@link #NONE} and {@link #NATURAL}
+     */
+    public int getSemitones()
+    {
+        return semitones;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -1,26 +1,90 @@
-package com.javasharp.model;
-
-public enum Clef
-{
-    TREBLE("Treble", 0),
-    BASS("Bass", 0),
-    ALTO("Alto", 0),
-    TENOR("Tenor", 0);
-    
-    private final String name;
-    private final int    offset;
-    
-    
-    private Clef(String name, int offset)
-    {
-        this.name = name;
-        this.offset = offset;
-    }
-    
-    
-    @Override
-    public String toString()
-    {
-        return name;
-    }
-}
+package com.javasharp.model;
+
+public enum Clef
+{
+    TREBLE("Treble", 41),
+    BASS("Bass", 29),
+    ALTO("Alto", 35),
+    TENOR("Tenor", 33);
+    
+    private static final int   STEPS_PER_OCTAVE = 7;
+    private static final int[] MAJOR_SCALE      = { 0, 2, 4, 5, 7, 9, 11 };
+    
+    private final String       name;
+    private final int          offset;
+    
+    
+    private Clef(String name, int offset)
+    {
+        this.name = name;
+        this.offset = offset;
+    }
+    
+    
+    /**
+     * Gets the natural MIDI pitch of a staff position, where 0 is the middle line of the staff and each step is one
+     * line or space.
+     * 
+     * @param staffPos
+     *            the staff position
+     * @return the MIDI pitch, before any key signature or accidental is applied
+     */
+    public int getPitch(int staffPos)
+    {
+        return getNaturalPitch(getStep(staffPos));
+    }
+    
+    
+    /**
+     * Gets the diatonic step of a staff position, counted in lines and spaces up from the C of MIDI pitch 0.
+     * 
+     * @param staffPos
+     *            the staff position
+     * @return the step, which is the same for every clef at the same pitch
+     */
+    int getStep(int staffPos)
+    {
+        return offset + staffPos;
+    }
+    
+    
+    /**
+     * Gets the natural MIDI pitch of a diatonic step.
+     * 
+     * @param step
+     *            the step, counted up from the C of MIDI pitch 0
+     * @return the MIDI pitch
+     */
+    static int getNaturalPitch(int step)
+    {
+        int octave = Math.floorDiv(step, STEPS_PER_OCTAVE);
+        return 12 * octave + MAJOR_SCALE[Math.floorMod(step, STEPS_PER_OCTAVE)];
+    }
+    
+    
+    /**
+     * Gets the staff position of a MIDI pitch. A pitch between two natural pitches, which would need an accidental,
+     * goes on the position of the natural pitch below it.
+     * 
+     * @param pitch
+     *            the MIDI pitch
+     * @return the staff position, where 0 is the middle line of the staff
+     */
+    public int getStaffPos(int pitch)
+    {
+        int semitone = Math.floorMod(pitch, 12);
+        int degree = STEPS_PER_OCTAVE - 1;
+        while (MAJOR_SCALE[degree] > semitone)
+        {
+            degree--;
+        }
+        return STEPS_PER_OCTAVE * Math.floorDiv(pitch, 12) + degree - offset;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
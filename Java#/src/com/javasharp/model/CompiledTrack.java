@@ -0,0 +1,358 @@
+package com.javasharp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Track;
+
+/**
+ * The events a part has compiled into its track, grouped into one segment per child of the part. Edits to the part
+ * mark segments dirty, and {@link #patch(PartContext)} recompiles only those segments and shifts the ticks of the
+ * events that follow them instead of rebuilding the whole track.
+ */
+final class CompiledTrack
+    implements EventSink
+{
+    private static final int    NONE = -1;
+    
+    private final Track         track;
+    private final List<Segment> segments;
+    private final List<Segment> removedSegments;
+    private final Segment       initialState;
+    
+    private Segment             current;
+    private int                 firstDirty;
+    private int                 lastDirty;
+    
+    
+    CompiledTrack(Track track, PartContext context)
+    {
+        this.track = track;
+        segments = new ArrayList<>();
+        removedSegments = new ArrayList<>();
+        initialState = new Segment(null);
+        initialState.saveEndState(context);
+        firstDirty = NONE;
+        lastDirty = NONE;
+    }
+    
+    
+    @Override
+    public void add(MidiEvent event)
+    {
+        track.add(event);
+        if (current != null)
+        {
+            current.events.add(event);
+        }
+    }
+    
+    
+    void compileSegment(Instructable<PartContext> child, PartContext context)
+    {
+        Segment segment = new Segment(child);
+        segments.add(segment);
+        compile(segment, context);
+    }
+    
+    
+    void childInserted(int index, Instructable<PartContext> child)
+    {
+        Segment segment = new Segment(child);
+        segment.dirty = true;
+        segment.startTick = index == 0 ? 0 : segments.get(index - 1).endTick;
+        segment.endTick = segment.startTick;
+        segments.add(index, segment);
+        
+        if (lastDirty >= index)
+        {
+            lastDirty++;
+        }
+        markDirty(index);
+    }
+    
+    
+    void childRemoved(int index)
+    {
+        Segment segment = segments.remove(index);
+        removedSegments.add(segment);
+        
+        if (lastDirty > index)
+        {
+            lastDirty--;
+        }
+        if (index < segments.size())
+        {
+            markDirty(index);
+        }
+        else if (firstDirty >= segments.size())
+        {
+            // The dirty segments were all at the end and are gone, so only their events are left to remove
+            firstDirty = NONE;
+            lastDirty = NONE;
+        }
+        else
+        {
+            lastDirty = Math.min(lastDirty, segments.size() - 1);
+        }
+    }
+    
+    
+    void childChanged(int index)
+    {
+        Segment segment = segments.get(index);
+        if (!segment.dirty)
+        {
+            segment.dirty = true;
+            markDirty(index);
+        }
+    }
+    
+    
+    boolean isDirty()
+    {
+        return firstDirty != NONE || !removedSegments.isEmpty();
+    }
+    
+    
+    /**
+     * Recompiles the dirty segments and moves the events after them to their new ticks. The dirty range is checked
+     * before the track is touched, so a bad range leaves the track as it was.
+     *
+     * @param context
+     *            the context of the part that owns this track
+     */
+    void patch(PartContext context)
+    {
+        if (firstDirty >= segments.size() || lastDirty >= segments.size())
+        {
+            throw new IllegalStateException("Dirty segments " + firstDirty + " to " + lastDirty + " out of " +
+                segments.size());
+        }
+        
+        // The track only looks at its end of track event to decide whether an event can be appended, so keep it out
+        // of the way while events are moved around and put it back once they are in place
+        track.get(track.size() - 1).setTick(Long.MAX_VALUE);
+        for (Segment removed : removedSegments)
+        {
+            removeEvents(removed);
+        }
+        removedSegments.clear();
+        if (firstDirty == NONE)
+        {
+            updateEndOfTrack();
+            return;
+        }
+        
+        Segment previous = firstDirty == 0 ? initialState : segments.get(firstDirty - 1);
+        int tick = previous.endTick;
+        context.restoreState(previous);
+        for (int i = firstDirty; i < segments.size(); i++)
+        {
+            Segment segment = segments.get(i);
+            if (segment.dirty || !segment.startsWith(context))
+            {
+                int endTick = tick + segment.child.getLength();
+                removeEvents(segment);
+                shiftFrom(i + 1, endTick);
+                int bumped = bumpFrom(i + 1, endTick);
+                context.seek(tick);
+                compile(segment, context);
+                unbumpFrom(i + 1, bumped);
+            }
+            else if (segment.startTick != tick)
+            {
+                shiftFrom(i, tick);
+            }
+            else if (i > lastDirty)
+            {
+                break;
+            }
+            tick = segment.endTick;
+            context.restoreState(segment);
+        }
+        
+        firstDirty = NONE;
+        lastDirty = NONE;
+        updateEndOfTrack();
+    }
+    
+    
+    private void markDirty(int index)
+    {
+        firstDirty = firstDirty == NONE ? index : Math.min(firstDirty, index);
+        lastDirty = Math.max(lastDirty, index);
+    }
+    
+    
+    private void compile(Segment segment, PartContext context)
+    {
+        segment.saveStartState(context);
+        current = segment;
+        segment.child.instruct(context);
+        current = null;
+        segment.saveEndState(context);
+        segment.dirty = false;
+    }
+    
+    
+    private void removeEvents(Segment segment)
+    {
+        for (MidiEvent event : segment.events)
+        {
+            track.remove(event);
+        }
+        segment.events.clear();
+    }
+    
+    
+    /**
+     * Shifts every segment from the given index on so that the first of them starts at the given tick.
+     */
+    private void shiftFrom(int index, int startTick)
+    {
+        if (index >= segments.size())
+        {
+            return;
+        }
+        int delta = startTick - segments.get(index).startTick;
+        if (delta == 0)
+        {
+            return;
+        }
+        for (int i = index; i < segments.size(); i++)
+        {
+            Segment segment = segments.get(i);
+            segment.startTick += delta;
+            segment.endTick += delta;
+            for (MidiEvent event : segment.events)
+            {
+                event.setTick(event.getTick() + delta);
+            }
+        }
+    }
+    
+    
+    /**
+     * Temporarily moves the leading events of the segments from the given index on that fall on the end tick of a
+     * segment being recompiled, so that the track inserts the recompiled events before them instead of after.
+     *
+     * @return the number of events moved
+     */
+    private int bumpFrom(int index, int tick)
+    {
+        int moved = 0;
+        for (int i = index; i < segments.size(); i++)
+        {
+            for (MidiEvent event : segments.get(i).events)
+            {
+                if (event.getTick() != tick)
+                {
+                    return moved;
+                }
+                event.setTick(tick + 1);
+                moved++;
+            }
+        }
+        return moved;
+    }
+    
+    
+    private void unbumpFrom(int index, int count)
+    {
+        int moved = 0;
+        for (int i = index; i < segments.size() && moved < count; i++)
+        {
+            for (MidiEvent event : segments.get(i).events)
+            {
+                if (moved == count)
+                {
+                    return;
+                }
+                event.setTick(event.getTick() - 1);
+                moved++;
+            }
+        }
+    }
+    
+    
+    private void updateEndOfTrack()
+    {
+        int size = track.size();
+        track.get(size - 1).setTick(size > 1 ? track.get(size - 2).getTick() : 0);
+    }
+    
+    
+    static final class Segment
+    {
+        private final Instructable<PartContext> child;
+        private final List<MidiEvent>           events;
+        private boolean                         dirty;
+        
+        private int                             startTick;
+        private int                             startVolume;
+        private KeySignature                    startKeySignature;
+        private Clef                            startClef;
+        
+        private int                             endTick;
+        private int                             endVolume;
+        private KeySignature                    endKeySignature;
+        private Clef                            endClef;
+        
+        
+        private Segment(Instructable<PartContext> child)
+        {
+            this.child = child;
+            events = new ArrayList<>();
+        }
+        
+        
+        private void saveStartState(PartContext context)
+        {
+            startTick = context.getTick();
+            startVolume = context.getVolume();
+            startKeySignature = context.getKeySignature();
+            startClef = context.getClef();
+        }
+        
+        
+        private void saveEndState(PartContext context)
+        {
+            endTick = context.getTick();
+            endVolume = context.getVolume();
+            endKeySignature = context.getKeySignature();
+            endClef = context.getClef();
+        }
+        
+        
+        private boolean startsWith(PartContext context)
+        {
+            return startVolume == context.getVolume() && startKeySignature == context.getKeySignature() &&
+                startClef == context.getClef();
+        }
+        
+        
+        int getEndTick()
+        {
+            return endTick;
+        }
+        
+        
+        int getEndVolume()
+        {
+            return endVolume;
+        }
+        
+        
+        KeySignature getEndKeySignature()
+        {
+            return endKeySignature;
+        }
+        
+        
+        Clef getEndClef()
+        {
+            return endClef;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.javasharp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds what changed between two versions of a score tree by comparing content hashes, so that only the parts of the
+ * tree that changed have to be saved, laid out or compiled again. A subtree whose hash is unchanged is skipped
+ * without looking inside it, so only the groups on the way down to a change are looked into, at the cost of comparing
+ * one cached hash per child.
+ */
+public final class ContentDiff
+{
+    private ContentDiff()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Finds the changes that turn one group into another.
+     * 
+     * @param before
+     *            the old version of the group
+     * @param after
+     *            the new version of the group
+     * @return the changes, each as a run of children of a group replaced by another run, in tree order; empty if the
+     *         groups have the same content
+     */
+    public static List<Change> diff(GroupInstructable<?, ?> before, GroupInstructable<?, ?> after)
+    {
+        List<Change> changes = new ArrayList<>();
+        diff(before, after, new int[0], changes);
+        return changes;
+    }
+    
+    
+    private static void diff(GroupInstructable<?, ?> before, GroupInstructable<?, ?> after, int[] path,
+        List<Change> changes)
+    {
+        if (before.getContentHash() == after.getContentHash())
+        {
+            return;
+        }
+        
+        // Children that are unchanged at either end are matched up, which also lines up the rest after an insertion
+        int beforeCount = before.getChildCount();
+        int afterCount = after.getChildCount();
+        int start = 0;
+        while (start < beforeCount && start < afterCount && sameContent(before, after, start, start))
+        {
+            start++;
+        }
+        int beforeEnd = beforeCount;
+        int afterEnd = afterCount;
+        while (beforeEnd > start && afterEnd > start && sameContent(before, after, beforeEnd - 1, afterEnd - 1))
+        {
+            beforeEnd--;
+            afterEnd--;
+        }
+        if (start == beforeCount && start == afterCount)
+        {
+            // Every child is the same, so what differs is the group's own content, such as a part's instrument, and the
+            // group is replaced as a whole
+            changes.add(path.length == 0 ? new Change(path, 0, beforeCount, afterCount)
+                : new Change(Arrays.copyOf(path, path.length - 1), path[path.length - 1], 1, 1));
+            return;
+        }
+        
+        // Where the runs between are the same length, children that are both groups of one kind are compared inside
+        if (beforeEnd - start == afterEnd - start && canDescend(before, after, start, beforeEnd))
+        {
+            for (int i = start; i < beforeEnd; i++)
+            {
+                int[] childPath = Arrays.copyOf(path, path.length + 1);
+                childPath[path.length] = i;
+                diff((GroupInstructable<?, ?>)before.getChild(i), (GroupInstructable<?, ?>)after.getChild(i), childPath,
+                    changes);
+            }
+            return;
+        }
+        changes.add(new Change(path, start, beforeEnd - start, afterEnd - start));
+    }
+    
+    
+    private static boolean sameContent(GroupInstructable<?, ?> before, GroupInstructable<?, ?> after, int beforeIndex,
+        int afterIndex)
+    {
+        return before.getChild(beforeIndex).getContentHash() == after.getChild(afterIndex).getContentHash();
+    }
+    
+    
+    private static boolean canDescend(GroupInstructable<?, ?> before, GroupInstructable<?, ?> after, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            Instructable<?> beforeChild = before.getChild(i);
+            Instructable<?> afterChild = after.getChild(i);
+            if (!(beforeChild instanceof GroupInstructable) || beforeChild.getClass() != afterChild.getClass())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * A run of children of one group that was replaced by another run.
+     */
+    public static final class Change
+    {
+        private final int[] path;
+        private final int   index;
+        private final int   removedCount;
+        private final int   insertedCount;
+        
+        
+        private Change(int[] path, int index, int removedCount, int insertedCount)
+        {
+            this.path = path;
+            this.index = index;
+            this.removedCount = removedCount;
+            this.insertedCount = insertedCount;
+        }
+        
+        
+        /**
+         * Gets the path from the root to the group that changed, as the index of each group among its parent's
+         * children.
+         * 
+         * @return the path, empty if the root itself changed
+         */
+        public int[] getPath()
+        {
+            return path.clone();
+        }
+        
+        
+        public int getIndex()
+        {
+            return index;
+        }
+        
+        
+        public int getRemovedCount()
+        {
+            return removedCount;
+        }
+        
+        
+        public int getInsertedCount()
+        {
+            return insertedCount;
+        }
+        
+        
+        @Override
+        public String toString()
+        {
+            return Arrays.toString(path) + " at " + index + ": " + removedCount + " replaced by " + insertedCount;
+        }
+    }
+}
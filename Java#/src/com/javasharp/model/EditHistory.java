@@ -0,0 +1,261 @@
+package com.javasharp.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The edits made to a score, so that they can be undone and redone. Groups keep their children in
+ * {@link com.javasharp.model.util.PersistentList persistent lists}, so an edit only has to remember the version of the
+ * list before and after it, and the two versions share all but the few nodes on the path to the change. Undoing an
+ * edit swaps the old version back in rather than replaying anything.
+ * <p>
+ * The history is kept under a memory budget. Once the edits it holds cost more than that, the oldest are forgotten, and
+ * with them the only references to the versions of the lists that nothing newer shares.
+ * <p>
+ * Every edit made, undone or redone is also appended to the score's {@link EditJournal}, if it has one.
+ */
+public final class EditHistory
+{
+    public static final long   DEFAULT_BUDGET_BYTES = 8L << 20;
+    
+    /**
+     * The measure reported by {@link #getChangedMeasure()} for an edit that is not confined to one measure.
+     */
+    public static final int    ALL_MEASURES         = -1;
+    
+    private final long         budgetBytes;
+    private final Deque<Edit>  undoStack;
+    private final Deque<Edit>  redoStack;
+    private long               bytes;
+    private boolean            replaying;
+    private EditJournal        journal;
+    private int                changedMeasure;
+    
+    
+    public EditHistory()
+    {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+    
+    
+    /**
+     * Creates an empty history.
+     * 
+     * @param budgetBytes
+     *            roughly how many bytes the remembered edits may hold on to before the oldest are forgotten
+     */
+    public EditHistory(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+        changedMeasure = ALL_MEASURES;
+        undoStack = new ArrayDeque<>();
+        redoStack = new ArrayDeque<>();
+    }
+    
+    
+    public boolean canUndo()
+    {
+        return !undoStack.isEmpty();
+    }
+    
+    
+    public boolean canRedo()
+    {
+        return !redoStack.isEmpty();
+    }
+    
+    
+    /**
+     * Undoes the last edit that has not been undone yet.
+     * 
+     * @return false if there was nothing to undo
+     */
+    public boolean undo()
+    {
+        Edit edit = undoStack.pollLast();
+        if (edit == null)
+        {
+            return false;
+        }
+        replay(edit, false);
+        changedMeasure = edit.getChangedMeasure();
+        redoStack.addLast(edit);
+        journal(edit, false);
+        return true;
+    }
+    
+    
+    /**
+     * Makes the last undone edit again.
+     * 
+     * @return false if there was nothing to redo
+     */
+    public boolean redo()
+    {
+        Edit edit = redoStack.pollLast();
+        if (edit == null)
+        {
+            return false;
+        }
+        replay(edit, true);
+        changedMeasure = edit.getChangedMeasure();
+        undoStack.addLast(edit);
+        journal(edit, true);
+        return true;
+    }
+    
+    
+    /**
+     * Forgets every edit, such as once a score has been loaded.
+     */
+    public void clear()
+    {
+        undoStack.clear();
+        redoStack.clear();
+        bytes = 0;
+    }
+    
+    
+    /**
+     * Sets the journal that edits are appended to from now on.
+     * 
+     * @param journal
+     *            the journal, or null to stop journaling
+     */
+    void setJournal(EditJournal journal)
+    {
+        this.journal = journal;
+    }
+    
+    
+    /**
+     * Gets the measure that the last edit made, undone or redone changed, so that a view can lay out and repaint from
+     * there instead of showing the whole score again. Inserting or removing a measure counts as changing it.
+     * 
+     * @return the index of the measure in its part, or {@link #ALL_MEASURES} if the edit was not confined to one
+     */
+    public int getChangedMeasure()
+    {
+        return changedMeasure;
+    }
+    
+    
+    public int getUndoCount()
+    {
+        return undoStack.size();
+    }
+    
+    
+    /**
+     * Gets roughly how many bytes the remembered edits hold on to, not counting what the current score already holds.
+     * 
+     * @return the estimated size of the history
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+    
+    
+    /**
+     * Remembers an edit that has just been made. Edits made while another is being undone or redone are part of that
+     * one and are not remembered again.
+     * 
+     * @param edit
+     *            the edit
+     */
+    void record(Edit edit)
+    {
+        if (replaying)
+        {
+            return;
+        }
+        for (Edit undone : redoStack)
+        {
+            bytes -= undone.getBytes();
+        }
+        redoStack.clear();
+        undoStack.addLast(edit);
+        changedMeasure = edit.getChangedMeasure();
+        bytes += edit.getBytes();
+        while (bytes > budgetBytes && undoStack.size() > 1)
+        {
+            bytes -= undoStack.pollFirst().getBytes();
+        }
+        journal(edit, true);
+    }
+    
+    
+    private void journal(Edit edit, boolean forward)
+    {
+        if (journal != null)
+        {
+            journal.append(edit, forward);
+        }
+    }
+    
+    
+    private void replay(Edit edit, boolean forward)
+    {
+        replaying = true;
+        try
+        {
+            if (forward)
+            {
+                edit.redo();
+            }
+            else
+            {
+                edit.undo();
+            }
+        }
+        finally
+        {
+            replaying = false;
+        }
+    }
+    
+    
+    /**
+     * An edit that can be undone and made again.
+     */
+    abstract static class Edit
+    {
+        abstract void undo();
+        
+        
+        abstract void redo();
+        
+        
+        /**
+         * Gets roughly how many bytes this edit holds on to that the score would not hold otherwise.
+         * 
+         * @return the estimated size of the edit
+         */
+        abstract long getBytes();
+        
+        
+        /**
+         * Gets the measure that this edit changes, whichever way it is applied.
+         * 
+         * @return the index of the measure in its part, or {@link EditHistory#ALL_MEASURES}
+         */
+        abstract int getChangedMeasure();
+        
+        
+        /**
+         * Writes the change that this edit makes, or that undoing it makes, as a journal record.
+         * 
+         * @param out
+         *            the stream to write the record to
+         * @param forward
+         *            true for the edit, false for undoing it
+         * @throws MusicException
+         *             if the edit involves children that cannot be saved
+         */
+        abstract void writeTo(DataOutputStream out, boolean forward)
+            throws IOException, MusicException;
+    }
+}
@@ -0,0 +1,1137 @@
+package com.javasharp.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.sound.midi.Instrument;
+
+/**
+ * Autosaves a score as a journal of the edits made to it, so that unsaved work can be recovered after a crash.
+ * <p>
+ * Every edit, undo and redo is appended to the journal as a small record naming the group it changed by its path from
+ * the score and what was inserted into or removed from it, so autosaving costs about as much as the edit itself and
+ * nothing like rewriting the score. Records are queued in memory and written out and synced to disk together every
+ * {@value #GROUP_COMMIT_MILLIS} ms on a background thread, so a burst of edits costs a single sync and at most that
+ * much work is lost in a crash.
+ * <p>
+ * A journal is replayed on top of a base file: the score file that was last opened or saved, or a checkpoint of the
+ * score written into the autosave directory. Once the journal has grown as large as the last checkpoint, the score is
+ * checkpointed again and a new journal started on top of it, so that checkpoints cost no more over time than writing
+ * the records did, and recovery never has to replay more than about one score's worth of records. A checkpoint is
+ * skipped when the score's {@link Instructable#getContentHash() content hash} shows it is back to its base or to the
+ * saved file. Otherwise it is written on the background thread from a {@link Score#snapshot() snapshot} taken when it
+ * falls due, so editing never waits for it; the records of edits made in the meantime are held back for the journal
+ * that starts on top of it.
+ * <p>
+ * Each journal and checkpoint belongs to a numbered generation of the session, and the files of a generation are only
+ * deleted once the next one has been synced, so a crash at any point leaves at least one complete generation behind.
+ * A session is locked while it is open, and any session left in the autosave directory that nothing holds a lock on
+ * is unsaved work from a program that did not exit cleanly.
+ */
+public final class EditJournal
+{
+    public static final String             FILE_EXTENSION       = ".journal";
+    public static final File               DEFAULT_DIRECTORY    =
+        new File(new File(System.getProperty("user.home"), ".javasharp"), "autosave");
+    
+    private static final Logger            LOGGER               = Logger.getLogger(EditJournal.class.getName());
+    private static final String            LOCK_EXTENSION       = ".lock";
+    private static final int               MAGIC                = 0x4A53484A;
+    private static final short             VERSION              = 1;
+    private static final long              GROUP_COMMIT_MILLIS  = 200;
+    private static final long              MIN_CHECKPOINT_BYTES = 1L << 20;
+    private static final int               RECORD_HEADER_BYTES  = 2 * Integer.BYTES;
+    
+    private static final byte              OP_INSERT            = 1;
+    private static final byte              OP_REMOVE            = 2;
+    private static final byte              OP_TRANSPOSE         = 3;
+    private static final byte              KIND_ENTRY           = 1;
+    private static final byte              KIND_MEASURE         = 2;
+    private static final byte              KIND_PART            = 3;
+    
+    private final Score                    score;
+    private final File                     directory;
+    private final String                   session;
+    private final FileChannel              lockChannel;
+    private final List<ByteBuffer>         pending;
+    private final ScheduledExecutorService committer;
+    
+    private int                            heldCheckpoints;
+    private Future<?>                      lastCheckpoint;
+    private FileChannel                    channel;
+    private int                            generation;
+    private long                           journalBytes;
+    private volatile long                  checkpointBytes;
+    private File                           baseFile;
+    private boolean                        baseHashKnown;
+    private long                           baseHash;
+    private File                           savedFile;
+    private boolean                        savedHashKnown;
+    private long                           savedHash;
+    private boolean                        modified;
+    private volatile boolean               failed;
+    
+    
+    private EditJournal(Score score, File directory, String session, FileChannel lockChannel, int generation)
+    {
+        this.score = score;
+        this.directory = directory;
+        this.session = session;
+        this.lockChannel = lockChannel;
+        this.generation = generation;
+        pending = new ArrayList<>();
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Java# journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, GROUP_COMMIT_MILLIS, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    /**
+     * Starts journaling a score in the {@link #DEFAULT_DIRECTORY default autosave directory}.
+     * 
+     * @param score
+     *            the score to journal, which must have no edits to undo yet
+     * @param savedFile
+     *            the file the score was just read from or saved to, or null if it has not been saved, in which case
+     *            it is checkpointed first
+     * @return the journal
+     * @throws MusicException
+     *             if the journal or the first checkpoint cannot be written
+     */
+    public static EditJournal start(Score score, File savedFile)
+        throws MusicException
+    {
+        return start(score, savedFile, DEFAULT_DIRECTORY);
+    }
+    
+    
+    /**
+     * Starts journaling a score.
+     * 
+     * @param score
+     *            the score to journal, which must have no edits to undo yet
+     * @param savedFile
+     *            the file the score was just read from or saved to, or null if it has not been saved, in which case
+     *            it is checkpointed first
+     * @param directory
+     *            the autosave directory to keep the journal in
+     * @return the journal
+     * @throws MusicException
+     *             if the journal or the first checkpoint cannot be written
+     */
+    public static EditJournal start(Score score, File savedFile, File directory)
+        throws MusicException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new MusicException("Unable to create " + directory);
+        }
+        // Sessions are named after when they started, and the lock file claims the name
+        long id = System.currentTimeMillis();
+        String session = Long.toString(id, Character.MAX_RADIX);
+        File lockFile = new File(directory, session + LOCK_EXTENSION);
+        try
+        {
+            while (!lockFile.createNewFile())
+            {
+                session = Long.toString(++id, Character.MAX_RADIX);
+                lockFile = new File(directory, session + LOCK_EXTENSION);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to create " + lockFile, e);
+        }
+        
+        EditJournal journal = new EditJournal(score, directory, session, lock(lockFile), 0);
+        try
+        {
+            if (savedFile != null)
+            {
+                journal.savedFile = savedFile;
+                journal.beginGeneration(savedFile, false, 0);
+            }
+            else
+            {
+                journal.checkpoint();
+            }
+        }
+        catch (MusicException e)
+        {
+            journal.discard();
+            throw e;
+        }
+        score.getHistory().setJournal(journal);
+        return journal;
+    }
+    
+    
+    /**
+     * Finds the sessions in the {@link #DEFAULT_DIRECTORY default autosave directory} that were left behind by a
+     * program that did not exit cleanly.
+     * 
+     * @return the sessions, most recent first
+     */
+    public static List<RecoverableSession> findRecoverable()
+    {
+        return findRecoverable(DEFAULT_DIRECTORY);
+    }
+    
+    
+    /**
+     * Finds the sessions in an autosave directory that were left behind by a program that did not exit cleanly.
+     * Sessions that are still open are skipped, and sessions without a single complete journal are deleted.
+     * 
+     * @param directory
+     *            the autosave directory
+     * @return the sessions, most recent first
+     */
+    public static List<RecoverableSession> findRecoverable(File directory)
+    {
+        List<RecoverableSession> sessions = new ArrayList<>();
+        File[] lockFiles = directory.listFiles((dir, name) -> name.endsWith(LOCK_EXTENSION));
+        if (lockFiles == null)
+        {
+            return sessions;
+        }
+        for (File lockFile : lockFiles)
+        {
+            String name = lockFile.getName();
+            String session = name.substring(0, name.length() - LOCK_EXTENSION.length());
+            FileChannel lockChannel;
+            try
+            {
+                lockChannel = lock(lockFile);
+            }
+            catch (MusicException e)
+            {
+                // Still open in this or another program
+                continue;
+            }
+            try
+            {
+                RecoverableSession found = null;
+                for (File journalFile : getJournalFiles(directory, session))
+                {
+                    try
+                    {
+                        Header header = Header.read(map(journalFile));
+                        found = new RecoverableSession(directory, session, header.savedFile,
+                            journalFile.lastModified());
+                        break;
+                    }
+                    catch (MusicException e)
+                    {
+                        // Torn while it was being started, so the generation before it is still there
+                    }
+                }
+                if (found != null)
+                {
+                    sessions.add(found);
+                }
+                else
+                {
+                    deleteSession(directory, session, null, null);
+                    lockFile.delete();
+                }
+            }
+            finally
+            {
+                closeQuietly(lockChannel);
+            }
+        }
+        sessions.sort(Comparator.comparingLong(RecoverableSession::getLastModified).reversed());
+        return sessions;
+    }
+    
+    
+    public Score getScore()
+    {
+        return score;
+    }
+    
+    
+    /**
+     * Gets the file the score was last opened from or saved to.
+     * 
+     * @return the file, or null if the score has never been saved
+     */
+    public File getSavedFile()
+    {
+        return savedFile;
+    }
+    
+    
+    /**
+     * Whether the score has changes that are not in its saved file. A score whose edits have all been undone again
+     * since it was saved has none.
+     * 
+     * @return true if there is unsaved work
+     */
+    public boolean isModified()
+    {
+        if (savedFile == null)
+        {
+            return true;
+        }
+        if (!modified)
+        {
+            return false;
+        }
+        return !savedHashKnown || score.getContentHash() != savedHash;
+    }
+    
+    
+    /**
+     * Tells the journal that the score has just been saved, which makes the saved file the base of a new, empty
+     * journal.
+     * 
+     * @param file
+     *            the file the score was saved to
+     * @throws MusicException
+     *             if the new journal cannot be written
+     */
+    public void markSaved(File file)
+        throws MusicException
+    {
+        awaitCheckpoints();
+        // Saving has just read every part, so hashing the score costs little more
+        long hash = score.getContentHash();
+        savedFile = file;
+        savedHash = hash;
+        savedHashKnown = true;
+        modified = false;
+        synchronized (pending)
+        {
+            // Every queued record is part of the saved file
+            pending.clear();
+        }
+        journalBytes = 0;
+        beginGeneration(file, true, hash);
+    }
+    
+    
+    /**
+     * Stops journaling and writes out the records still queued, leaving the session behind to be recovered.
+     */
+    public void close()
+    {
+        score.getHistory().setJournal(null);
+        awaitCheckpoints();
+        committer.shutdown();
+        try
+        {
+            committer.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+        synchronized (this)
+        {
+            closeQuietly(channel);
+            channel = null;
+        }
+        closeQuietly(lockChannel);
+    }
+    
+    
+    /**
+     * Stops journaling and deletes the session, such as once the score has been saved or its changes thrown away.
+     */
+    public void discard()
+    {
+        close();
+        deleteSession(directory, session, null, null);
+        new File(directory, session + LOCK_EXTENSION).delete();
+    }
+    
+    
+    /**
+     * Queues the record of an edit, and checkpoints the score if the journal has grown large enough.
+     * 
+     * @param edit
+     *            the edit that was just made, undone or redone
+     * @param forward
+     *            false if the edit was undone
+     */
+    void append(EditHistory.Edit edit, boolean forward)
+    {
+        if (failed)
+        {
+            return;
+        }
+        modified = true;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            // Room for the length and checksum, which are filled in once the record is written
+            out.writeLong(0);
+            edit.writeTo(out, forward);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        catch (MusicException e)
+        {
+            // The edit cannot be written as a record, so write the whole score instead
+            checkpointLater();
+            return;
+        }
+        
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, record.capacity() - RECORD_HEADER_BYTES);
+        record.putInt(0, record.capacity() - RECORD_HEADER_BYTES);
+        record.putInt(Integer.BYTES, (int)crc.getValue());
+        boolean checkpointHeld;
+        synchronized (pending)
+        {
+            pending.add(record);
+            checkpointHeld = heldCheckpoints > 0;
+        }
+        journalBytes += record.capacity();
+        if (journalBytes >= Math.max(MIN_CHECKPOINT_BYTES, checkpointBytes) && !checkpointHeld)
+        {
+            checkpointLater();
+        }
+    }
+    
+    
+    static void writeInsert(DataOutputStream out, GroupInstructable<?, ?> group, int index, Instructable<?> child)
+        throws IOException, MusicException
+    {
+        writeTarget(out, OP_INSERT, group);
+        out.writeInt(index);
+        if (child instanceof Part)
+        {
+            Part part = (Part)child;
+            PartContext context = part.getPartContext();
+            Instrument instrument = context.getInstrument();
+            out.writeByte(KIND_PART);
+            out.writeInt(instrument == null ? ScoreFile.NO_INSTRUMENT : instrument.getPatch().getBank());
+            out.writeInt(instrument == null ? ScoreFile.NO_INSTRUMENT : instrument.getPatch().getProgram());
+            out.writeInt(context.getChannel());
+            out.writeInt(part.getChildCount());
+            for (int i = 0; i < part.getChildCount(); i++)
+            {
+                ScoreFile.writeMeasure(out, part.getChild(i));
+            }
+        }
+        else if (child instanceof Measure)
+        {
+            out.writeByte(KIND_MEASURE);
+            ScoreFile.writeMeasure(out, (Measure)child);
+        }
+        else
+        {
+            NoteBuffer entry = new NoteBuffer(1);
+            boolean packed = child instanceof Note ? entry.insert(0, (Note)child)
+                : child instanceof Rest && entry.insert(0, (Rest)child);
+            if (!packed)
+            {
+                throw new MusicException("Unable to save " + child.getClass().getSimpleName() + " in a measure");
+            }
+            out.writeByte(KIND_ENTRY);
+            out.writeInt(entry.getEntry(0));
+        }
+    }
+    
+    
+    static void writeRemove(DataOutputStream out, GroupInstructable<?, ?> group, int index)
+        throws IOException
+    {
+        writeTarget(out, OP_REMOVE, group);
+        out.writeInt(index);
+    }
+    
+    
+    static void writeTranspose(DataOutputStream out, int steps)
+        throws IOException
+    {
+        out.writeByte(OP_TRANSPOSE);
+        out.writeByte(0);
+        out.writeInt(steps);
+    }
+    
+    
+    private static void writeTarget(DataOutputStream out, byte op, GroupInstructable<?, ?> group)
+        throws IOException
+    {
+        int[] path = group.getPath();
+        out.writeByte(op);
+        out.writeByte(path.length);
+        for (int index : path)
+        {
+            out.writeInt(index);
+        }
+    }
+    
+    
+    /**
+     * Writes out the queued records and syncs them to disk, all in one go. Records queued after a checkpoint that is
+     * still to be written are held back, since they belong in the journal that starts on top of it.
+     */
+    private synchronized void commit()
+    {
+        ByteBuffer[] records;
+        synchronized (pending)
+        {
+            if (pending.isEmpty() || heldCheckpoints > 0)
+            {
+                return;
+            }
+            records = pending.toArray(new ByteBuffer[0]);
+            pending.clear();
+        }
+        write(records);
+    }
+    
+    
+    private synchronized void write(ByteBuffer[] records)
+    {
+        if (records.length == 0 || channel == null)
+        {
+            return;
+        }
+        try
+        {
+            while (records[records.length - 1].hasRemaining())
+            {
+                channel.write(records);
+            }
+            channel.force(false);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+    
+    
+    /**
+     * Checkpoints the score on the background thread. The score is copied now, along with the records queued so far,
+     * which go to the current journal before it is replaced; edits made while the checkpoint is written are recorded
+     * in the next journal.
+     */
+    private void checkpointLater()
+    {
+        Score snapshot = score.snapshot();
+        long hash = score.getContentHash();
+        ByteBuffer[] records;
+        synchronized (pending)
+        {
+            records = pending.toArray(new ByteBuffer[0]);
+            pending.clear();
+            heldCheckpoints++;
+        }
+        journalBytes = 0;
+        lastCheckpoint = committer.submit(() -> {
+            try
+            {
+                write(records);
+                checkpoint(snapshot, hash);
+            }
+            catch (MusicException e)
+            {
+                fail(e);
+            }
+            finally
+            {
+                synchronized (pending)
+                {
+                    heldCheckpoints--;
+                }
+            }
+        });
+    }
+    
+    
+    /**
+     * Waits for the checkpoints already started to be written, so that the journal can start a new generation of its
+     * own.
+     */
+    private void awaitCheckpoints()
+    {
+        if (lastCheckpoint == null)
+        {
+            return;
+        }
+        try
+        {
+            lastCheckpoint.get();
+        }
+        catch (ExecutionException e)
+        {
+            fail(e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    /**
+     * Makes the current score the base of a new, empty journal, writing it to a checkpoint file unless it is unchanged
+     * from the current base or the saved file.
+     */
+    private void checkpoint()
+        throws MusicException
+    {
+        journalBytes = 0;
+        checkpoint(score, score.getContentHash());
+    }
+    
+    
+    /**
+     * Makes a score the base of a new journal, writing it to a checkpoint file unless it is unchanged from the current
+     * base or the saved file.
+     * 
+     * @param checkpointed
+     *            the score, or a snapshot of it
+     * @param hash
+     *            the content hash of the score
+     */
+    private void checkpoint(Score checkpointed, long hash)
+        throws MusicException
+    {
+        File base;
+        if (baseHashKnown && hash == baseHash)
+        {
+            base = baseFile;
+        }
+        else if (savedHashKnown && hash == savedHash)
+        {
+            base = savedFile;
+        }
+        else
+        {
+            base = getCheckpointFile(generation + 1);
+            ScoreFile.write(checkpointed, base);
+            sync(base);
+        }
+        beginGeneration(base, true, hash);
+    }
+    
+    
+    /**
+     * Starts the journal of the next generation on top of a base file, and once it is synced, deletes every file of the
+     * session that it does not need. Any records still queued are written to the new journal.
+     */
+    private void beginGeneration(File base, boolean hashKnown, long hash)
+        throws MusicException
+    {
+        int next = generation + 1;
+        File journalFile = getJournalFile(next);
+        FileChannel nextChannel = null;
+        try
+        {
+            nextChannel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            Header header = new Header(base.getAbsoluteFile(), base.length(), base.lastModified(), savedFile);
+            ByteBuffer headerBytes = ByteBuffer.wrap(header.write());
+            while (headerBytes.hasRemaining())
+            {
+                nextChannel.write(headerBytes);
+            }
+            nextChannel.force(true);
+        }
+        catch (IOException e)
+        {
+            closeQuietly(nextChannel);
+            throw new MusicException("Unable to write " + journalFile, e);
+        }
+        
+        synchronized (this)
+        {
+            closeQuietly(channel);
+            channel = nextChannel;
+            generation = next;
+        }
+        checkpointBytes = base.length();
+        baseFile = base;
+        baseHashKnown = hashKnown;
+        baseHash = hash;
+        deleteSession(directory, session, journalFile, base);
+    }
+    
+    
+    private void fail(Exception e)
+    {
+        if (!failed)
+        {
+            failed = true;
+            LOGGER.log(Level.WARNING, "Autosave stopped", e);
+        }
+    }
+    
+    
+    private File getJournalFile(int journalGeneration)
+    {
+        return new File(directory, session + "-" + journalGeneration + FILE_EXTENSION);
+    }
+    
+    
+    private File getCheckpointFile(int checkpointGeneration)
+    {
+        return new File(directory, session + "-" + checkpointGeneration + ScoreFile.FILE_EXTENSION);
+    }
+    
+    
+    /**
+     * Reads the base of a journal and replays the journal on top of it, up to the first record that was not written in
+     * full.
+     */
+    private static Score replay(File journalFile)
+        throws MusicException
+    {
+        ByteBuffer data = map(journalFile);
+        Header header = Header.read(data);
+        File base = header.baseFile;
+        if (!base.isFile() || base.length() != header.baseLength || base.lastModified() != header.baseModified)
+        {
+            throw new MusicException(base + " has changed since the unsaved work was autosaved");
+        }
+        
+        Score score = ScoreFile.read(base);
+        CRC32 crc = new CRC32();
+        try
+        {
+            while (data.remaining() >= RECORD_HEADER_BYTES)
+            {
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length < 0 || length > data.remaining())
+                {
+                    break;
+                }
+                ByteBuffer record = data.slice();
+                record.limit(length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int)crc.getValue() != checksum)
+                {
+                    break;
+                }
+                apply(score, record);
+                data.position(data.position() + length);
+            }
+        }
+        catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+            | ClassCastException e)
+        {
+            throw new MusicException(journalFile + " does not match " + base, e);
+        }
+        score.getHistory().clear();
+        return score;
+    }
+    
+    
+    private static void apply(Score score, ByteBuffer record)
+        throws MusicException
+    {
+        byte op = record.get();
+        int depth = record.get();
+        Instructable<?> target = score;
+        for (int i = 0; i < depth; i++)
+        {
+            target = ((GroupInstructable<?, ?>)target).getChild(record.getInt());
+        }
+        
+        if (op == OP_TRANSPOSE)
+        {
+            score.transpose(record.getInt());
+        }
+        else if (op == OP_REMOVE)
+        {
+            ((GroupInstructable<?, ?>)target).removeChild(record.getInt());
+        }
+        else if (op != OP_INSERT)
+        {
+            throw new IllegalArgumentException("Invalid journal record: " + op);
+        }
+        else if (target == score)
+        {
+            int index = record.getInt();
+            if (record.get() != KIND_PART)
+            {
+                throw new IllegalArgumentException("Only parts can be inserted into a score");
+            }
+            Part part = new Part(ScoreFile.getInstrument(record.getInt(), record.getInt()), record.getInt(),
+                score.getScoreContext());
+            int measureCount = record.getInt();
+            for (int i = 0; i < measureCount; i++)
+            {
+                part.addChild(ScoreFile.readMeasure(record));
+            }
+            score.insertChild(index, part);
+        }
+        else if (target instanceof Part)
+        {
+            int index = record.getInt();
+            ((Part)target).insertChild(index, readPartChild(record));
+        }
+        else if (target instanceof Measure)
+        {
+            int index = record.getInt();
+            ((Measure)target).insertChild(index, readPartChild(record));
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unable to insert into " + target.getClass().getSimpleName());
+        }
+    }
+    
+    
+    private static Instructable<PartContext> readPartChild(ByteBuffer record)
+    {
+        byte kind = record.get();
+        if (kind == KIND_MEASURE)
+        {
+            return ScoreFile.readMeasure(record);
+        }
+        if (kind != KIND_ENTRY)
+        {
+            throw new IllegalArgumentException("Invalid child in a part: " + kind);
+        }
+        NoteBuffer entry = new NoteBuffer(1);
+        entry.addEntry(record.getInt());
+        return entry.get(0);
+    }
+    
+    
+    /**
+     * Gets the journals of a session, newest generation first.
+     */
+    private static List<File> getJournalFiles(File directory, String session)
+    {
+        List<File> journals = new ArrayList<>();
+        File[] files =
+            directory.listFiles((dir, name) -> name.startsWith(session + "-") && name.endsWith(FILE_EXTENSION));
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                journals.add(file);
+            }
+        }
+        journals.sort(Comparator.comparingInt((File file) -> getGeneration(file, session)).reversed());
+        return journals;
+    }
+    
+    
+    private static int getGeneration(File file, String session)
+    {
+        String name = file.getName();
+        try
+        {
+            return Integer.parseInt(name.substring(session.length() + 1, name.length() - FILE_EXTENSION.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+    
+    
+    /**
+     * Deletes the journals and checkpoints of a session, other than the two given.
+     */
+    private static void deleteSession(File directory, String session, File keepJournal, File keepBase)
+    {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(session + "-"));
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (!file.equals(keepJournal) && !file.getAbsoluteFile().equals(keepBase == null ? null
+                : keepBase.getAbsoluteFile()))
+            {
+                file.delete();
+            }
+        }
+    }
+    
+    
+    private static FileChannel lock(File lockFile)
+        throws MusicException
+    {
+        FileChannel lockChannel = null;
+        try
+        {
+            lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+            if (lockChannel.tryLock() != null)
+            {
+                // The lock is released when the channel is closed
+                return lockChannel;
+            }
+        }
+        catch (IOException | OverlappingFileLockException e)
+        {
+            // Reported below as being in use
+        }
+        closeQuietly(lockChannel);
+        throw new MusicException(lockFile + " is in use");
+    }
+    
+    
+    private static ByteBuffer map(File file)
+        throws MusicException
+    {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (fileChannel.size() > Integer.MAX_VALUE)
+            {
+                throw new MusicException(file + " is too large to open");
+            }
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to read " + file, e);
+        }
+    }
+    
+    
+    private static void sync(File file)
+        throws MusicException
+    {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
+        {
+            fileChannel.force(true);
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to write " + file, e);
+        }
+    }
+    
+    
+    private static void closeQuietly(FileChannel fileChannel)
+    {
+        if (fileChannel != null)
+        {
+            try
+            {
+                fileChannel.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more to write through it
+            }
+        }
+    }
+    
+    
+    /**
+     * A session left behind by a program that did not exit cleanly.
+     */
+    public static final class RecoverableSession
+    {
+        private final File   directory;
+        private final String session;
+        private final File   savedFile;
+        private final long   lastModified;
+        
+        
+        private RecoverableSession(File directory, String session, File savedFile, long lastModified)
+        {
+            this.directory = directory;
+            this.session = session;
+            this.savedFile = savedFile;
+            this.lastModified = lastModified;
+        }
+        
+        
+        /**
+         * Gets the file the score had last been opened from or saved to.
+         * 
+         * @return the file, or null if the score had never been saved
+         */
+        public File getSavedFile()
+        {
+            return savedFile;
+        }
+        
+        
+        /**
+         * Gets when the session was last checkpointed or saved.
+         * 
+         * @return the time in milliseconds since the epoch
+         */
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+        
+        
+        /**
+         * Replays the session into a score and carries on journaling it. The newest generation of the session that
+         * can be replayed is used.
+         * 
+         * @return the journal of the recovered score
+         * @throws MusicException
+         *             if the session is in use, or none of its generations can be replayed
+         */
+        public EditJournal recover()
+            throws MusicException
+        {
+            FileChannel lockChannel = lock(new File(directory, session + LOCK_EXTENSION));
+            MusicException failure = new MusicException("Unable to recover the unsaved work on " +
+                (savedFile != null ? savedFile.getName() : "an unsaved score"));
+            for (File journalFile : getJournalFiles(directory, session))
+            {
+                Score score;
+                try
+                {
+                    score = replay(journalFile);
+                }
+                catch (MusicException e)
+                {
+                    failure.addSuppressed(e);
+                    continue;
+                }
+                EditJournal journal =
+                    new EditJournal(score, directory, session, lockChannel, getGeneration(journalFile, session));
+                journal.savedFile = savedFile;
+                journal.modified = true;
+                try
+                {
+                    // Start again from a checkpoint, leaving out any torn record at the end and the old base
+                    journal.checkpoint();
+                }
+                catch (MusicException e)
+                {
+                    journal.close();
+                    throw e;
+                }
+                score.getHistory().setJournal(journal);
+                return journal;
+            }
+            closeQuietly(lockChannel);
+            throw failure;
+        }
+        
+        
+        /**
+         * Deletes the session without recovering it.
+         */
+        public void discard()
+        {
+            deleteSession(directory, session, null, null);
+            new File(directory, session + LOCK_EXTENSION).delete();
+        }
+    }
+    
+    
+    /**
+     * The header at the start of each journal, naming the file it is replayed on top of and the file the score was
+     * saved to.
+     */
+    private static final class Header
+    {
+        private final File baseFile;
+        private final long baseLength;
+        private final long baseModified;
+        private final File savedFile;
+        
+        
+        private Header(File baseFile, long baseLength, long baseModified, File savedFile)
+        {
+            this.baseFile = baseFile;
+            this.baseLength = baseLength;
+            this.baseModified = baseModified;
+            this.savedFile = savedFile;
+        }
+        
+        
+        private byte[] write()
+            throws IOException
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            writeString(out, baseFile.getPath());
+            out.writeLong(baseLength);
+            out.writeLong(baseModified);
+            writeString(out, savedFile == null ? "" : savedFile.getAbsolutePath());
+            return bytes.toByteArray();
+        }
+        
+        
+        private static Header read(ByteBuffer buffer)
+            throws MusicException
+        {
+            try
+            {
+                if (buffer.getInt() != MAGIC || buffer.getShort() > VERSION)
+                {
+                    throw new MusicException("Not a journal this version can read");
+                }
+                buffer.getShort();
+                File base = new File(readString(buffer));
+                long baseLength = buffer.getLong();
+                long baseModified = buffer.getLong();
+                String saved = readString(buffer);
+                return new Header(base, baseLength, baseModified, saved.isEmpty() ? null : new File(saved));
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e)
+            {
+                throw new MusicException("The journal header is incomplete", e);
+            }
+        }
+        
+        
+        private static void writeString(DataOutputStream out, String string)
+            throws IOException
+        {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        
+        
+        private static String readString(ByteBuffer buffer)
+        {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+            {
+                throw new IllegalArgumentException("Invalid string length: " + length);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.javasharp.model;
+
+import javax.sound.midi.MidiEvent;
+
+/**
+ * Receives the MIDI events a {@link PartContext} produces as its part is instructed.
+ */
+interface EventSink
+{
+    
+    public void add(MidiEvent event);
+    
+}
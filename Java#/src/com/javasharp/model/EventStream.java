@@ -0,0 +1,122 @@
+package com.javasharp.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.sound.midi.MidiEvent;
+
+/**
+ * Iterates over the MIDI events of a score in tick order without compiling it up front. Each part is instructed one
+ * child (usually one measure) at a time, only when its next event is needed, so memory use is bounded by a measure per
+ * part no matter how long the score is. Events with the same tick come out in part order.
+ * <p>
+ * The score must not be edited while it is being iterated.
+ */
+public final class EventStream
+    implements Iterator<MidiEvent>
+{
+    private final List<PartCursor> cursors;
+    
+    
+    public EventStream(Score score)
+    {
+        cursors = new ArrayList<>(score.getChildCount());
+        for (int i = 0; i < score.getChildCount(); i++)
+        {
+            Instructable<ScoreContext> child = score.getChild(i);
+            if (child instanceof Part)
+            {
+                cursors.add(new PartCursor((Part)child));
+            }
+        }
+    }
+    
+    
+    @Override
+    public boolean hasNext()
+    {
+        return nextCursor() != null;
+    }
+    
+    
+    @Override
+    public MidiEvent next()
+    {
+        PartCursor cursor = nextCursor();
+        if (cursor == null)
+        {
+            throw new NoSuchElementException();
+        }
+        return cursor.events.poll();
+    }
+    
+    
+    /**
+     * Gets the tick of the event that {@link #next()} would return.
+     * 
+     * @return the tick of the next event, or -1 if there are no more events
+     */
+    public long peekTick()
+    {
+        PartCursor cursor = nextCursor();
+        return cursor == null ? -1 : cursor.events.peek().getTick();
+    }
+    
+    
+    private PartCursor nextCursor()
+    {
+        PartCursor earliest = null;
+        for (PartCursor cursor : cursors)
+        {
+            if (cursor.fill() &&
+                (earliest == null || cursor.events.peek().getTick() < earliest.events.peek().getTick()))
+            {
+                earliest = cursor;
+            }
+        }
+        return earliest;
+    }
+    
+    
+    private static final class PartCursor
+        implements EventSink
+    {
+        private final Part                 part;
+        private final PartContext          context;
+        private final ArrayDeque<MidiEvent> events;
+        private int                        nextChild;
+        
+        
+        private PartCursor(Part part)
+        {
+            this.part = part;
+            context = new PartContext(part.getPartContext());
+            events = new ArrayDeque<>();
+            context.beginStream(this);
+        }
+        
+        
+        @Override
+        public void add(MidiEvent event)
+        {
+            events.add(event);
+        }
+        
+        
+        /**
+         * Instructs children of the part until there is an event to return or the part is finished.
+         * 
+         * @return false if the part has no more events
+         */
+        private boolean fill()
+        {
+            while (events.isEmpty() && nextChild < part.getChildCount())
+            {
+                part.getChild(nextChild++).instruct(context);
+            }
+            return !events.isEmpty();
+        }
+    }
+}
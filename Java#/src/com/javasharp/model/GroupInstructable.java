@@ -1,63 +1,493 @@
-package com.javasharp.model;
-
-import java.util.ArrayList;
-import java.util.List;
-
-public abstract class GroupInstructable<T, C>
-    implements Instructable<T>
-{
-    private final List<Instructable<C>> children;
-    
-    
-    public GroupInstructable()
-    {
-        children = new ArrayList<>();
-    }
-    
-    
-    public void insertChild(int index, Instructable<C> instructable)
-    {
-        children.add(index, instructable);
-    }
-    
-    
-    public void addChild(Instructable<C> instructable)
-    {
-        children.add(instructable);
-    }
-    
-    
-    public void removeChild(int index)
-    {
-        children.remove(index);
-    }
-    
-    
-    protected final void instructChildren(C childContext)
-    {
-        for (Instructable<C> child : children)
-        {
-            child.instruct(childContext);
-        }
-    }
-    
-    
-    protected final int getChildLengthSum()
-    {
-        int lengthSum = 0;
-        for (Instructable<C> child : children)
-        {
-            lengthSum += child.getLength();
-        }
-        return lengthSum;
-    }
-    
-    
-    protected final void notifyChildrenTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        for (Instructable<C> child : children)
-        {
-            child.onTimeSignatureChanged(timeSignature);
-        }
-    }
-}
+package com.javasharp.model;
+
+import com.javasharp.model.util.ContentHash;
+import com.javasharp.model.util.PersistentList;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public abstract class GroupInstructable<T, C>
+    implements Instructable<T>
+{
+    private static final int                UNKNOWN_LENGTH = -1;
+    
+    private PersistentList<Instructable<C>> children;
+    private GroupInstructable<?, ?>         parent;
+    private int                             indexInParent;
+    private boolean                         childIndicesStale;
+    private int                             childLengthSum;
+    private long                            contentHash;
+    private boolean                         contentHashStale;
+    
+    
+    public GroupInstructable()
+    {
+        children = PersistentList.empty();
+        indexInParent = -1;
+        childLengthSum = 0;
+        contentHashStale = true;
+    }
+    
+    
+    public void insertChild(int index, Instructable<C> instructable)
+    {
+        PersistentList<Instructable<C>> before = children;
+        children = children.insert(index, instructable);
+        childLengthSum = UNKNOWN_LENGTH;
+        if (index != children.size() - 1)
+        {
+            childIndicesStale = true;
+        }
+        if (instructable instanceof GroupInstructable)
+        {
+            GroupInstructable<?, ?> group = (GroupInstructable<?, ?>)instructable;
+            group.parent = this;
+            group.indexInParent = index;
+        }
+        onChildInserted(index, instructable);
+        record(before, index, instructable, true);
+    }
+    
+    
+    public void addChild(Instructable<C> instructable)
+    {
+        insertChild(children.size(), instructable);
+    }
+    
+    
+    public void removeChild(int index)
+    {
+        PersistentList<Instructable<C>> before = children;
+        Instructable<C> removed = children.get(index);
+        children = children.remove(index);
+        childLengthSum = UNKNOWN_LENGTH;
+        if (index != children.size())
+        {
+            childIndicesStale = true;
+        }
+        if (removed instanceof GroupInstructable)
+        {
+            GroupInstructable<?, ?> group = (GroupInstructable<?, ?>)removed;
+            group.parent = null;
+            group.indexInParent = -1;
+        }
+        onChildRemoved(index, removed);
+        record(before, index, removed, false);
+    }
+    
+    
+    /**
+     * Fills in the children of a group that has none yet, such as one that is loaded lazily, without calling the
+     * change hooks and without recording an edit: the children were already part of the group as far as anything
+     * outside it can tell.
+     * 
+     * @param initialChildren
+     *            the children to add
+     */
+    protected final void initChildren(List<? extends Instructable<C>> initialChildren)
+    {
+        int index = children.size();
+        for (Instructable<C> instructable : initialChildren)
+        {
+            if (instructable instanceof GroupInstructable)
+            {
+                GroupInstructable<?, ?> group = (GroupInstructable<?, ?>)instructable;
+                group.parent = this;
+                group.indexInParent = index;
+            }
+            index++;
+        }
+        children = children.isEmpty() ? PersistentList.copyOf(initialChildren) : appendAll(children, initialChildren);
+        childLengthSum = UNKNOWN_LENGTH;
+        contentHashStale = true;
+    }
+    
+    
+    /**
+     * Gets the history that edits to this group are recorded in, which is the history of the score it belongs to.
+     * 
+     * @return the history, or null if the group is not part of a score
+     */
+    EditHistory getHistory()
+    {
+        return parent == null ? null : parent.getHistory();
+    }
+    
+    
+    /**
+     * Gets the index of this group and of each group above it among the children of its parent, from the top down.
+     * 
+     * @return the path from the root to this group, empty for the root itself
+     */
+    final int[] getPath()
+    {
+        int depth = 0;
+        for (GroupInstructable<?, ?> group = this; group.parent != null; group = group.parent)
+        {
+            depth++;
+        }
+        int[] path = new int[depth];
+        GroupInstructable<?, ?> group = this;
+        for (int i = depth - 1; i >= 0; i--)
+        {
+            path[i] = group.getIndexInParent();
+            group = group.parent;
+        }
+        return path;
+    }
+    
+    
+    /**
+     * Finds the measure that a change to one of the children of this group falls in.
+     * 
+     * @param index
+     *            the index of the child that changed
+     * @return the index of the measure in its part, or {@link EditHistory#ALL_MEASURES} if the change is not inside a
+     *         part
+     */
+    int getChangedMeasure(int index)
+    {
+        return parent == null ? EditHistory.ALL_MEASURES : parent.getChangedMeasure(getIndexInParent());
+    }
+    
+    
+    public int getChildCount()
+    {
+        return children.size();
+    }
+    
+    
+    public Instructable<C> getChild(int index)
+    {
+        return children.get(index);
+    }
+    
+    
+    /**
+     * Gets the index of this group among the children of its parent.
+     * 
+     * @return the index of this group, or -1 if it has no parent
+     */
+    public int getIndexInParent()
+    {
+        if (parent != null && parent.childIndicesStale)
+        {
+            parent.renumberChildren();
+        }
+        return indexInParent;
+    }
+    
+    
+    protected final void instructChildren(C childContext)
+    {
+        for (Instructable<C> child : children)
+        {
+            child.instruct(childContext);
+        }
+    }
+    
+    
+    /**
+     * Instructs every child at once on a fork-join pool and waits for all of them. The children must not share any
+     * mutable state through the context.
+     * 
+     * @param childContext
+     *            the context to pass to each child
+     * @param pool
+     *            the pool to run on
+     */
+    protected final void instructChildren(C childContext, ForkJoinPool pool)
+    {
+        if (childIndicesStale)
+        {
+            renumberChildren();
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(children.size());
+        for (Instructable<C> child : children)
+        {
+            tasks.add(pool.submit(() -> child.instruct(childContext)));
+        }
+        for (ForkJoinTask<?> task : tasks)
+        {
+            task.join();
+        }
+    }
+    
+    
+    /**
+     * Gets the total length of the children. The sum is cached until a child is inserted or removed, or the contents
+     * of a child group change.
+     * 
+     * @return the total length of the children
+     */
+    protected final int getChildLengthSum()
+    {
+        if (childLengthSum == UNKNOWN_LENGTH)
+        {
+            int lengthSum = 0;
+            for (Instructable<C> child : children)
+            {
+                lengthSum += child.getLength();
+            }
+            childLengthSum = lengthSum;
+        }
+        return childLengthSum;
+    }
+    
+    
+    /**
+     * Gets a hash of the children of this group, in order, built from their own hashes. The hash is cached, and every
+     * change to the group or below it marks it and the groups above it stale, so asking whether a measure or a part has
+     * changed since an earlier hash costs nothing, and recomputing a stale hash only looks again at the groups that
+     * changed.
+     * 
+     * @return the content hash
+     */
+    @Override
+    public long getContentHash()
+    {
+        if (contentHashStale)
+        {
+            // Cleared first, so that a change made while hashing marks the hash stale again
+            contentHashStale = false;
+            contentHash = computeContentHash(ContentHash.start(getClass()));
+        }
+        return contentHash;
+    }
+    
+    
+    /**
+     * Folds the hashes of the children into a hash. A group that stores its children some other way folds them the
+     * same way, so that it hashes the same as a group holding them as objects.
+     * 
+     * @param hash
+     *            the hash to fold the children into
+     * @return the new hash
+     */
+    protected long computeContentHash(long hash)
+    {
+        long result = hash;
+        for (Instructable<C> child : children)
+        {
+            result = ContentHash.add(result, child.getContentHash());
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Marks the content hash of this group and of every group below it stale, for a change made to the whole subtree
+     * in place, such as a transposition, without going through the change hooks.
+     */
+    final void invalidateContentHashes()
+    {
+        contentHashStale = true;
+        // Packed measures and unloaded parts have no group children here, and need none marked
+        for (Instructable<C> child : children)
+        {
+            if (child instanceof GroupInstructable)
+            {
+                ((GroupInstructable<?, ?>)child).invalidateContentHashes();
+            }
+        }
+    }
+    
+    
+    /**
+     * Called after a child has been inserted into this group.
+     * 
+     * @param index
+     *            the index of the new child
+     * @param child
+     *            the new child
+     */
+    protected void onChildInserted(int index, Instructable<C> child)
+    {
+        notifyParent();
+    }
+    
+    
+    /**
+     * Called after a child has been removed from this group.
+     * 
+     * @param index
+     *            the index the child was removed from
+     * @param child
+     *            the removed child
+     */
+    protected void onChildRemoved(int index, Instructable<C> child)
+    {
+        notifyParent();
+    }
+    
+    
+    /**
+     * Called when the contents of one of this group's children, or of their descendants, have changed.
+     * 
+     * @param child
+     *            the direct child whose contents changed
+     */
+    protected void onDescendantChanged(GroupInstructable<?, ?> child)
+    {
+        notifyParent();
+    }
+    
+    
+    protected final void notifyParent()
+    {
+        contentHashStale = true;
+        if (parent != null)
+        {
+            parent.childLengthSum = UNKNOWN_LENGTH;
+            parent.contentHashStale = true;
+            parent.onDescendantChanged(this);
+        }
+    }
+    
+    
+    private void renumberChildren()
+    {
+        int index = 0;
+        for (Instructable<C> child : children)
+        {
+            if (child instanceof GroupInstructable)
+            {
+                ((GroupInstructable<?, ?>)child).indexInParent = index;
+            }
+            index++;
+        }
+        childIndicesStale = false;
+    }
+    
+    
+    private void record(PersistentList<Instructable<C>> before, int index, Instructable<C> child, boolean inserted)
+    {
+        EditHistory history = getHistory();
+        if (history != null)
+        {
+            history.record(new ChildEdit(before, children, index, child, inserted));
+        }
+    }
+    
+    
+    /**
+     * Swaps in an earlier or later version of the children, which differs from the current one by a single child
+     * inserted or removed at an index, and tells the group about the change as if the child had just been inserted or
+     * removed.
+     */
+    private void restoreChildren(PersistentList<Instructable<C>> version, int index, Instructable<C> child,
+        boolean inserted)
+    {
+        children = version;
+        childLengthSum = UNKNOWN_LENGTH;
+        childIndicesStale = true;
+        if (child instanceof GroupInstructable)
+        {
+            GroupInstructable<?, ?> group = (GroupInstructable<?, ?>)child;
+            group.parent = inserted ? this : null;
+            group.indexInParent = inserted ? index : -1;
+        }
+        if (inserted)
+        {
+            onChildInserted(index, child);
+        }
+        else
+        {
+            onChildRemoved(index, child);
+        }
+    }
+    
+    
+    private static <E> PersistentList<E> appendAll(PersistentList<E> list, List<? extends E> elements)
+    {
+        PersistentList<E> result = list;
+        for (E element : elements)
+        {
+            result = result.add(element);
+        }
+        return result;
+    }
+    
+    
+    protected final void notifyChildrenTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        for (Instructable<C> child : children)
+        {
+            child.onTimeSignatureChanged(timeSignature);
+        }
+    }
+    
+    
+    /**
+     * A child inserted into or removed from a group, remembered as the versions of the children before and after.
+     */
+    private final class ChildEdit
+        extends EditHistory.Edit
+    {
+        private static final long                     EDIT_BYTES = 48;
+        
+        private final PersistentList<Instructable<C>> before;
+        private final PersistentList<Instructable<C>> after;
+        private final int                             index;
+        private final Instructable<C>                 child;
+        private final boolean                         inserted;
+        
+        
+        private ChildEdit(PersistentList<Instructable<C>> before, PersistentList<Instructable<C>> after, int index,
+            Instructable<C> child, boolean inserted)
+        {
+            this.before = before;
+            this.after = after;
+            this.index = index;
+            this.child = child;
+            this.inserted = inserted;
+        }
+        
+        
+        @Override
+        void undo()
+        {
+            restoreChildren(before, index, child, !inserted);
+        }
+        
+        
+        @Override
+        void redo()
+        {
+            restoreChildren(after, index, child, inserted);
+        }
+        
+        
+        @Override
+        long getBytes()
+        {
+            // Only the path from the root to the change is new in either version
+            return EDIT_BYTES + (long)PersistentList.NODE_BYTES * (Math.max(before.getHeight(), after.getHeight()) + 1);
+        }
+        
+        
+        @Override
+        int getChangedMeasure()
+        {
+            return GroupInstructable.this.getChangedMeasure(index);
+        }
+        
+        
+        @Override
+        void writeTo(DataOutputStream out, boolean forward)
+            throws IOException, MusicException
+        {
+            if (inserted == forward)
+            {
+                EditJournal.writeInsert(out, GroupInstructable.this, index, child);
+            }
+            else
+            {
+                EditJournal.writeRemove(out, GroupInstructable.this, index);
+            }
+        }
+    }
+}
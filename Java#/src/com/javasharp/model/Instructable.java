@@ -1,14 +1,24 @@
-package com.javasharp.model;
-
-public interface Instructable<T>
-{
-    
-    public void instruct(T context);
-    
-    
-    public int getLength();
-    
-    
-    public void onTimeSignatureChanged(TimeSignature timeSignature);
-    
-}
+package com.javasharp.model;
+
+public interface Instructable<T>
+{
+    
+    public void instruct(T context);
+    
+    
+    public int getLength();
+    
+    
+    public void onTimeSignatureChanged(TimeSignature timeSignature);
+    
+    
+    /**
+     * Gets a hash of what this instructable plays, which is equal for instructables that play the same. For a group
+     * it is built from the hashes of its children, along with anything of its own that changes how they play, such as
+     * the instrument and channel of a part, so comparing two hashes tells whether two whole subtrees differ.
+     * 
+     * @return the content hash
+     */
+    public long getContentHash();
+    
+}
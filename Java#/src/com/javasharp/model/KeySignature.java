@@ -1,24 +1,145 @@
-package com.javasharp.model;
-
-public enum KeySignature
-{
-    C,
-    G,
-    D,
-    A,
-    E,
-    B,
-    G_Flat,
-    D_Flat,
-    A_Flat,
-    E_Flat,
-    B_Flat,
-    F;
-    
-    public int resolvePitch(int originalPitch)
-    {
-        // TODO
-        System.out.println("Unimplemented.");
-        return 0;
-    }
-}
+package com.javasharp.model;
+
+/**
+ * A key signature, given by how many sharps or flats it has.
+ * <p>
+ * Pitches are resolved through a table built once per key, holding the pitch of every accidental on every diatonic
+ * step that a staff position of any clef can reach, so resolving a note while compiling is a single array read.
+ */
+public enum KeySignature
+{
+    C(0),
+    G(1),
+    D(2),
+    A(3),
+    E(4),
+    B(5),
+    G_Flat(-6),
+    D_Flat(-5),
+    A_Flat(-4),
+    E_Flat(-3),
+    B_Flat(-2),
+    F(-1);
+    
+    private static final int   STEPS_PER_OCTAVE = 7;
+    private static final int   SEMITONES        = 12;
+    private static final int[] SHARP_ORDER      = { 3, 0, 4, 1, 5, 2, 6 };
+    private static final int[] FLAT_ORDER       = { 6, 2, 5, 1, 4, 0, 3 };
+    private static final int[] NATURAL_DEGREES  = { 0, -1, 1, -1, 2, 3, -1, 4, -1, 5, -1, 6 };
+    private static final int   ACCIDENTAL_COUNT = Accidental.values().length;
+    
+    /**
+     * The lowest step in the pitch tables. Staff positions are stored in a byte and clefs only shift them, so the
+     * tables cover every position of every clef.
+     */
+    private static final int   MIN_STEP;
+    private static final int   STEP_COUNT;
+    
+    private final int          sharps;
+    private int[]              degreeSemitones;
+    private int[]              naturalSemitones;
+    private int[]              pitches;
+    
+    static
+    {
+        int minOffset = Integer.MAX_VALUE;
+        int maxOffset = Integer.MIN_VALUE;
+        for (Clef clef : Clef.values())
+        {
+            minOffset = Math.min(minOffset, clef.getStep(0));
+            maxOffset = Math.max(maxOffset, clef.getStep(0));
+        }
+        MIN_STEP = minOffset + Byte.MIN_VALUE;
+        STEP_COUNT = maxOffset + Byte.MAX_VALUE - MIN_STEP + 1;
+        for (KeySignature key : values())
+        {
+            key.buildTables();
+        }
+    }
+    
+    
+    private KeySignature(int sharps)
+    {
+        this.sharps = sharps;
+    }
+    
+    
+    private void buildTables()
+    {
+        degreeSemitones = new int[STEPS_PER_OCTAVE];
+        for (int i = 0; i < Math.abs(sharps); i++)
+        {
+            degreeSemitones[sharps > 0 ? SHARP_ORDER[i] : FLAT_ORDER[i]] = Integer.signum(sharps);
+        }
+        naturalSemitones = new int[SEMITONES];
+        for (int semitone = 0; semitone < SEMITONES; semitone++)
+        {
+            int degree = NATURAL_DEGREES[semitone];
+            naturalSemitones[semitone] = degree < 0 ? 0 : degreeSemitones[degree];
+        }
+        pitches = new int[STEP_COUNT * ACCIDENTAL_COUNT];
+        for (int step = 0; step < STEP_COUNT; step++)
+        {
+            for (Accidental accidental : Accidental.values())
+            {
+                pitches[step * ACCIDENTAL_COUNT + accidental.ordinal()] = computePitch(MIN_STEP + step, accidental);
+            }
+        }
+    }
+    
+    
+    /**
+     * Gets the number of sharps in the key signature.
+     * 
+     * @return the number of sharps, or minus the number of flats
+     */
+    public int getSharps()
+    {
+        return sharps;
+    }
+    
+    
+    /**
+     * Applies the key signature to a natural pitch. Pitches that are not natural are returned as they are.
+     * 
+     * @param originalPitch
+     *            the MIDI pitch of a natural note
+     * @return the MIDI pitch in this key
+     */
+    public int resolvePitch(int originalPitch)
+    {
+        return originalPitch + naturalSemitones[Math.floorMod(originalPitch, SEMITONES)];
+    }
+    
+    
+    /**
+     * Gets the pitch of a note in this key.
+     * 
+     * @param clef
+     *            the clef the note is written in
+     * @param staffPos
+     *            the staff position of the note
+     * @param accidental
+     *            the accidental in front of the note
+     * @return the MIDI pitch
+     */
+    public int resolvePitch(Clef clef, int staffPos, Accidental accidental)
+    {
+        int step = clef.getStep(staffPos) - MIN_STEP;
+        int index = step * ACCIDENTAL_COUNT + accidental.ordinal();
+        if (step < 0 || index >= pitches.length)
+        {
+            // Only reachable by a note object whose position would not fit in a note buffer
+            return computePitch(clef.getStep(staffPos), accidental);
+        }
+        return pitches[index];
+    }
+    
+    
+    private int computePitch(int step, Accidental accidental)
+    {
+        int natural = Clef.getNaturalPitch(step);
+        return natural + (accidental == Accidental.NONE ?
+            degreeSemitones[Math.floorMod(step, STEPS_PER_OCTAVE)] : accidental.getSemitones());
+    }
+}
@@ -1,39 +1,111 @@
-package com.javasharp.model;
-
-public enum Length
-{
-    WHOLE("Whole", 64),
-    HALF("Half", 32),
-    QUARTER("Quarter", 16),
-    EIGHTH("Eighth", 8),
-    SIXTEENTH("Sixteenth", 4),
-    THIRTY_SECOND("Thirty-second", 2),
-    SIXTY_FOURTH("Sixty-fourth", 1);
-    
-    private final String name;
-    private final int    length;
-    
-    
-    private Length(String name, int length)
-    {
-        this.name = name;
-        this.length = length;
-    }
-    
-    
-    public int getLength(int numDots)
-    {
-        int shiftedLength = length >> numDots;
-        if (shiftedLength == 0)
-        {
-            throw new IllegalArgumentException("This length has too many dots.");
-        }
-        return 2 * length - shiftedLength;
-    }
-    
-    
-    public String toString()
-    {
-        return name;
-    }
-}
+package com.javasharp.model;
+
+/**
+ * The written length of a note or rest.
+ * <p>
+ * Lengths are measured in ticks, and a tick is an exact fraction of a whole note: a sixty-fourth note is
+ * {@link #TICKS_PER_SIXTY_FOURTH} ticks, which every tuplet divides, so dotted notes and notes in tuplets are all whole
+ * numbers of ticks and durations add up exactly with plain int arithmetic. The tick length of every combination of
+ * length, dots and tuplet is worked out once into a table.
+ */
+public enum Length
+{
+    WHOLE("Whole", 64),
+    HALF("Half", 32),
+    QUARTER("Quarter", 16),
+    EIGHTH("Eighth", 8),
+    SIXTEENTH("Sixteenth", 4),
+    THIRTY_SECOND("Thirty-second", 2),
+    SIXTY_FOURTH("Sixty-fourth", 1);
+    
+    /**
+     * The ticks in a sixty-fourth note: 3 * 5 * 7, so a note in any {@link Tuplet} is a whole number of ticks.
+     */
+    public static final int      TICKS_PER_SIXTY_FOURTH = 105;
+    
+    /**
+     * The most dots any length can have, which is as many as a whole note can have before its last dot would be shorter
+     * than a sixty-fourth note.
+     */
+    public static final int      MAX_DOTS               = 6;
+    
+    private static final int     TUPLET_COUNT           = Tuplet.values().length;
+    private static final int[]   TICKS;
+    
+    private final String         name;
+    private final int            sixtyFourths;
+    
+    static
+    {
+        // Ticks by [length][dots][tuplet], left 0 where the length cannot have that many dots
+        TICKS = new int[values().length * (MAX_DOTS + 1) * TUPLET_COUNT];
+        for (Length length : values())
+        {
+            for (int dots = 0; dots <= length.getMaxDots(); dots++)
+            {
+                int ticks = (2 * length.sixtyFourths - (length.sixtyFourths >> dots)) * TICKS_PER_SIXTY_FOURTH;
+                for (Tuplet tuplet : Tuplet.values())
+                {
+                    TICKS[getIndex(length, dots, tuplet)] = ticks * tuplet.getNormal() / tuplet.getActual();
+                }
+            }
+        }
+    }
+    
+    
+    private Length(String name, int sixtyFourths)
+    {
+        this.name = name;
+        this.sixtyFourths = sixtyFourths;
+    }
+    
+    
+    public int getLength(int numDots)
+    {
+        return getLength(numDots, Tuplet.NONE);
+    }
+    
+    
+    /**
+     * Gets the length in ticks of a note of this length.
+     * 
+     * @param numDots
+     *            the number of dots of the note
+     * @param tuplet
+     *            the tuplet the note is in
+     * @return the length in ticks
+     * @throws IllegalArgumentException
+     *             if this length cannot have that many dots
+     */
+    public int getLength(int numDots, Tuplet tuplet)
+    {
+        if (numDots < 0 || numDots > getMaxDots())
+        {
+            throw new IllegalArgumentException("This length has too many dots.");
+        }
+        return TICKS[getIndex(this, numDots, tuplet)];
+    }
+    
+    
+    /**
+     * Gets the most dots a note of this length can have, which keeps its last dot at least a sixty-fourth note long.
+     * 
+     * @return the number of dots
+     */
+    public int getMaxDots()
+    {
+        return Integer.numberOfTrailingZeros(sixtyFourths);
+    }
+    
+    
+    private static int getIndex(Length length, int numDots, Tuplet tuplet)
+    {
+        return (length.ordinal() * (MAX_DOTS + 1) + numDots) * TUPLET_COUNT + tuplet.ordinal();
+    }
+    
+    
+    public String toString()
+    {
+        return name;
+    }
+}
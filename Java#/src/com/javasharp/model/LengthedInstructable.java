@@ -1,29 +1,57 @@
-package com.javasharp.model;
-
-public abstract class LengthedInstructable<T>
-    implements Instructable<T>
-{
-    private final Length length;
-    private final int    numDots;
-    
-    
-    public LengthedInstructable(Length length, int numDots)
-    {
-        this.length = length;
-        this.numDots = numDots;
-    }
-    
-    
-    public final int getLength()
-    {
-        return length.getLength(numDots);
-    }
-    
-    
-    @Override
-    public final void onTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        // Do nothing
-    }
-    
-}
+package com.javasharp.model;
+
+public abstract class LengthedInstructable<T>
+    implements Instructable<T>
+{
+    private final Length length;
+    private final int    numDots;
+    private final Tuplet tuplet;
+    private final int    ticks;
+    
+    
+    public LengthedInstructable(Length length, int numDots)
+    {
+        this(length, numDots, Tuplet.NONE);
+    }
+    
+    
+    public LengthedInstructable(Length length, int numDots, Tuplet tuplet)
+    {
+        this.length = length;
+        this.numDots = numDots;
+        this.tuplet = tuplet;
+        ticks = length.getLength(numDots, tuplet);
+    }
+    
+    
+    public final int getLength()
+    {
+        return ticks;
+    }
+    
+    
+    public final Length getBaseLength()
+    {
+        return length;
+    }
+    
+    
+    public final int getNumDots()
+    {
+        return numDots;
+    }
+    
+    
+    public final Tuplet getTuplet()
+    {
+        return tuplet;
+    }
+    
+    
+    @Override
+    public final void onTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        // Do nothing
+    }
+    
+}
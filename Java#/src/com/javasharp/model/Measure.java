@@ -1,25 +1,324 @@
-package com.javasharp.model;
-
-public class Measure
-    extends GroupInstructable<PartContext, PartContext>
-{
-    @Override
-    public void instruct(PartContext context)
-    {
-        super.instructChildren(context);
-    }
-    
-    
-    @Override
-    public int getLength()
-    {
-        return super.getChildLengthSum();
-    }
-    
-    
-    @Override
-    public void onTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        super.notifyChildrenTimeSignatureChanged(timeSignature);
-    }
-}
+package com.javasharp.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Measure
+    extends GroupInstructable<PartContext, PartContext>
+{
+    private NoteBuffer notes;
+    
+    
+    public Measure()
+    {
+        this(null);
+    }
+    
+    
+    /**
+     * Creates a measure that stores its notes and rests packed in a {@link NoteBuffer} instead of as objects. If a
+     * child that is not a plain note or rest is inserted later, the measure falls back to storing objects.
+     * 
+     * @param notes
+     *            the buffer holding the notes of the measure, or null to store children as objects
+     */
+    public Measure(NoteBuffer notes)
+    {
+        this.notes = notes;
+    }
+    
+    
+    public boolean isPacked()
+    {
+        return notes != null;
+    }
+    
+    
+    NoteBuffer getNotes()
+    {
+        return notes;
+    }
+    
+    
+    @Override
+    public void insertChild(int index, Instructable<PartContext> instructable)
+    {
+        if (notes == null)
+        {
+            super.insertChild(index, instructable);
+        }
+        else if (notes.insert(index, instructable))
+        {
+            onChildInserted(index, instructable);
+            recordPacked(index, instructable, true);
+        }
+        else
+        {
+            unpack();
+            super.insertChild(index, instructable);
+        }
+    }
+    
+    
+    @Override
+    public void addChild(Instructable<PartContext> instructable)
+    {
+        insertChild(getChildCount(), instructable);
+    }
+    
+    
+    @Override
+    public void removeChild(int index)
+    {
+        if (notes == null)
+        {
+            super.removeChild(index);
+        }
+        else
+        {
+            Instructable<PartContext> removed = notes.get(index);
+            notes.remove(index);
+            onChildRemoved(index, removed);
+            recordPacked(index, removed, false);
+        }
+    }
+    
+    
+    @Override
+    public int getChildCount()
+    {
+        return notes == null ? super.getChildCount() : notes.size();
+    }
+    
+    
+    @Override
+    public Instructable<PartContext> getChild(int index)
+    {
+        return notes == null ? super.getChild(index) : notes.get(index);
+    }
+    
+    
+    @Override
+    public void instruct(PartContext context)
+    {
+        if (notes == null)
+        {
+            super.instructChildren(context);
+        }
+        else
+        {
+            notes.instruct(context);
+        }
+    }
+    
+    
+    @Override
+    public int getLength()
+    {
+        return notes == null ? super.getChildLengthSum() : notes.getTotalLength();
+    }
+    
+    
+    @Override
+    protected long computeContentHash(long hash)
+    {
+        return notes == null ? super.computeContentHash(hash) : notes.addContentHashes(hash);
+    }
+    
+    
+    @Override
+    public void onTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        if (notes == null)
+        {
+            super.notifyChildrenTimeSignatureChanged(timeSignature);
+        }
+    }
+    
+    
+    /**
+     * Checks that every note in the measure can move by a number of staff positions, packed or not.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @throws IllegalArgumentException
+     *             if a note would move out of the range of staff positions
+     */
+    void checkTranspose(int steps)
+    {
+        if (notes != null)
+        {
+            notes.checkTranspose(steps);
+            return;
+        }
+        for (int i = 0; i < super.getChildCount(); i++)
+        {
+            Instructable<PartContext> child = super.getChild(i);
+            if (child instanceof Note)
+            {
+                ((Note)child).checkTranspose(steps);
+            }
+        }
+    }
+    
+    
+    /**
+     * Moves every note in the measure by a number of staff positions, without notifying the parent: the caller
+     * reports the change once the whole transposition is done, and must have checked it with
+     * {@link #checkTranspose(int)} first.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     */
+    void transpose(int steps)
+    {
+        if (notes != null)
+        {
+            notes.transpose(steps);
+            return;
+        }
+        for (int i = 0; i < super.getChildCount(); i++)
+        {
+            Instructable<PartContext> child = super.getChild(i);
+            if (child instanceof Note)
+            {
+                ((Note)child).transpose(steps);
+            }
+        }
+    }
+    
+    
+    /**
+     * Copies the measure, so that the copy can be read on another thread while this one is edited. A packed measure
+     * copies its buffer in one go; otherwise the notes, which are changed in place by transposition, are copied and the
+     * rests and commands, which never change, are shared.
+     * 
+     * @return a measure with the same contents and no parent
+     */
+    Measure snapshot()
+    {
+        if (notes != null)
+        {
+            return new Measure(notes.copy());
+        }
+        List<Instructable<PartContext>> children = new ArrayList<>(super.getChildCount());
+        for (int i = 0; i < super.getChildCount(); i++)
+        {
+            Instructable<PartContext> child = super.getChild(i);
+            if (child instanceof Note)
+            {
+                Note note = (Note)child;
+                child = new Note(note.getBaseLength(), note.getNumDots(), note.getStaffPos(), note.getTuplet());
+            }
+            children.add(child);
+        }
+        Measure copy = new Measure();
+        copy.initChildren(children);
+        return copy;
+    }
+    
+    
+    private void unpack()
+    {
+        NoteBuffer packed = notes;
+        notes = null;
+        List<Instructable<PartContext>> unpacked = new ArrayList<>(packed.size());
+        for (int i = 0; i < packed.size(); i++)
+        {
+            unpacked.add(packed.get(i));
+        }
+        // The measure holds the same children as before, so this is not an edit of its own
+        initChildren(unpacked);
+    }
+    
+    
+    private void recordPacked(int index, Instructable<PartContext> child, boolean inserted)
+    {
+        EditHistory history = getHistory();
+        if (history != null)
+        {
+            history.record(new PackedEdit(index, child, inserted));
+        }
+    }
+    
+    
+    /**
+     * A note or rest inserted into or removed from a packed measure. A note buffer is a flat array that is changed in
+     * place rather than a persistent list, so the edit is undone by making the opposite edit.
+     */
+    private final class PackedEdit
+        extends EditHistory.Edit
+    {
+        private static final long               EDIT_BYTES = 64;
+        
+        private final int                       index;
+        private final Instructable<PartContext> child;
+        private final boolean                   inserted;
+        
+        
+        private PackedEdit(int index, Instructable<PartContext> child, boolean inserted)
+        {
+            this.index = index;
+            this.child = child;
+            this.inserted = inserted;
+        }
+        
+        
+        @Override
+        void undo()
+        {
+            apply(!inserted);
+        }
+        
+        
+        @Override
+        void redo()
+        {
+            apply(inserted);
+        }
+        
+        
+        private void apply(boolean insert)
+        {
+            if (insert)
+            {
+                insertChild(index, child);
+            }
+            else
+            {
+                removeChild(index);
+            }
+        }
+        
+        
+        @Override
+        long getBytes()
+        {
+            return EDIT_BYTES;
+        }
+        
+        
+        @Override
+        int getChangedMeasure()
+        {
+            return Measure.this.getChangedMeasure(index);
+        }
+        
+        
+        @Override
+        void writeTo(DataOutputStream out, boolean forward)
+            throws IOException, MusicException
+        {
+            if (inserted == forward)
+            {
+                EditJournal.writeInsert(out, Measure.this, index, child);
+            }
+            else
+            {
+                EditJournal.writeRemove(out, Measure.this, index);
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.javasharp.model;
+
+import com.javasharp.model.util.MidiUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports Standard MIDI Files. The file is mapped and its track chunks are parsed event by event, and notes are turned
+ * into measures of packed notes and rests as they are read, so no {@link javax.sound.midi.Sequence} or list of events
+ * is ever built and memory use is that of the resulting score.
+ * <p>
+ * Each channel of each track becomes a part. Parts are monophonic, so a note that starts while another is held cuts
+ * that one short. Times are rounded to the nearest sixty-fourth note, measures are in common time and notes that cross
+ * a bar line are split. Pitches that need an accidental are written as the natural below them, on a treble staff.
+ */
+public final class MidiImporter
+{
+    private static final String[] FILE_EXTENSIONS   = { ".mid", ".midi" };
+    
+    private static final int      HEADER_CHUNK      = 0x4D546864;
+    private static final int      TRACK_CHUNK       = 0x4D54726B;
+    private static final int      SMPTE_DIVISION    = 0x8000;
+    
+    private static final int      NOTE_OFF          = 0x80;
+    private static final int      NOTE_ON           = 0x90;
+    private static final int      CONTROL_CHANGE    = 0xB0;
+    private static final int      PROGRAM_CHANGE    = 0xC0;
+    private static final int      CHANNEL_PRESSURE  = 0xD0;
+    private static final int      SYSTEM_EXCLUSIVE  = 0xF0;
+    private static final int      ESCAPE            = 0xF7;
+    private static final int      META              = 0xFF;
+    
+    private static final int      COPYRIGHT         = 0x02;
+    private static final int      TRACK_NAME        = 0x03;
+    private static final int      END_OF_TRACK      = 0x2F;
+    private static final int      SET_TEMPO         = 0x51;
+    private static final int      BANK_SELECT_MSB   = 0;
+    private static final int      BANK_SELECT_LSB   = 32;
+    
+    private static final long     MICROS_PER_MINUTE = TimeUnit.MINUTES.toMicros(1);
+    private static final int      MEASURE_TICKS     = Length.WHOLE.getLength(0);
+    private static final int      GRID_TICKS        = Length.SIXTY_FOURTH.getLength(0);
+    private static final int      GRID_PER_BEAT     = ScoreCompiler.TICKS_PER_BEAT / GRID_TICKS;
+    
+    /**
+     * The lengths a stretch of time is split into, longest first, with at most one dot.
+     */
+    private static final int[]    PIECE_TICKS;
+    private static final Length[] PIECE_LENGTHS;
+    private static final int[]    PIECE_DOTS;
+    
+    static
+    {
+        List<int[]> pieces = new ArrayList<>();
+        for (Length length : Length.values())
+        {
+            for (int dots = 0; dots <= Math.min(1, length.getMaxDots()); dots++)
+            {
+                pieces.add(new int[] { length.getLength(dots), length.ordinal(), dots });
+            }
+        }
+        pieces.sort((a, b) -> b[0] - a[0]);
+        PIECE_TICKS = new int[pieces.size()];
+        PIECE_LENGTHS = new Length[pieces.size()];
+        PIECE_DOTS = new int[pieces.size()];
+        for (int i = 0; i < pieces.size(); i++)
+        {
+            PIECE_TICKS[i] = pieces.get(i)[0];
+            PIECE_LENGTHS[i] = Length.values()[pieces.get(i)[1]];
+            PIECE_DOTS[i] = pieces.get(i)[2];
+        }
+    }
+    
+    
+    private MidiImporter()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Checks whether a file is named like a MIDI file.
+     * 
+     * @param file
+     *            the file
+     * @return true if the file has a MIDI file extension
+     */
+    public static boolean accepts(File file)
+    {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : FILE_EXTENSIONS)
+        {
+            if (name.endsWith(extension))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Imports a Standard MIDI File.
+     * 
+     * @param file
+     *            the file to import
+     * @return the score
+     * @throws MusicException
+     *             if the file cannot be read or is not a MIDI file this can import
+     */
+    public static Score read(File file)
+        throws MusicException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new MusicException(file + " is too large to import");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to read " + file, e);
+        }
+        
+        try
+        {
+            return read(buffer, file);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new MusicException(file + " is not a valid MIDI file", e);
+        }
+    }
+    
+    
+    private static Score read(ByteBuffer buffer, File file)
+        throws MusicException
+    {
+        if (buffer.getInt() != HEADER_CHUNK)
+        {
+            throw new MusicException(file + " is not a MIDI file");
+        }
+        int headerEnd = buffer.getInt() + buffer.position();
+        buffer.getShort();
+        int trackCount = buffer.getShort() & 0xFFFF;
+        int division = buffer.getShort() & 0xFFFF;
+        if ((division & SMPTE_DIVISION) != 0 || division == 0)
+        {
+            throw new MusicException(file + " uses SMPTE time, which cannot be imported");
+        }
+        buffer.position(headerEnd);
+        
+        Score score = new Score();
+        int track = 0;
+        while (track < trackCount && buffer.remaining() >= 8)
+        {
+            int type = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+            {
+                throw new IllegalArgumentException("Invalid chunk length: " + length);
+            }
+            int end = buffer.position() + length;
+            if (type == TRACK_CHUNK)
+            {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(end);
+                readTrack(chunk, division, score, track == 0);
+                track++;
+            }
+            // Unknown chunks are skipped, as the standard asks
+            buffer.position(end);
+        }
+        // Building the score is not an edit anyone can undo
+        score.getHistory().clear();
+        return score;
+    }
+    
+    
+    private static void readTrack(ByteBuffer chunk, int division, Score score, boolean firstTrack)
+        throws MusicException
+    {
+        Map<Integer, PartBuilder> builders = new LinkedHashMap<>();
+        long midiTick = 0;
+        int status = 0;
+        while (chunk.hasRemaining())
+        {
+            midiTick += readVariableLength(chunk);
+            int tick = (int)((midiTick * GRID_PER_BEAT + division / 2) / division) * GRID_TICKS;
+            
+            int data = chunk.get() & 0xFF;
+            if (data >= SYSTEM_EXCLUSIVE)
+            {
+                if (data == META)
+                {
+                    int metaType = chunk.get() & 0xFF;
+                    int length = readVariableLength(chunk);
+                    if (metaType == END_OF_TRACK)
+                    {
+                        break;
+                    }
+                    readMeta(chunk, metaType, length, tick, score, firstTrack);
+                }
+                else if (data == SYSTEM_EXCLUSIVE || data == ESCAPE)
+                {
+                    skip(chunk, readVariableLength(chunk));
+                }
+                continue;
+            }
+            
+            // Running status: a data byte repeats the last status
+            int data1;
+            if (data < 0x80)
+            {
+                if (status == 0)
+                {
+                    throw new IllegalArgumentException("Data byte without a status");
+                }
+                data1 = data;
+            }
+            else
+            {
+                status = data;
+                data1 = chunk.get() & 0xFF;
+            }
+            int command = status & 0xF0;
+            int channel = status & 0x0F;
+            int data2 = command == PROGRAM_CHANGE || command == CHANNEL_PRESSURE ? 0 : chunk.get() & 0xFF;
+            
+            if (command == NOTE_ON && data2 > 0)
+            {
+                getBuilder(builders, channel).noteOn(tick, data1);
+            }
+            else if (command == NOTE_OFF || command == NOTE_ON)
+            {
+                PartBuilder builder = builders.get(channel);
+                if (builder != null)
+                {
+                    builder.noteOff(tick, data1);
+                }
+            }
+            else if (command == PROGRAM_CHANGE)
+            {
+                getBuilder(builders, channel).program = data1;
+            }
+            else if (command == CONTROL_CHANGE && data1 == BANK_SELECT_MSB)
+            {
+                PartBuilder builder = getBuilder(builders, channel);
+                builder.bank = (data2 << 7) | (builder.bank & 0x7F);
+            }
+            else if (command == CONTROL_CHANGE && data1 == BANK_SELECT_LSB)
+            {
+                PartBuilder builder = getBuilder(builders, channel);
+                builder.bank = (builder.bank & ~0x7F) | data2;
+            }
+        }
+        
+        for (PartBuilder builder : builders.values())
+        {
+            if (builder.hasNotes())
+            {
+                score.addChild(builder.build(score.getScoreContext()));
+            }
+        }
+    }
+    
+    
+    private static void readMeta(ByteBuffer chunk, int metaType, int length, int tick, Score score, boolean firstTrack)
+    {
+        if (metaType == SET_TEMPO && length == 3)
+        {
+            int microsPerBeat = ((chunk.get() & 0xFF) << 16) | ((chunk.get() & 0xFF) << 8) | (chunk.get() & 0xFF);
+            // The score has a single tempo, so only the one it starts at is kept
+            if (microsPerBeat > 0 && tick == 0)
+            {
+                score.getScoreContext().setTempoBPM((int)Math.round((double)MICROS_PER_MINUTE / microsPerBeat));
+            }
+        }
+        else if (firstTrack && (metaType == TRACK_NAME || metaType == COPYRIGHT))
+        {
+            byte[] text = new byte[length];
+            chunk.get(text);
+            if (metaType == TRACK_NAME)
+            {
+                score.setTitle(new String(text, StandardCharsets.ISO_8859_1));
+            }
+            else
+            {
+                score.getMetadata().addMetaData("copyright", new String(text, StandardCharsets.ISO_8859_1));
+            }
+        }
+        else
+        {
+            skip(chunk, length);
+        }
+    }
+    
+    
+    private static PartBuilder getBuilder(Map<Integer, PartBuilder> builders, int channel)
+    {
+        return builders.computeIfAbsent(channel, PartBuilder::new);
+    }
+    
+    
+    private static int readVariableLength(ByteBuffer buffer)
+    {
+        int value = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            int b = buffer.get() & 0xFF;
+            value = (value << 7) | (b & 0x7F);
+            if (b < 0x80)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable length quantity is too long");
+    }
+    
+    
+    private static void skip(ByteBuffer buffer, int length)
+    {
+        if (length > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(buffer.position() + length);
+    }
+    
+    
+    /**
+     * Turns the notes of one channel of a track into measures as they are read.
+     */
+    private static final class PartBuilder
+    {
+        private static final int    NONE    = -1;
+        
+        private final int           channel;
+        private final List<Measure> measures;
+        private NoteBuffer          measure;
+        private int                 measureFill;
+        private int                 cursor;
+        private int                 bank;
+        private int                 program;
+        private int                 pitch;
+        private int                 noteStart;
+        
+        
+        private PartBuilder(int channel)
+        {
+            this.channel = channel;
+            measures = new ArrayList<>();
+            program = NONE;
+            pitch = NONE;
+        }
+        
+        
+        private void noteOn(int tick, int newPitch)
+        {
+            if (pitch != NONE)
+            {
+                noteOff(tick, pitch);
+            }
+            pitch = newPitch;
+            noteStart = Math.max(tick, cursor);
+        }
+        
+        
+        private void noteOff(int tick, int offPitch)
+        {
+            if (offPitch != pitch)
+            {
+                return;
+            }
+            // A note that rounds to nothing is dropped
+            if (tick > noteStart)
+            {
+                fill(noteStart, true, 0);
+                fill(tick, false, Clef.TREBLE.getStaffPos(pitch));
+            }
+            pitch = NONE;
+        }
+        
+        
+        private boolean hasNotes()
+        {
+            return cursor > 0 || pitch != NONE;
+        }
+        
+        
+        /**
+         * Writes a note or rest from the cursor up to a tick, splitting it at bar lines and into lengths that can be
+         * written.
+         */
+        private void fill(int tick, boolean rest, int staffPos)
+        {
+            while (cursor < tick)
+            {
+                if (measure == null)
+                {
+                    measure = new NoteBuffer();
+                    measureFill = 0;
+                }
+                int ticks = Math.min(tick - cursor, MEASURE_TICKS - measureFill);
+                int piece = 0;
+                while (PIECE_TICKS[piece] > ticks)
+                {
+                    piece++;
+                }
+                if (rest)
+                {
+                    measure.addRest(PIECE_LENGTHS[piece], PIECE_DOTS[piece]);
+                }
+                else
+                {
+                    measure.addNote(PIECE_LENGTHS[piece], PIECE_DOTS[piece], staffPos);
+                }
+                cursor += PIECE_TICKS[piece];
+                measureFill += PIECE_TICKS[piece];
+                if (measureFill == MEASURE_TICKS)
+                {
+                    measures.add(new Measure(measure));
+                    measure = null;
+                }
+            }
+        }
+        
+        
+        private Part build(ScoreContext scoreContext)
+            throws MusicException
+        {
+            if (pitch != NONE)
+            {
+                // A note still held at the end of the track lasts a beat
+                noteOff(noteStart + ScoreCompiler.TICKS_PER_BEAT, pitch);
+            }
+            if (measure != null)
+            {
+                fill(cursor + MEASURE_TICKS - measureFill, true, 0);
+            }
+            
+            Part part = new Part(program == NONE ? null : MidiUtils.getInstrumentOrPlaceholder(bank, program),
+                channel, scoreContext);
+            for (Measure full : measures)
+            {
+                part.addChild(full);
+            }
+            return part;
+        }
+    }
+}
@@ -0,0 +1,1084 @@
+package com.javasharp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.midi.Instrument;
+
+/**
+ * A score written as text, kept parsed as it is edited. The notation is line based:
+ *
+ * <pre>
+ * // Comments run to the end of the line
+ * title Ode to Joy
+ * tempo 120
+ * meta composer Beethoven
+ * part 0 program 0
+ * | q2 q2 q3 q4 | q4 q3 q2 q1 |
+ * | q0 q0 q1 q2 | q.2 e1 h1 |
+ * | 3{e0 e1 e2} qr h-1 |
+ * </pre>
+ *
+ * A note is a length, w, h, q, e, s, t or x for whole down to sixty-fourth, then any dots, then a staff position
+ * counted up from the middle line. A rest has r in place of the staff position. Notes in braces after 3, 5, 6 or 7 are
+ * played as that tuplet. Bars separate the measures of a line, and a line ends its last measure; a measure with nothing
+ * in it is written as a single -. Measures belong to the last part declared, and a part can give a MIDI program and
+ * bank for its instrument. A metadata key is one word. In a title or metadata value a backslash escapes the character
+ * after it, so that \/ keeps two slashes from starting a comment, and \n and \r stand for line breaks.
+ * <p>
+ * Each line is lexed and parsed on its own and the result cached, so an edit only parses the lines it touches again.
+ * The document keeps a score built from the last text without errors, and after an edit changes only the measures of
+ * that score that differ: a change to notes comes down to inserting and removing a few measures, which the score then
+ * compiles and records like any other edit. Only a change to the title, tempo, metadata or parts builds the score
+ * again, from the cached lines, in which case {@link #getScore()} returns the new score from then on.
+ */
+public final class NotationDocument
+{
+    public static final String    FILE_EXTENSION = ".jsn";
+    
+    private static final String   LENGTH_LETTERS = "whqestx";
+    private static final Length[] LENGTHS        = Length.values();
+    private static final String   COMMENT        = "//";
+    private static final char     ESCAPE         = '\\';
+    private static final char     EMPTY_MEASURE  = '-';
+    private static final int      MAX_CHANNEL    = 15;
+    private static final int      MAX_PROGRAM    = 127;
+    
+    private List<Line>            lines;
+    private int                   length;
+    private int                   errorLines;
+    private List<Line>            applied;
+    private int                   cleanPrefix;
+    private int                   cleanSuffix;
+    private Score                 score;
+    
+    
+    /**
+     * Creates an empty document.
+     */
+    public NotationDocument()
+    {
+        lines = new ArrayList<>();
+        lines.add(parseLine(""));
+        applied = new ArrayList<>();
+    }
+    
+    
+    /**
+     * Parses a score from text.
+     *
+     * @param text
+     *            the text
+     * @return the score
+     * @throws NotationException
+     *             if the text has an error
+     * @throws MusicException
+     *             if an instrument cannot be found
+     */
+    public static Score parse(CharSequence text)
+        throws MusicException
+    {
+        NotationDocument document = new NotationDocument();
+        document.setText(text);
+        return document.getScore();
+    }
+    
+    
+    /**
+     * Reads a score from a UTF-8 text file.
+     *
+     * @param file
+     *            the file to read
+     * @return the score
+     * @throws NotationException
+     *             if the text has an error
+     * @throws MusicException
+     *             if the file cannot be read or an instrument cannot be found
+     */
+    public static Score read(File file)
+        throws MusicException
+    {
+        String text;
+        try
+        {
+            text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to read " + file, e);
+        }
+        return parse(text);
+    }
+    
+    
+    /**
+     * Writes a score as a UTF-8 text file.
+     *
+     * @param score
+     *            the score to write
+     * @param file
+     *            the file to write
+     * @throws MusicException
+     *             if the file cannot be written, or the score has children that cannot be written
+     */
+    public static void write(Score score, File file)
+        throws MusicException
+    {
+        String text = format(score);
+        try
+        {
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to write " + file, e);
+        }
+    }
+    
+    
+    /**
+     * Writes a score in the notation, four measures to a line. Parsing the text gives back the same score.
+     *
+     * @param score
+     *            the score
+     * @return the text
+     * @throws MusicException
+     *             if the score has children that cannot be written, or a metadata key that is not a single word
+     */
+    public static String format(Score score)
+        throws MusicException
+    {
+        StringBuilder text = new StringBuilder();
+        text.append("title ").append(escape(score.getTitle())).append('\n');
+        text.append("tempo ").append(score.getScoreContext().getTempoBPM()).append('\n');
+        Metadata metadata = score.getMetadata();
+        for (String key : metadata.getKeys())
+        {
+            if (key.isEmpty() || findWordEnd(key, 0, key.length()) != key.length() || findComment(key) != key.length())
+            {
+                throw new MusicException("Unable to write the metadata key '" + key + "', which is not a single word");
+            }
+            text.append("meta ").append(key).append(' ').append(escape(metadata.getMetaData(key))).append('\n');
+        }
+        for (int i = 0; i < score.getChildCount(); i++)
+        {
+            Instructable<ScoreContext> child = score.getChild(i);
+            if (!(child instanceof Part))
+            {
+                throw new MusicException("Unable to write " + child.getClass().getSimpleName() + " in a score");
+            }
+            Part part = (Part)child;
+            PartContext context = part.getPartContext();
+            text.append("part ").append(context.getChannel());
+            Instrument instrument = context.getInstrument();
+            if (instrument != null)
+            {
+                text.append(" program ").append(instrument.getPatch().getProgram());
+                text.append(" bank ").append(instrument.getPatch().getBank());
+            }
+            text.append('\n');
+            for (int j = 0; j < part.getChildCount(); j++)
+            {
+                text.append(j % 4 == 0 ? "|" : "");
+                formatMeasure(ScoreFile.getNotes(part.getChild(j)), text);
+                text.append(" |").append(j % 4 == 3 || j == part.getChildCount() - 1 ? "\n" : "");
+            }
+        }
+        return text.toString();
+    }
+    
+    
+    /**
+     * Replaces the whole text of the document.
+     *
+     * @param text
+     *            the new text
+     * @throws NotationException
+     *             if the text has an error, in which case the score is left as it was
+     * @throws MusicException
+     *             if an instrument cannot be found
+     */
+    public void setText(CharSequence text)
+        throws MusicException
+    {
+        lines = splitLines(text);
+        length = getLength(lines) - 1;
+        errorLines = countErrors(lines);
+        cleanPrefix = 0;
+        cleanSuffix = 0;
+        update();
+    }
+    
+    
+    /**
+     * Replaces a range of the text. Only the lines the range starts and ends on, and the lines inserted, are parsed
+     * again.
+     *
+     * @param offset
+     *            where the range starts, in characters from the start of the text
+     * @param removedLength
+     *            the length of the range
+     * @param inserted
+     *            the text to put in its place
+     * @throws NotationException
+     *             if the text has an error after the change, in which case the score is left as it was
+     * @throws MusicException
+     *             if an instrument cannot be found
+     */
+    public void edit(int offset, int removedLength, CharSequence inserted)
+        throws MusicException
+    {
+        int end = offset + removedLength;
+        if (offset < 0 || removedLength < 0 || end > length)
+        {
+            throw new IndexOutOfBoundsException("Range: " + offset + " to " + end + ", Length: " + length);
+        }
+        
+        // Line i covers its text and the line break after it
+        int first = 0;
+        int firstStart = 0;
+        while (offset > firstStart + lines.get(first).text.length())
+        {
+            firstStart += lines.get(first).text.length() + 1;
+            first++;
+        }
+        int last = first;
+        int lastStart = firstStart;
+        while (end > lastStart + lines.get(last).text.length())
+        {
+            lastStart += lines.get(last).text.length() + 1;
+            last++;
+        }
+        
+        String replaced = lines.get(first).text.substring(0, offset - firstStart) + inserted +
+            lines.get(last).text.substring(end - lastStart);
+        List<Line> parsed = splitLines(replaced);
+        List<Line> replacedLines = lines.subList(first, last + 1);
+        length += getLength(parsed) - getLength(replacedLines);
+        errorLines += countErrors(parsed) - countErrors(replacedLines);
+        // Lines known to be unchanged since the score was last updated now stop at the replaced lines
+        cleanPrefix = Math.min(cleanPrefix, first);
+        cleanSuffix = Math.min(cleanSuffix, lines.size() - 1 - last);
+        replacedLines.clear();
+        lines.addAll(first, parsed);
+        update();
+    }
+    
+    
+    public String getText()
+    {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < lines.size(); i++)
+        {
+            text.append(i == 0 ? "" : "\n").append(lines.get(i).text);
+        }
+        return text.toString();
+    }
+    
+    
+    /**
+     * Gets the length of the text, in which every line break is a single character.
+     *
+     * @return the length
+     */
+    public int getLength()
+    {
+        return length;
+    }
+    
+    
+    public int getLineCount()
+    {
+        return lines.size();
+    }
+    
+    
+    /**
+     * Gets the score built from the text the last time it had no errors.
+     *
+     * @return the score, or null if the text has never been free of errors
+     */
+    public Score getScore()
+    {
+        return score;
+    }
+    
+    
+    /**
+     * Gets every error in the text.
+     *
+     * @return the errors, in the order of the text
+     */
+    public List<NotationException> getErrors()
+    {
+        List<NotationException> errors = new ArrayList<>();
+        boolean inPart = false;
+        for (int i = 0; i < lines.size(); i++)
+        {
+            Line line = lines.get(i);
+            if (line.error != null)
+            {
+                errors.add(new NotationException(line.error, i + 1, line.errorColumn + 1));
+            }
+            else if (line.kind == Kind.PART)
+            {
+                inPart = true;
+            }
+            else if (line.kind == Kind.MEASURES && !inPart)
+            {
+                errors.add(new NotationException("Measures must come after a part", i + 1, line.firstColumn + 1));
+            }
+        }
+        return errors;
+    }
+    
+    
+    /**
+     * Brings the score up to date with the lines, if they have no errors.
+     */
+    private void update()
+        throws MusicException
+    {
+        if (errorLines > 0 || hasMeasuresBeforePart())
+        {
+            throw getErrors().get(0);
+        }
+        if (score == null)
+        {
+            score = build(lines);
+            setApplied();
+            return;
+        }
+        
+        // Lines that were not parsed again are unchanged, and any others that read the same are too
+        int common = Math.min(applied.size(), lines.size());
+        int prefix = Math.min(cleanPrefix, common);
+        while (prefix < common && isSame(applied.get(prefix), lines.get(prefix)))
+        {
+            prefix++;
+        }
+        int suffix = Math.min(cleanSuffix, common - prefix);
+        while (suffix < common - prefix &&
+            isSame(applied.get(applied.size() - 1 - suffix), lines.get(lines.size() - 1 - suffix)))
+        {
+            suffix++;
+        }
+        List<Line> removed = applied.subList(prefix, applied.size() - suffix);
+        List<Line> added = lines.subList(prefix, lines.size() - suffix);
+        
+        if (hasOnlyMeasures(removed) && hasOnlyMeasures(added))
+        {
+            replaceMeasures(prefix, removed, added);
+            removed.clear();
+            applied.addAll(prefix, added);
+            cleanPrefix = Integer.MAX_VALUE;
+            cleanSuffix = Integer.MAX_VALUE;
+        }
+        else
+        {
+            score = build(lines);
+            setApplied();
+        }
+    }
+    
+    
+    /**
+     * Records that the score has just been built from the current lines.
+     */
+    private void setApplied()
+    {
+        applied = new ArrayList<>(lines);
+        cleanPrefix = Integer.MAX_VALUE;
+        cleanSuffix = Integer.MAX_VALUE;
+    }
+    
+    
+    private boolean hasMeasuresBeforePart()
+    {
+        for (Line line : lines)
+        {
+            if (line.kind == Kind.PART)
+            {
+                return false;
+            }
+            if (line.kind == Kind.MEASURES)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Gets the length of some lines with a line break after each.
+     */
+    private static int getLength(List<Line> range)
+    {
+        int rangeLength = range.size();
+        for (Line line : range)
+        {
+            rangeLength += line.text.length();
+        }
+        return rangeLength;
+    }
+    
+    
+    private static int countErrors(List<Line> range)
+    {
+        int count = 0;
+        for (Line line : range)
+        {
+            if (line.error != null)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    
+    private static boolean isSame(Line a, Line b)
+    {
+        return a == b || a.text.equals(b.text);
+    }
+    
+    
+    private static boolean hasOnlyMeasures(List<Line> range)
+    {
+        for (Line line : range)
+        {
+            if (line.kind != Kind.MEASURES && line.kind != Kind.BLANK)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    
+    /**
+     * Replaces the measures of a run of lines in the score by the measures of the lines that took their place, leaving
+     * the measures that are the same at either end alone.
+     */
+    private void replaceMeasures(int firstLine, List<Line> removed, List<Line> added)
+    {
+        List<NoteBuffer> before = getMeasures(removed);
+        List<NoteBuffer> after = getMeasures(added);
+        if (before.isEmpty() && after.isEmpty())
+        {
+            return;
+        }
+        
+        // Find the part the lines are in, and where in it their measures start
+        int partIndex = -1;
+        int measureIndex = 0;
+        for (int i = 0; i < firstLine; i++)
+        {
+            Line line = lines.get(i);
+            if (line.kind == Kind.PART)
+            {
+                partIndex++;
+                measureIndex = 0;
+            }
+            else if (line.kind == Kind.MEASURES)
+            {
+                measureIndex += line.measures.size();
+            }
+        }
+        
+        int prefix = 0;
+        int common = Math.min(before.size(), after.size());
+        while (prefix < common && before.get(prefix).hasSameEntries(after.get(prefix)))
+        {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix &&
+            before.get(before.size() - 1 - suffix).hasSameEntries(after.get(after.size() - 1 - suffix)))
+        {
+            suffix++;
+        }
+        
+        Part part = (Part)score.getChild(partIndex);
+        int index = measureIndex + prefix;
+        for (int i = prefix; i < before.size() - suffix; i++)
+        {
+            part.removeChild(index);
+        }
+        for (int i = prefix; i < after.size() - suffix; i++)
+        {
+            part.insertChild(index++, new Measure(after.get(i).copy()));
+        }
+    }
+    
+    
+    private static List<NoteBuffer> getMeasures(List<Line> range)
+    {
+        List<NoteBuffer> measures = new ArrayList<>();
+        for (Line line : range)
+        {
+            if (line.kind == Kind.MEASURES)
+            {
+                measures.addAll(line.measures);
+            }
+        }
+        return measures;
+    }
+    
+    
+    private static Score build(List<Line> lines)
+        throws MusicException
+    {
+        Score score = new Score();
+        Line partLine = null;
+        List<Measure> measures = new ArrayList<>();
+        for (Line line : lines)
+        {
+            switch (line.kind)
+            {
+                case TITLE:
+                    score.setTitle(line.value);
+                    break;
+                case TEMPO:
+                    score.getScoreContext().setTempoBPM(line.number);
+                    break;
+                case META:
+                    score.getMetadata().addMetaData(line.key, line.value);
+                    break;
+                case PART:
+                    addPart(score, partLine, measures);
+                    partLine = line;
+                    measures = new ArrayList<>();
+                    break;
+                case MEASURES:
+                    for (NoteBuffer notes : line.measures)
+                    {
+                        measures.add(new Measure(notes.copy()));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        addPart(score, partLine, measures);
+        score.getHistory().clear();
+        return score;
+    }
+    
+    
+    private static void addPart(Score score, Line partLine, List<Measure> measures)
+        throws MusicException
+    {
+        if (partLine == null)
+        {
+            return;
+        }
+        Instrument instrument =
+            partLine.program < 0 ? null : ScoreFile.getInstrument(partLine.bank, partLine.program);
+        Part part = new Part(instrument, partLine.number, score.getScoreContext());
+        // Filled in before the part joins the score, so that it is all one insertion
+        part.initChildren(measures);
+        score.addChild(part);
+    }
+    
+    
+    private static void formatMeasure(NoteBuffer notes, StringBuilder text)
+    {
+        if (notes.size() == 0)
+        {
+            // Two bars with nothing between them are not a measure at all
+            text.append(' ').append(EMPTY_MEASURE);
+            return;
+        }
+        Tuplet tuplet = Tuplet.NONE;
+        for (int i = 0; i < notes.size(); i++)
+        {
+            if (notes.getTuplet(i) != tuplet)
+            {
+                text.append(tuplet == Tuplet.NONE ? "" : " }");
+                tuplet = notes.getTuplet(i);
+                text.append(tuplet == Tuplet.NONE ? "" : " " + tuplet.getActual() + "{");
+            }
+            text.append(' ').append(LENGTH_LETTERS.charAt(notes.getBaseLength(i).ordinal()));
+            for (int dot = 0; dot < notes.getNumDots(i); dot++)
+            {
+                text.append('.');
+            }
+            if (notes.isRest(i))
+            {
+                text.append('r');
+            }
+            else
+            {
+                text.append(notes.getStaffPos(i));
+            }
+        }
+        text.append(tuplet == Tuplet.NONE ? "" : " }");
+    }
+    
+    
+    private static List<Line> splitLines(CharSequence text)
+    {
+        List<Line> result = new ArrayList<>();
+        String string = text.toString();
+        int start = 0;
+        while (true)
+        {
+            int end = string.indexOf('\n', start);
+            int lineEnd = end < 0 ? string.length() : end;
+            // Line breaks are kept as plain \n, whatever they were in the text
+            int contentEnd = lineEnd > start && string.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            result.add(parseLine(string.substring(start, contentEnd)));
+            if (end < 0)
+            {
+                return result;
+            }
+            start = end + 1;
+        }
+    }
+    
+    
+    private static Line parseLine(String text)
+    {
+        Line line = new Line(text);
+        int end = findComment(text);
+        int pos = skipSpace(text, 0, end);
+        line.firstColumn = pos;
+        try
+        {
+            if (pos == end)
+            {
+                line.kind = Kind.BLANK;
+                return line;
+            }
+            // Most lines are measures and start with a bar, which no keyword does
+            int wordEnd = findWordEnd(text, pos, end);
+            switch (text.charAt(pos) == '|' ? "" : text.substring(pos, wordEnd))
+            {
+                case "title":
+                    line.kind = Kind.TITLE;
+                    line.value = unescape(text.substring(wordEnd, end).trim());
+                    break;
+                case "tempo":
+                    line.kind = Kind.TEMPO;
+                    pos = skipSpace(text, wordEnd, end);
+                    line.number = readInt(text, pos, end, ScoreContext.MIN_TEMPO_BPM, ScoreContext.MAX_TEMPO_BPM,
+                        "a tempo in beats per minute");
+                    expectEnd(text, findWordEnd(text, pos, end), end);
+                    break;
+                case "meta":
+                    line.kind = Kind.META;
+                    pos = skipSpace(text, wordEnd, end);
+                    if (pos == end)
+                    {
+                        throw new LineError(pos, "Expected a metadata key");
+                    }
+                    wordEnd = findWordEnd(text, pos, end);
+                    line.key = text.substring(pos, wordEnd);
+                    line.value = unescape(text.substring(wordEnd, end).trim());
+                    break;
+                case "part":
+                    line.kind = Kind.PART;
+                    parsePart(line, text, wordEnd, end);
+                    break;
+                default:
+                    line.kind = Kind.MEASURES;
+                    line.measures = parseMeasures(text, pos, end);
+                    break;
+            }
+        }
+        catch (LineError e)
+        {
+            line.error = e.getMessage();
+            line.errorColumn = e.column;
+        }
+        return line;
+    }
+    
+    
+    private static void parsePart(Line line, String text, int from, int end)
+        throws LineError
+    {
+        int pos = skipSpace(text, from, end);
+        line.number = readInt(text, pos, end, 0, MAX_CHANNEL, "a channel");
+        line.program = -1;
+        pos = skipSpace(text, findWordEnd(text, pos, end), end);
+        while (pos < end)
+        {
+            int wordEnd = findWordEnd(text, pos, end);
+            String option = text.substring(pos, wordEnd);
+            int valuePos = skipSpace(text, wordEnd, end);
+            if (option.equals("program"))
+            {
+                line.program = readInt(text, valuePos, end, 0, MAX_PROGRAM, "a program number");
+            }
+            else if (option.equals("bank"))
+            {
+                line.bank = readInt(text, valuePos, end, 0, Integer.MAX_VALUE, "a bank number");
+            }
+            else
+            {
+                throw new LineError(pos, "Expected program or bank, found '" + option + "'");
+            }
+            pos = skipSpace(text, findWordEnd(text, valuePos, end), end);
+        }
+    }
+    
+    
+    private static List<NoteBuffer> parseMeasures(String text, int from, int end)
+        throws LineError
+    {
+        List<NoteBuffer> measures = new ArrayList<>();
+        NoteBuffer measure = null;
+        Tuplet tuplet = Tuplet.NONE;
+        int tupletStart = 0;
+        int pos = from;
+        while ((pos = skipSpace(text, pos, end)) < end)
+        {
+            char c = text.charAt(pos);
+            if (c == '|')
+            {
+                if (tuplet != Tuplet.NONE)
+                {
+                    throw new LineError(tupletStart, "Tuplet is not closed before the bar");
+                }
+                if (measure != null)
+                {
+                    measures.add(measure);
+                    measure = null;
+                }
+                pos++;
+            }
+            else if (c == '}')
+            {
+                if (tuplet == Tuplet.NONE)
+                {
+                    throw new LineError(pos, "'}' without a tuplet to close");
+                }
+                tuplet = Tuplet.NONE;
+                pos++;
+            }
+            else if (c >= '0' && c <= '9')
+            {
+                if (tuplet != Tuplet.NONE)
+                {
+                    throw new LineError(pos, "Tuplets cannot be nested");
+                }
+                tupletStart = pos;
+                int actual = 0;
+                while (pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '9' && actual < 100)
+                {
+                    actual = actual * 10 + text.charAt(pos++) - '0';
+                }
+                if (pos == end || text.charAt(pos) != '{')
+                {
+                    throw new LineError(pos, "Expected '{' after the tuplet number");
+                }
+                tuplet = getTuplet(actual, tupletStart);
+                pos++;
+            }
+            else if (c == EMPTY_MEASURE && (pos + 1 == end || isDelimiter(text.charAt(pos + 1))))
+            {
+                if (measure != null || tuplet != Tuplet.NONE)
+                {
+                    throw new LineError(pos, "'" + EMPTY_MEASURE + "' is only for a measure with nothing else in it");
+                }
+                measure = new NoteBuffer();
+                pos++;
+            }
+            else
+            {
+                if (measure == null)
+                {
+                    measure = new NoteBuffer();
+                }
+                else if (measure.size() == 0)
+                {
+                    throw new LineError(pos, "A measure marked empty with '" + EMPTY_MEASURE + "' cannot have notes");
+                }
+                pos = parseNote(text, pos, end, tuplet, measure);
+            }
+        }
+        if (tuplet != Tuplet.NONE)
+        {
+            throw new LineError(tupletStart, "Tuplet is not closed");
+        }
+        if (measure != null)
+        {
+            measures.add(measure);
+        }
+        return measures;
+    }
+    
+    
+    /**
+     * Parses a note or rest and adds it to a measure.
+     *
+     * @return the position after the note
+     */
+    private static int parseNote(String text, int start, int end, Tuplet tuplet, NoteBuffer measure)
+        throws LineError
+    {
+        int lengthIndex = LENGTH_LETTERS.indexOf(text.charAt(start));
+        if (lengthIndex < 0)
+        {
+            throw new LineError(start,
+                "Expected a note, a rest, a tuplet or a bar, found '" + text.charAt(start) + "'");
+        }
+        Length length = LENGTHS[lengthIndex];
+        int pos = start + 1;
+        int dots = 0;
+        while (pos < end && text.charAt(pos) == '.')
+        {
+            dots++;
+            pos++;
+        }
+        if (dots > length.getMaxDots())
+        {
+            throw new LineError(start, length + " notes can have at most " + length.getMaxDots() + " dots");
+        }
+        
+        if (pos < end && text.charAt(pos) == 'r')
+        {
+            measure.add(length, dots, tuplet, 0, NoteBuffer.FLAG_REST);
+            pos++;
+        }
+        else
+        {
+            int staffPos = readInt(text, pos, end, Byte.MIN_VALUE, Byte.MAX_VALUE, "a staff position or 'r'");
+            measure.add(length, dots, tuplet, staffPos, 0);
+            pos = findNumberEnd(text, pos, end);
+        }
+        if (pos < end && !isDelimiter(text.charAt(pos)))
+        {
+            throw new LineError(pos, "Unexpected '" + text.charAt(pos) + "' after a note");
+        }
+        return pos;
+    }
+    
+    
+    private static Tuplet getTuplet(int actual, int column)
+        throws LineError
+    {
+        for (Tuplet tuplet : Tuplet.values())
+        {
+            if (tuplet != Tuplet.NONE && tuplet.getActual() == actual)
+            {
+                return tuplet;
+            }
+        }
+        throw new LineError(column, "There is no tuplet of " + actual + "; use 3, 5, 6 or 7");
+    }
+    
+    
+    /**
+     * Reads a whole number, optionally signed, that must end at a delimiter.
+     */
+    private static int readInt(String text, int pos, int end, int min, int max, String expected)
+        throws LineError
+    {
+        int numberEnd = findNumberEnd(text, pos, end);
+        int digitsStart = pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+') ? pos + 1 : pos;
+        if (numberEnd == digitsStart)
+        {
+            throw new LineError(pos, "Expected " + expected);
+        }
+        if (numberEnd < end && !isDelimiter(text.charAt(numberEnd)))
+        {
+            throw new LineError(numberEnd, "Unexpected '" + text.charAt(numberEnd) + "' in a number");
+        }
+        long value = 0;
+        for (int i = digitsStart; i < numberEnd && value <= max; i++)
+        {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        value = text.charAt(pos) == '-' ? -value : value;
+        if (value < min || value > max)
+        {
+            throw new LineError(pos, "Expected " + expected + " from " + min + " to " + max);
+        }
+        return (int)value;
+    }
+    
+    
+    private static int findNumberEnd(String text, int pos, int end)
+    {
+        int i = pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+') ? pos + 1 : pos;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+        {
+            i++;
+        }
+        return i;
+    }
+    
+    
+    private static void expectEnd(String text, int pos, int end)
+        throws LineError
+    {
+        int next = skipSpace(text, pos, end);
+        if (next < end)
+        {
+            throw new LineError(next, "Unexpected '" + text.charAt(next) + "' at the end of the line");
+        }
+    }
+    
+    
+    /**
+     * Finds where the comment on a line starts, skipping any escaped character.
+     *
+     * @return the position of the comment, or the length of the line if it has none
+     */
+    private static int findComment(String text)
+    {
+        for (int i = 0; i < text.length() - 1; i++)
+        {
+            if (text.charAt(i) == ESCAPE)
+            {
+                i++;
+            }
+            else if (text.startsWith(COMMENT, i))
+            {
+                return i;
+            }
+        }
+        return text.length();
+    }
+    
+    
+    /**
+     * Escapes a title or metadata value so that it reads back the same: backslashes, line breaks, and any slash that
+     * would start a comment with the one after it.
+     */
+    private static String escape(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == ESCAPE || (c == '/' && i + 1 < value.length() && value.charAt(i + 1) == '/'))
+            {
+                escaped.append(ESCAPE).append(c);
+            }
+            else if (c == '\n' || c == '\r')
+            {
+                escaped.append(ESCAPE).append(c == '\n' ? 'n' : 'r');
+            }
+            else
+            {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+    
+    
+    private static String unescape(String value)
+    {
+        if (value.indexOf(ESCAPE) < 0)
+        {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == ESCAPE && i + 1 < value.length())
+            {
+                c = value.charAt(++i);
+                c = c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+    
+    
+    private static int skipSpace(String text, int pos, int end)
+    {
+        int i = pos;
+        while (i < end && Character.isWhitespace(text.charAt(i)))
+        {
+            i++;
+        }
+        return i;
+    }
+    
+    
+    private static int findWordEnd(String text, int pos, int end)
+    {
+        int i = pos;
+        while (i < end && !isDelimiter(text.charAt(i)))
+        {
+            i++;
+        }
+        return i;
+    }
+    
+    
+    private static boolean isDelimiter(char c)
+    {
+        return Character.isWhitespace(c) || c == '|' || c == '}';
+    }
+    
+    
+    private enum Kind
+    {
+        BLANK,
+        TITLE,
+        TEMPO,
+        META,
+        PART,
+        MEASURES
+    }
+    
+    
+    /**
+     * A line of the text and what it parsed to. Lines are never changed once parsed, so unchanged lines can be shared
+     * between versions of the text.
+     */
+    private static final class Line
+    {
+        private final String     text;
+        private Kind             kind;
+        private int              firstColumn;
+        private String           key;
+        private String           value;
+        private int              number;
+        private int              program;
+        private int              bank;
+        private List<NoteBuffer> measures;
+        private String           error;
+        private int              errorColumn;
+        
+        
+        private Line(String text)
+        {
+            this.text = text;
+        }
+    }
+    
+    
+    /**
+     * An error found while parsing a line, at a column of the line. The line number is only known when the error is
+     * reported, since lines move as the text above them is edited.
+     */
+    private static final class LineError
+        extends Exception
+    {
+        private static final long serialVersionUID = -3412873349066871201L;
+        
+        private final int         column;
+        
+        
+        private LineError(int column, String message)
+        {
+            // Errors are expected while text is typed, so they skip filling in a stack trace
+            super(message, null, false, false);
+            this.column = column;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.javasharp.model;
+
+/**
+ * An error in a score written in the text notation, with where in the text it is.
+ */
+public class NotationException
+    extends MusicException
+{
+    private static final long serialVersionUID = 2964418027146542683L;
+    
+    private final int         line;
+    private final int         column;
+    
+    
+    /**
+     * Creates an exception for an error in the text.
+     *
+     * @param message
+     *            what is wrong
+     * @param line
+     *            the line the error is on, counting from 1
+     * @param column
+     *            the column the error starts at, counting from 1
+     */
+    public NotationException(String message, int line, int column)
+    {
+        super("Line " + line + ", column " + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+    
+    
+    public int getLine()
+    {
+        return line;
+    }
+    
+    
+    public int getColumn()
+    {
+        return column;
+    }
+}
@@ -1,27 +1,76 @@
-package com.javasharp.model;
-
-public class Note
-    extends LengthedInstructable<PartContext>
-{
-    
-    private int staffPos;
-    
-    
-    // TODO private Articulation articulation;
-    // TODO private Accidental accidental;
-    
-    public Note(Length length, int numDots)
-    {
-        super(length, numDots);
-        
-    }
-    
-    
-    @Override
-    public void instruct(PartContext context)
-    {
-        // TODO Auto-generated method stub
-        
-    }
-    
-}
+package com.javasharp.model;
+
+public class Note
+    extends LengthedInstructable<PartContext>
+{
+    
+    private int staffPos;
+    
+    
+    // TODO private Articulation articulation;
+    // TODO private Accidental accidental;
+    
+    public Note(Length length, int numDots)
+    {
+        this(length, numDots, 0);
+    }
+    
+    
+    public Note(Length length, int numDots, int staffPos)
+    {
+        this(length, numDots, staffPos, Tuplet.NONE);
+    }
+    
+    
+    public Note(Length length, int numDots, int staffPos, Tuplet tuplet)
+    {
+        super(length, numDots, tuplet);
+        this.staffPos = staffPos;
+    }
+    
+    
+    public int getStaffPos()
+    {
+        return staffPos;
+    }
+    
+    
+    /**
+     * Checks that the note can move by a number of staff positions, which must stay in the range that scores are
+     * packed and saved in.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @throws IllegalArgumentException
+     *             if the note would move out of the range of staff positions
+     */
+    void checkTranspose(int steps)
+    {
+        int moved = staffPos + steps;
+        if (moved < Byte.MIN_VALUE || moved > Byte.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Staff position is out of range: " + moved);
+        }
+    }
+    
+    
+    void transpose(int steps)
+    {
+        staffPos += steps;
+    }
+    
+    
+    @Override
+    public void instruct(PartContext context)
+    {
+        context.playNote(staffPos, getLength());
+    }
+    
+    
+    @Override
+    public long getContentHash()
+    {
+        return NoteBuffer.hashEntry(0, getBaseLength(), getNumDots(), getTuplet(), staffPos);
+    }
+    
+}
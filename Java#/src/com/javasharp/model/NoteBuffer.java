@@ -0,0 +1,392 @@
+package com.javasharp.model;
+
+import com.javasharp.model.util.ContentHash;
+import java.util.Arrays;
+
+/**
+ * Packed storage for the notes and rests of a {@link Measure}. Instead of one object per note, each note takes a single
+ * int holding its staff position, length, dots, flags and tuplet, and instructing the buffer walks that array directly.
+ * Note and rest objects are only created as views when a caller asks for a child.
+ */
+public final class NoteBuffer
+{
+    /**
+     * Set in an entry's flags when the entry is a rest. The remaining bits are reserved for articulations.
+     */
+    public static final int       FLAG_REST        = 1;
+    
+    private static final int      DEFAULT_CAPACITY = 4;
+    private static final Length[] LENGTHS          = Length.values();
+    private static final Tuplet[] TUPLETS          = Tuplet.values();
+    private static final long     ENTRY_HASH_SEED  = ContentHash.start(NoteBuffer.class);
+    
+    private static final int      LENGTH_SHIFT     = 8;
+    private static final int      DOTS_SHIFT       = 12;
+    private static final int      FLAGS_SHIFT      = 16;
+    private static final int      TUPLET_SHIFT     = 24;
+    private static final int      NIBBLE_MASK      = 0xF;
+    private static final int      BYTE_MASK        = 0xFF;
+    
+    private int[]                 entries;
+    private int                   size;
+    private int                   totalLength;
+    
+    
+    public NoteBuffer()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    
+    public NoteBuffer(int capacity)
+    {
+        entries = new int[capacity];
+    }
+    
+    
+    public int size()
+    {
+        return size;
+    }
+    
+    
+    /**
+     * Gets the total length of the notes and rests in the buffer, which is kept up to date as entries are added and
+     * removed.
+     *
+     * @return the total length in ticks
+     */
+    public int getTotalLength()
+    {
+        return totalLength;
+    }
+    
+    
+    public void addNote(Length length, int numDots, int staffPos)
+    {
+        insert(size, length, numDots, Tuplet.NONE, staffPos, 0);
+    }
+    
+    
+    public void addRest(Length length, int numDots)
+    {
+        insert(size, length, numDots, Tuplet.NONE, 0, FLAG_REST);
+    }
+    
+    
+    /**
+     * Inserts a note or rest into the buffer.
+     *
+     * @param index
+     *            the index to insert at
+     * @param instructable
+     *            the child to insert
+     * @return false if the child is not a plain note or rest and cannot be packed, in which case the buffer is
+     *         unchanged
+     */
+    public boolean insert(int index, Instructable<PartContext> instructable)
+    {
+        if (instructable.getClass() == Note.class)
+        {
+            Note note = (Note)instructable;
+            insert(index, note.getBaseLength(), note.getNumDots(), note.getTuplet(), note.getStaffPos(), 0);
+            return true;
+        }
+        if (instructable.getClass() == Rest.class)
+        {
+            Rest rest = (Rest)instructable;
+            insert(index, rest.getBaseLength(), rest.getNumDots(), rest.getTuplet(), 0, FLAG_REST);
+            return true;
+        }
+        return false;
+    }
+    
+    
+    public void remove(int index)
+    {
+        totalLength -= getTicks(index);
+        System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+        size--;
+    }
+    
+    
+    public boolean isRest(int index)
+    {
+        return (getFlags(index) & FLAG_REST) != 0;
+    }
+    
+    
+    public int getFlags(int index)
+    {
+        return (getEntry(index) >>> FLAGS_SHIFT) & BYTE_MASK;
+    }
+    
+    
+    public Length getBaseLength(int index)
+    {
+        return LENGTHS[(getEntry(index) >>> LENGTH_SHIFT) & NIBBLE_MASK];
+    }
+    
+    
+    public int getNumDots(int index)
+    {
+        return (getEntry(index) >>> DOTS_SHIFT) & NIBBLE_MASK;
+    }
+    
+    
+    public Tuplet getTuplet(int index)
+    {
+        return TUPLETS[(getEntry(index) >>> TUPLET_SHIFT) & NIBBLE_MASK];
+    }
+    
+    
+    public int getStaffPos(int index)
+    {
+        return (byte)getEntry(index);
+    }
+    
+    
+    public int getTicks(int index)
+    {
+        return ticksOf(getEntry(index));
+    }
+    
+    
+    /**
+     * Creates a note or rest object for an entry, for callers that need an {@link Instructable}. The object is a copy
+     * and changing the buffer afterwards does not affect it.
+     *
+     * @param index
+     *            the index of the entry
+     * @return a note or rest equal to the entry
+     */
+    public LengthedInstructable<PartContext> get(int index)
+    {
+        if (isRest(index))
+        {
+            return new Rest(getBaseLength(index), getNumDots(index), getTuplet(index));
+        }
+        return new Note(getBaseLength(index), getNumDots(index), getStaffPos(index), getTuplet(index));
+    }
+    
+    
+    /**
+     * Gets the content hash of the entries, folded the same way a {@link GroupInstructable} folds the hashes of its
+     * children, so that a packed measure hashes the same as the measure with its notes as objects.
+     * 
+     * @param hash
+     *            the hash to fold the entries into
+     * @return the new hash
+     */
+    long addContentHashes(long hash)
+    {
+        long result = hash;
+        for (int i = 0; i < size; i++)
+        {
+            int entry = entries[i];
+            int flags = (entry >>> FLAGS_SHIFT) & BYTE_MASK;
+            result = ContentHash.add(result, hashEntry(flags, LENGTHS[(entry >>> LENGTH_SHIFT) & NIBBLE_MASK],
+                (entry >>> DOTS_SHIFT) & NIBBLE_MASK, TUPLETS[(entry >>> TUPLET_SHIFT) & NIBBLE_MASK],
+                (flags & FLAG_REST) != 0 ? 0 : (byte)entry));
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Plays every entry in order.
+     *
+     * @param context
+     *            the context to play into
+     */
+    public void instruct(PartContext context)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            int entry = entries[i];
+            if ((entry & (FLAG_REST << FLAGS_SHIFT)) != 0)
+            {
+                context.rest(ticksOf(entry));
+            }
+            else
+            {
+                context.playNote((byte)entry, ticksOf(entry));
+            }
+        }
+    }
+    
+    
+    /**
+     * Moves every note in the buffer by a number of staff positions. Rests are left as they are.
+     *
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @throws IllegalArgumentException
+     *             if a note would move out of the range of staff positions, in which case the buffer is unchanged
+     */
+    public void transpose(int steps)
+    {
+        checkTranspose(steps);
+        for (int i = 0; i < size; i++)
+        {
+            int entry = entries[i];
+            if ((entry & (FLAG_REST << FLAGS_SHIFT)) == 0)
+            {
+                entries[i] = (entry & ~BYTE_MASK) | (((byte)entry + steps) & BYTE_MASK);
+            }
+        }
+    }
+    
+    
+    /**
+     * Checks that every note in the buffer can move by a number of staff positions.
+     *
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @throws IllegalArgumentException
+     *             if a note would move out of the range of staff positions
+     */
+    void checkTranspose(int steps)
+    {
+        int min = Byte.MAX_VALUE;
+        int max = Byte.MIN_VALUE;
+        for (int i = 0; i < size; i++)
+        {
+            if ((entries[i] & (FLAG_REST << FLAGS_SHIFT)) == 0)
+            {
+                min = Math.min(min, (byte)entries[i]);
+                max = Math.max(max, (byte)entries[i]);
+            }
+        }
+        if (min <= max && (min + steps < Byte.MIN_VALUE || max + steps > Byte.MAX_VALUE))
+        {
+            throw new IllegalArgumentException("Staff position is out of range: " +
+                (min + steps < Byte.MIN_VALUE ? min + steps : max + steps));
+        }
+    }
+    
+    
+    /**
+     * Hashes a note or rest, whether it is packed or an object.
+     */
+    static long hashEntry(int flags, Length length, int numDots, Tuplet tuplet, int staffPos)
+    {
+        long hash = ContentHash.add(ENTRY_HASH_SEED, flags);
+        hash = ContentHash.add(hash, length.ordinal());
+        hash = ContentHash.add(hash, numDots);
+        hash = ContentHash.add(hash, tuplet.ordinal());
+        return ContentHash.add(hash, staffPos);
+    }
+    
+    
+    private static int ticksOf(int entry)
+    {
+        return LENGTHS[(entry >>> LENGTH_SHIFT) & NIBBLE_MASK].getLength((entry >>> DOTS_SHIFT) & NIBBLE_MASK,
+            TUPLETS[(entry >>> TUPLET_SHIFT) & NIBBLE_MASK]);
+    }
+    
+    
+    private void insert(int index, Length length, int numDots, Tuplet tuplet, int staffPos, int entryFlags)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (staffPos < Byte.MIN_VALUE || staffPos > Byte.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Staff position is out of range: " + staffPos);
+        }
+        int ticks = length.getLength(numDots, tuplet);
+        
+        if (size == entries.length)
+        {
+            entries = Arrays.copyOf(entries, Math.max(DEFAULT_CAPACITY, 2 * size));
+        }
+        System.arraycopy(entries, index, entries, index + 1, size - index);
+        entries[index] = (staffPos & BYTE_MASK) | (length.ordinal() << LENGTH_SHIFT) | (numDots << DOTS_SHIFT) |
+            (entryFlags << FLAGS_SHIFT) | (tuplet.ordinal() << TUPLET_SHIFT);
+        size++;
+        totalLength += ticks;
+    }
+    
+    
+    /**
+     * Appends a note or rest, which may be in a tuplet.
+     *
+     * @param length
+     *            the written length
+     * @param numDots
+     *            the number of dots
+     * @param tuplet
+     *            the tuplet the entry is in
+     * @param staffPos
+     *            the staff position of a note, ignored for a rest
+     * @param entryFlags
+     *            the flags of the entry, such as {@link #FLAG_REST}
+     */
+    void add(Length length, int numDots, Tuplet tuplet, int staffPos, int entryFlags)
+    {
+        insert(size, length, numDots, tuplet, (entryFlags & FLAG_REST) != 0 ? 0 : staffPos, entryFlags);
+    }
+    
+    
+    /**
+     * Copies the buffer, so that the copy can be given to a measure of its own.
+     *
+     * @return a buffer with the same entries
+     */
+    NoteBuffer copy()
+    {
+        NoteBuffer copy = new NoteBuffer(0);
+        copy.entries = Arrays.copyOf(entries, Math.max(size, 1));
+        copy.size = size;
+        copy.totalLength = totalLength;
+        return copy;
+    }
+    
+    
+    /**
+     * Checks whether another buffer holds the same entries in the same order.
+     *
+     * @param other
+     *            the other buffer
+     * @return true if the entries are the same
+     */
+    boolean hasSameEntries(NoteBuffer other)
+    {
+        return Arrays.equals(entries, 0, size, other.entries, 0, other.size);
+    }
+    
+    
+    /**
+     * Appends an entry in its packed form, as read back from a score file.
+     *
+     * @param entry
+     *            the packed entry
+     */
+    void addEntry(int entry)
+    {
+        int lengthIndex = (entry >>> LENGTH_SHIFT) & NIBBLE_MASK;
+        if (lengthIndex >= LENGTHS.length)
+        {
+            throw new IllegalArgumentException("Invalid length: " + lengthIndex);
+        }
+        int tupletIndex = entry >>> TUPLET_SHIFT;
+        if (tupletIndex >= TUPLETS.length)
+        {
+            throw new IllegalArgumentException("Invalid tuplet: " + tupletIndex);
+        }
+        insert(size, LENGTHS[lengthIndex], (entry >>> DOTS_SHIFT) & NIBBLE_MASK, TUPLETS[tupletIndex], (byte)entry,
+            (entry >>> FLAGS_SHIFT) & BYTE_MASK);
+    }
+    
+    
+    int getEntry(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return entries[index];
+    }
+}
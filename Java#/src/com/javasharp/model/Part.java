@@ -1,38 +1,317 @@
-package com.javasharp.model;
-
-import javax.sound.midi.Instrument;
-
-public class Part
-    extends GroupInstructable<ScoreContext, PartContext>
-{
-    private final PartContext partContext;
-    
-    
-    public Part(Instrument instrument, int channel, ScoreContext scoreContext)
-    {
-        partContext = new PartContext(scoreContext, instrument, channel);
-    }
-    
-    
-    @Override
-    public void instruct(ScoreContext context)
-    {
-        super.instructChildren(partContext);
-    }
-    
-    
-    @Override
-    public int getLength()
-    {
-        return super.getChildLengthSum();
-    }
-    
-    
-    @Override
-    public void onTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        // TODO Auto-generated method stub
-        
-    }
-    
-}
+package com.javasharp.model;
+
+import com.javasharp.model.util.ContentHash;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import javax.sound.midi.Instrument;
+
+public class Part
+    extends GroupInstructable<ScoreContext, PartContext>
+{
+    private final PartContext                 partContext;
+    private final TickIndex                   tickIndex;
+    private boolean                           tickIndexStale;
+    
+    private volatile Supplier<List<Measure>> loader;
+    private final int                         unloadedLength;
+    
+    
+    public Part(Instrument instrument, int channel, ScoreContext scoreContext)
+    {
+        this(instrument, channel, scoreContext, 0, null);
+    }
+    
+    
+    /**
+     * Creates a part whose measures are only created the first time anything looks at them.
+     * 
+     * @param instrument
+     *            the instrument of the part
+     * @param channel
+     *            the channel of the part
+     * @param scoreContext
+     *            the context of the score the part belongs to
+     * @param length
+     *            the length of the part, reported until it is loaded
+     * @param loader
+     *            creates the measures of the part, or null if the part starts out empty
+     */
+    Part(Instrument instrument, int channel, ScoreContext scoreContext, int length, Supplier<List<Measure>> loader)
+    {
+        partContext = new PartContext(scoreContext, instrument, channel);
+        tickIndex = new TickIndex();
+        tickIndexStale = true;
+        this.loader = loader;
+        unloadedLength = length;
+    }
+    
+    
+    @Override
+    public void instruct(ScoreContext context)
+    {
+        partContext.beginTrack(context.getTrack(getIndexInParent()));
+        for (int i = 0; i < getChildCount(); i++)
+        {
+            partContext.compileChild(getChild(i));
+        }
+    }
+    
+    
+    /**
+     * Recompiles only the children of this part that have changed since the part was last instructed.
+     */
+    void patchTrack()
+    {
+        partContext.patchTrack();
+    }
+    
+    
+    PartContext getPartContext()
+    {
+        return partContext;
+    }
+    
+    
+    @Override
+    public int getLength()
+    {
+        return loader != null ? unloadedLength : super.getChildLengthSum();
+    }
+    
+    
+    @Override
+    public void insertChild(int index, Instructable<PartContext> instructable)
+    {
+        load();
+        super.insertChild(index, instructable);
+    }
+    
+    
+    @Override
+    public void addChild(Instructable<PartContext> instructable)
+    {
+        load();
+        super.addChild(instructable);
+    }
+    
+    
+    @Override
+    public void removeChild(int index)
+    {
+        load();
+        super.removeChild(index);
+    }
+    
+    
+    @Override
+    public int getChildCount()
+    {
+        load();
+        return super.getChildCount();
+    }
+    
+    
+    @Override
+    public Instructable<PartContext> getChild(int index)
+    {
+        load();
+        return super.getChild(index);
+    }
+    
+    
+    /**
+     * Folds the instrument and channel of the part into its hash ahead of its measures, since they change what every
+     * note plays. The clef and key are left out: they always start out the same, and change only through children.
+     */
+    @Override
+    protected long computeContentHash(long hash)
+    {
+        load();
+        Instrument instrument = partContext.getInstrument();
+        int bank = instrument == null ? ScoreFile.NO_INSTRUMENT : instrument.getPatch().getBank();
+        int program = instrument == null ? ScoreFile.NO_INSTRUMENT : instrument.getPatch().getProgram();
+        long result = ContentHash.add(ContentHash.add(hash, bank), program);
+        result = ContentHash.add(result, partContext.getChannel());
+        return super.computeContentHash(result);
+    }
+    
+    
+    public boolean isLoaded()
+    {
+        return loader == null;
+    }
+    
+    
+    private void load()
+    {
+        if (loader != null)
+        {
+            synchronized (this)
+            {
+                if (loader != null)
+                {
+                    initChildren(loader.get());
+                    loader = null;
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Copies the part into another score, so that the copy can be read on another thread while this one is edited. A
+     * part that has not been loaded yet shares its loader with the copy, which decodes its own measures when it is
+     * first looked at.
+     * 
+     * @param scoreContext
+     *            the context of the score the copy belongs to
+     * @return a part with the same instrument, channel and measures, and no parent
+     */
+    Part snapshot(ScoreContext scoreContext)
+    {
+        Supplier<List<Measure>> unloaded = loader;
+        if (unloaded != null)
+        {
+            return new Part(partContext.getInstrument(), partContext.getChannel(), scoreContext, unloadedLength,
+                unloaded);
+        }
+        List<Instructable<PartContext>> measures = new ArrayList<>(super.getChildCount());
+        for (int i = 0; i < super.getChildCount(); i++)
+        {
+            Instructable<PartContext> child = super.getChild(i);
+            measures.add(child instanceof Measure ? ((Measure)child).snapshot() : child);
+        }
+        Part copy = new Part(partContext.getInstrument(), partContext.getChannel(), scoreContext);
+        copy.initChildren(measures);
+        return copy;
+    }
+    
+    
+    /**
+     * Checks that every note in the part can move by a number of staff positions.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @throws IllegalArgumentException
+     *             if a note would move out of the range of staff positions
+     */
+    void checkTranspose(int steps)
+    {
+        int count = getChildCount();
+        for (int i = 0; i < count; i++)
+        {
+            Instructable<PartContext> child = getChild(i);
+            if (child instanceof Measure)
+            {
+                ((Measure)child).checkTranspose(steps);
+            }
+        }
+    }
+    
+    
+    /**
+     * Moves every note in the part by a number of staff positions. Only the part's own measures are touched, so parts
+     * can be transposed in parallel; the score is told about the change by the caller, which must have checked the
+     * move with {@link #checkTranspose(int)} first.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     */
+    void transpose(int steps)
+    {
+        int count = getChildCount();
+        for (int i = 0; i < count; i++)
+        {
+            Instructable<PartContext> child = getChild(i);
+            if (child instanceof Measure)
+            {
+                ((Measure)child).transpose(steps);
+            }
+        }
+    }
+    
+    
+    @Override
+    int getChangedMeasure(int index)
+    {
+        return index;
+    }
+    
+    
+    /**
+     * Gets the tick at which a child of this part, usually a measure, starts playing.
+     * 
+     * @param index
+     *            the index of the child, or the number of children to get the length of the part
+     * @return the start tick of the child
+     */
+    public int getChildStartTick(int index)
+    {
+        return getTickIndex().getStartTick(index);
+    }
+    
+    
+    /**
+     * Gets the child of this part, usually a measure, that is playing at a tick.
+     * 
+     * @param tick
+     *            the tick
+     * @return the index of the child, or the number of children if the tick is at or after the end of the part
+     */
+    public int getChildIndexAt(int tick)
+    {
+        return getTickIndex().getIndexAt(tick);
+    }
+    
+    
+    private TickIndex getTickIndex()
+    {
+        if (tickIndexStale)
+        {
+            tickIndex.rebuild(this);
+            tickIndexStale = false;
+        }
+        return tickIndex;
+    }
+    
+    
+    @Override
+    protected void onChildInserted(int index, Instructable<PartContext> child)
+    {
+        tickIndexStale = true;
+        partContext.childInserted(index, child);
+        super.onChildInserted(index, child);
+    }
+    
+    
+    @Override
+    protected void onChildRemoved(int index, Instructable<PartContext> child)
+    {
+        tickIndexStale = true;
+        partContext.childRemoved(index);
+        super.onChildRemoved(index, child);
+    }
+    
+    
+    @Override
+    protected void onDescendantChanged(GroupInstructable<?, ?> child)
+    {
+        int index = child.getIndexInParent();
+        if (!tickIndexStale)
+        {
+            tickIndex.setLength(index, child.getLength());
+        }
+        partContext.childChanged(index);
+        super.onDescendantChanged(child);
+    }
+    
+    
+    @Override
+    public void onTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        // TODO Auto-generated method stub
+        
+    }
+    
+}
@@ -1,40 +1,251 @@
-package com.javasharp.model;
-
-import javax.sound.midi.Instrument;
-
-public class PartContext
-{
-    private final ScoreContext scoreContext;
-    private final Instrument   instrument;
-    private final int          channel;
-    
-    private int                volume;
-    private KeySignature       keySignature;
-    private Clef               clef;
-    
-    
-    public PartContext(ScoreContext scoreContext, Instrument instrument, int channel)
-    {
-        this.scoreContext = scoreContext;
-        this.instrument = instrument;
-        this.channel = channel;
-    }
-    
-    
-    public ScoreContext getScoreContext()
-    {
-        return scoreContext;
-    }
-    
-    
-    public int getVolume()
-    {
-        return volume;
-    }
-    
-    
-    public void playNote()
-    {
-        //TODO track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, 100), offset + locationInMeasure));
-    }
-}
+package com.javasharp.model;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Patch;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+public class PartContext
+{
+    private static final int   DEFAULT_VOLUME  = 100;
+    private static final int   BANK_SELECT_MSB = 0;
+    private static final int   BANK_SELECT_LSB = 32;
+    
+    private final ScoreContext scoreContext;
+    private final Instrument   instrument;
+    private final int          channel;
+    
+    private int                volume;
+    private KeySignature       keySignature;
+    private Clef               clef;
+    
+    private CompiledTrack      compiledTrack;
+    private EventSink          sink;
+    private int                tick;
+    
+    
+    public PartContext(ScoreContext scoreContext, Instrument instrument, int channel)
+    {
+        this.scoreContext = scoreContext;
+        this.instrument = instrument;
+        this.channel = channel;
+        resetState();
+    }
+    
+    
+    /**
+     * Creates a context for the same part, with its own state and output.
+     * 
+     * @param template
+     *            the context to copy the part's score, instrument and channel from
+     */
+    PartContext(PartContext template)
+    {
+        this(template.scoreContext, template.instrument, template.channel);
+    }
+    
+    
+    public ScoreContext getScoreContext()
+    {
+        return scoreContext;
+    }
+    
+    
+    Instrument getInstrument()
+    {
+        return instrument;
+    }
+    
+    
+    int getChannel()
+    {
+        return channel;
+    }
+    
+    
+    public int getVolume()
+    {
+        return volume;
+    }
+    
+    
+    public KeySignature getKeySignature()
+    {
+        return keySignature;
+    }
+    
+    
+    public Clef getClef()
+    {
+        return clef;
+    }
+    
+    
+    public void setClef(Clef clef)
+    {
+        this.clef = clef;
+    }
+    
+    
+    /**
+     * Gets the tick at which the next note or rest will be placed.
+     * 
+     * @return the current tick
+     */
+    public int getTick()
+    {
+        return tick;
+    }
+    
+    
+    /**
+     * Starts writing this part into a new track. The tick cursor and the part's state are reset and the part's
+     * instrument is selected on its channel.
+     * 
+     * @param newTrack
+     *            the track to write events into
+     */
+    public void beginTrack(Track newTrack)
+    {
+        resetState();
+        compiledTrack = new CompiledTrack(newTrack, this);
+        sink = compiledTrack;
+        selectInstrument();
+    }
+    
+    
+    /**
+     * Starts writing this part into a sink instead of a track, for consumers that take events as they are produced.
+     * 
+     * @param newSink
+     *            the sink to write events into
+     */
+    void beginStream(EventSink newSink)
+    {
+        resetState();
+        compiledTrack = null;
+        sink = newSink;
+        selectInstrument();
+    }
+    
+    
+    private void selectInstrument()
+    {
+        if (instrument != null)
+        {
+            Patch patch = instrument.getPatch();
+            if (patch.getBank() != 0)
+            {
+                addEvent(ShortMessage.CONTROL_CHANGE, BANK_SELECT_MSB, patch.getBank() >> 7, 0);
+                addEvent(ShortMessage.CONTROL_CHANGE, BANK_SELECT_LSB, patch.getBank() & 0x7F, 0);
+            }
+            addEvent(ShortMessage.PROGRAM_CHANGE, patch.getProgram(), 0, 0);
+        }
+    }
+    
+    
+    /**
+     * Compiles a child of the part into the current track, remembering which events it produced so that it can be
+     * recompiled on its own after an edit.
+     * 
+     * @param child
+     *            the child of the part to compile
+     */
+    void compileChild(Instructable<PartContext> child)
+    {
+        compiledTrack.compileSegment(child, this);
+    }
+    
+    
+    void childInserted(int index, Instructable<PartContext> child)
+    {
+        if (compiledTrack != null)
+        {
+            compiledTrack.childInserted(index, child);
+        }
+    }
+    
+    
+    void childRemoved(int index)
+    {
+        if (compiledTrack != null)
+        {
+            compiledTrack.childRemoved(index);
+        }
+    }
+    
+    
+    void childChanged(int index)
+    {
+        if (compiledTrack != null)
+        {
+            compiledTrack.childChanged(index);
+        }
+    }
+    
+    
+    /**
+     * Recompiles the children of the part that have changed since it was last compiled.
+     */
+    void patchTrack()
+    {
+        if (compiledTrack != null && compiledTrack.isDirty())
+        {
+            compiledTrack.patch(this);
+        }
+    }
+    
+    
+    void seek(int newTick)
+    {
+        tick = newTick;
+    }
+    
+    
+    void restoreState(CompiledTrack.Segment segment)
+    {
+        tick = segment.getEndTick();
+        volume = segment.getEndVolume();
+        keySignature = segment.getEndKeySignature();
+        clef = segment.getEndClef();
+    }
+    
+    
+    public void playNote(int staffPos, int length)
+    {
+        int pitch = keySignature.resolvePitch(clef, staffPos, Accidental.NONE);
+        addEvent(ShortMessage.NOTE_ON, pitch, volume, tick);
+        addEvent(ShortMessage.NOTE_OFF, pitch, 0, tick + length);
+        tick += length;
+    }
+    
+    
+    public void rest(int length)
+    {
+        tick += length;
+    }
+    
+    
+    private void resetState()
+    {
+        tick = 0;
+        volume = DEFAULT_VOLUME;
+        keySignature = KeySignature.C;
+        clef = Clef.TREBLE;
+    }
+    
+    
+    private void addEvent(int command, int data1, int data2, int eventTick)
+    {
+        try
+        {
+            sink.add(new MidiEvent(new ShortMessage(command, channel, data1, data2), eventTick));
+        }
+        catch (InvalidMidiDataException e)
+        {
+            throw new IllegalArgumentException("Unable to create MIDI message for channel " + channel, e);
+        }
+    }
+}
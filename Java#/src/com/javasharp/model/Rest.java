@@ -1,22 +1,35 @@
-package com.javasharp.model;
-
-public class Rest
-    extends LengthedInstructable<PartContext>
-{
-    private Length length;
-    
-    
-    public Rest(Length length, int numDots)
-    {
-        super(length, numDots);
-        this.length = length;
-    }
-    
-    
-    @Override
-    public void instruct(PartContext context)
-    {
-        // Do nothing
-    }
-    
-}
+package com.javasharp.model;
+
+public class Rest
+    extends LengthedInstructable<PartContext>
+{
+    private Length length;
+    
+    
+    public Rest(Length length, int numDots)
+    {
+        this(length, numDots, Tuplet.NONE);
+    }
+    
+    
+    public Rest(Length length, int numDots, Tuplet tuplet)
+    {
+        super(length, numDots, tuplet);
+        this.length = length;
+    }
+    
+    
+    @Override
+    public void instruct(PartContext context)
+    {
+        context.rest(getLength());
+    }
+    
+    
+    @Override
+    public long getContentHash()
+    {
+        return NoteBuffer.hashEntry(NoteBuffer.FLAG_REST, getBaseLength(), getNumDots(), getTuplet(), 0);
+    }
+    
+}
@@ -1,56 +1,330 @@
-package com.javasharp.model;
-
-public class Score
-    extends GroupInstructable<ScoreContext, ScoreContext>
-{
-    private static final String DEFAULT_TITLE = "unnamed";
-    
-    private String              title;
-    private final Metadata      meta;
-    private final ScoreContext  scoreContext;
-    
-    
-    public Score()
-    {
-        this.title = DEFAULT_TITLE;
-        meta = new Metadata();
-        scoreContext = new ScoreContext();
-    }
-    
-    
-    public void setTitle(String newTitle)
-    {
-        String trimmed;
-        if (newTitle == null || (trimmed = newTitle.trim()).isEmpty())
-        {
-            title = DEFAULT_TITLE;
-        }
-        else
-        {
-            title = trimmed;
-        }
-    }
-    
-    
-    @Override
-    public void instruct(ScoreContext context)
-    {
-        super.instructChildren(context);
-    }
-    
-    
-    @Override
-    public int getLength()
-    {
-        // TODO
-        return 0;
-    }
-    
-    
-    @Override
-    public void onTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        super.notifyChildrenTimeSignatureChanged(timeSignature);
-    }
-    
-}
+package com.javasharp.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+public class Score
+    extends GroupInstructable<ScoreContext, ScoreContext>
+{
+    private static final String DEFAULT_TITLE = "unnamed";
+    
+    private String              title;
+    private final Metadata      meta;
+    private final ScoreContext  scoreContext;
+    
+    private final Set<Part>     changedParts;
+    private boolean             partsChanged;
+    private final EditHistory   history;
+    
+    
+    public Score()
+    {
+        this.title = DEFAULT_TITLE;
+        meta = new Metadata();
+        scoreContext = new ScoreContext();
+        changedParts = Collections.newSetFromMap(new IdentityHashMap<>());
+        partsChanged = true;
+        history = new EditHistory();
+    }
+    
+    
+    public void setTitle(String newTitle)
+    {
+        String trimmed;
+        if (newTitle == null || (trimmed = newTitle.trim()).isEmpty())
+        {
+            title = DEFAULT_TITLE;
+        }
+        else
+        {
+            title = trimmed;
+        }
+    }
+    
+    
+    public String getTitle()
+    {
+        return title;
+    }
+    
+    
+    public Metadata getMetadata()
+    {
+        return meta;
+    }
+    
+    
+    public ScoreContext getScoreContext()
+    {
+        return scoreContext;
+    }
+    
+    
+    /**
+     * Gets the history of the edits made to this score and everything in it.
+     * 
+     * @return the history
+     */
+    @Override
+    public EditHistory getHistory()
+    {
+        return history;
+    }
+    
+    
+    @Override
+    public void instruct(ScoreContext context)
+    {
+        if (context.getPool() == null || getChildCount() < 2)
+        {
+            super.instructChildren(context);
+        }
+        else
+        {
+            super.instructChildren(context, context.getPool());
+        }
+        changedParts.clear();
+        partsChanged = false;
+    }
+    
+    
+    /**
+     * Whether parts have been added to or removed from the score, or the whole score has been transposed, since it was
+     * last instructed, in which case it must be compiled again from scratch.
+     * 
+     * @return true if the parts of the score have changed
+     */
+    boolean havePartsChanged()
+    {
+        return partsChanged;
+    }
+    
+    
+    /**
+     * Recompiles the changed children of every part that has been edited since the score was last instructed.
+     */
+    void patchTracks(ForkJoinPool pool)
+    {
+        if (pool == null || changedParts.size() < 2)
+        {
+            for (Part part : changedParts)
+            {
+                part.patchTrack();
+            }
+        }
+        else
+        {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(changedParts.size());
+            for (Part part : changedParts)
+            {
+                tasks.add(pool.submit(part::patchTrack));
+            }
+            for (ForkJoinTask<?> task : tasks)
+            {
+                task.join();
+            }
+        }
+        changedParts.clear();
+    }
+    
+    
+    /**
+     * Copies the score, so that the copy can be read on another thread, for instance to render or save it, while this
+     * one goes on being edited. The copy has no history and is compiled from scratch. Unloaded parts are not decoded
+     * and packed measures are copied an array at a time, so taking a copy costs far less than compiling or writing it.
+     * 
+     * @return a score with the same title, tempo, metadata and parts
+     */
+    public Score snapshot()
+    {
+        Score copy = new Score();
+        copy.title = title;
+        copy.scoreContext.setTempoBPM(scoreContext.getTempoBPM());
+        for (String key : meta.getKeys())
+        {
+            copy.meta.addMetaData(key, meta.getMetaData(key));
+        }
+        List<Instructable<ScoreContext>> parts = new ArrayList<>(getChildCount());
+        for (int i = 0; i < getChildCount(); i++)
+        {
+            Instructable<ScoreContext> child = getChild(i);
+            parts.add(child instanceof Part ? ((Part)child).snapshot(copy.scoreContext) : child);
+        }
+        copy.initChildren(parts);
+        return copy;
+    }
+    
+    
+    public void transpose(int steps)
+    {
+        transpose(steps, ForkJoinPool.commonPool());
+    }
+    
+    
+    /**
+     * Moves every note in the score by a number of staff positions, so that each note keeps its place in the key. The
+     * notes of each part are rewritten in place in a single pass, with the parts transposed in parallel on a pool.
+     * 
+     * @param steps
+     *            the number of staff positions to move up, or down if negative
+     * @param pool
+     *            the pool to transpose parts on, or null to transpose them one after another
+     * @throws IllegalArgumentException
+     *             if a note would move out of the range of staff positions, in which case the score is unchanged
+     */
+    public void transpose(int steps, ForkJoinPool pool)
+    {
+        List<Part> parts = new ArrayList<>(getChildCount());
+        for (int i = 0; i < getChildCount(); i++)
+        {
+            if (getChild(i) instanceof Part)
+            {
+                parts.add((Part)getChild(i));
+            }
+        }
+        
+        // Every note of the score is checked before any moves, so that one out of range leaves the score unchanged
+        forEachPart(parts, pool, part -> part.checkTranspose(steps));
+        forEachPart(parts, pool, part -> part.transpose(steps));
+        
+        // The notes were rewritten in place, under the hashes of every group above them
+        invalidateContentHashes();
+        // Every measure changed, which is cheaper to compile again from scratch than to patch measure by measure
+        partsChanged = true;
+        history.record(new TransposeEdit(steps, pool));
+    }
+    
+    
+    private static void forEachPart(List<Part> parts, ForkJoinPool pool, Consumer<Part> action)
+    {
+        if (pool == null || parts.size() < 2)
+        {
+            for (Part part : parts)
+            {
+                action.accept(part);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(parts.size());
+        for (Part part : parts)
+        {
+            tasks.add(pool.submit(() -> action.accept(part)));
+        }
+        for (ForkJoinTask<?> task : tasks)
+        {
+            task.join();
+        }
+    }
+    
+    
+    @Override
+    public int getLength()
+    {
+        int length = 0;
+        for (int i = 0; i < getChildCount(); i++)
+        {
+            length = Math.max(length, getChild(i).getLength());
+        }
+        return length;
+    }
+    
+    
+    @Override
+    protected void onChildInserted(int index, Instructable<ScoreContext> child)
+    {
+        partsChanged = true;
+        super.onChildInserted(index, child);
+    }
+    
+    
+    @Override
+    protected void onChildRemoved(int index, Instructable<ScoreContext> child)
+    {
+        partsChanged = true;
+        super.onChildRemoved(index, child);
+    }
+    
+    
+    @Override
+    protected void onDescendantChanged(GroupInstructable<?, ?> child)
+    {
+        if (child instanceof Part)
+        {
+            changedParts.add((Part)child);
+        }
+        super.onDescendantChanged(child);
+    }
+    
+    
+    @Override
+    public void onTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        super.notifyChildrenTimeSignatureChanged(timeSignature);
+    }
+    
+    
+    /**
+     * A transposition of the whole score, undone by transposing back. Nothing is copied: the notes are rewritten in
+     * place either way.
+     */
+    private final class TransposeEdit
+        extends EditHistory.Edit
+    {
+        private static final long  EDIT_BYTES = 32;
+        
+        private final int          steps;
+        private final ForkJoinPool pool;
+        
+        
+        private TransposeEdit(int steps, ForkJoinPool pool)
+        {
+            this.steps = steps;
+            this.pool = pool;
+        }
+        
+        
+        @Override
+        void undo()
+        {
+            transpose(-steps, pool);
+        }
+        
+        
+        @Override
+        void redo()
+        {
+            transpose(steps, pool);
+        }
+        
+        
+        @Override
+        long getBytes()
+        {
+            return EDIT_BYTES;
+        }
+        
+        
+        @Override
+        int getChangedMeasure()
+        {
+            return EditHistory.ALL_MEASURES;
+        }
+        
+        
+        @Override
+        void writeTo(DataOutputStream out, boolean forward)
+            throws IOException
+        {
+            EditJournal.writeTranspose(out, forward ? steps : -steps);
+        }
+    }
+    
+}
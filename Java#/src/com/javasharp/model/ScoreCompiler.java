@@ -0,0 +1,205 @@
+package com.javasharp.model;
+
+import com.javasharp.model.playback.PlaybackMetrics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**
+ * Compiles a {@link Score} into a MIDI {@link Sequence} in a single pass over the score tree. Each part writes its
+ * events directly into its own track while its {@link PartContext} keeps a running tick cursor, so no offsets are ever
+ * recomputed. Parts share no state while compiling, so they are compiled in parallel on a fork-join pool unless a
+ * null pool is given.
+ */
+public final class ScoreCompiler
+{
+    /**
+     * The ticks in a quarter note, so that the lengths in {@link Length} are already in ticks. This resolution
+     * represents every tuplet exactly; {@link #compile(Score, ForkJoinPool, int)} converts to any other.
+     */
+    public static final int     TICKS_PER_BEAT    = Length.QUARTER.getLength(0);
+    
+    private static final int    SET_TEMPO         = 0x51;
+    private static final long   MICROS_PER_MINUTE = TimeUnit.MINUTES.toMicros(1);
+    private static final Logger LOGGER            = Logger.getLogger(ScoreCompiler.class.getName());
+    
+    
+    private ScoreCompiler()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    public static Sequence compile(Score score)
+        throws MusicException
+    {
+        return compile(score, ForkJoinPool.commonPool());
+    }
+    
+    
+    /**
+     * Compiles a score, compiling its parts in parallel on a pool.
+     * 
+     * @param score
+     *            the score to compile
+     * @param pool
+     *            the pool to compile parts on, or null to compile them one after another
+     * @return the compiled sequence, with one track per part in score order
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public static Sequence compile(Score score, ForkJoinPool pool)
+        throws MusicException
+    {
+        Sequence sequence;
+        try
+        {
+            sequence = new Sequence(Sequence.PPQ, TICKS_PER_BEAT);
+        }
+        catch (InvalidMidiDataException e)
+        {
+            throw new MusicException("Unable to create MIDI sequence", e);
+        }
+        
+        long started = System.nanoTime();
+        ScoreContext context = score.getScoreContext();
+        context.beginSequence(sequence, score.getChildCount(), pool);
+        try
+        {
+            score.instruct(context);
+            if (score.getChildCount() > 0)
+            {
+                // The tempo goes at the start of the first track, where players and importers look for it
+                context.getTrack(0).add(new MidiEvent(createTempo(context.getTempoBPM()), 0));
+            }
+            PlaybackMetrics.getInstance().recordCompile(System.nanoTime() - started);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new MusicException("Unable to compile " + score.getTitle(), e);
+        }
+        finally
+        {
+            context.beginSequence(null, 0, null);
+        }
+        return sequence;
+    }
+    
+    
+    private static MetaMessage createTempo(int tempoBPM)
+        throws MusicException
+    {
+        if (!ScoreContext.isValidTempo(tempoBPM))
+        {
+            throw new MusicException("Tempo " + tempoBPM + " is out of range; use " + ScoreContext.MIN_TEMPO_BPM +
+                " to " + ScoreContext.MAX_TEMPO_BPM + " beats per minute");
+        }
+        int microsPerBeat = (int)(MICROS_PER_MINUTE / tempoBPM);
+        byte[] data = { (byte)(microsPerBeat >> 16), (byte)(microsPerBeat >> 8), (byte)microsPerBeat };
+        try
+        {
+            return new MetaMessage(SET_TEMPO, data, data.length);
+        }
+        catch (InvalidMidiDataException e)
+        {
+            throw new MusicException("Unable to set tempo " + tempoBPM, e);
+        }
+    }
+    
+    
+    /**
+     * Compiles a score into a sequence with a given resolution. Event ticks are rounded to the nearest tick of the
+     * target resolution, so notes in tuplets only land exactly if it has room for them, as 480 and 960 do for triplets.
+     * A sequence compiled this way cannot be passed to {@link #update(Score, Sequence)}.
+     * 
+     * @param score
+     *            the score to compile
+     * @param pool
+     *            the pool to compile parts on, or null to compile them one after another
+     * @param ticksPerBeat
+     *            the resolution of the sequence, in ticks per quarter note
+     * @return the compiled sequence
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public static Sequence compile(Score score, ForkJoinPool pool, int ticksPerBeat)
+        throws MusicException
+    {
+        Sequence sequence = compile(score, pool);
+        if (ticksPerBeat == TICKS_PER_BEAT)
+        {
+            return sequence;
+        }
+        
+        Sequence converted;
+        try
+        {
+            converted = new Sequence(Sequence.PPQ, ticksPerBeat);
+        }
+        catch (InvalidMidiDataException e)
+        {
+            throw new MusicException("Unable to create MIDI sequence", e);
+        }
+        for (Track track : sequence.getTracks())
+        {
+            Track convertedTrack = converted.createTrack();
+            for (int i = 0; i < track.size(); i++)
+            {
+                MidiEvent event = track.get(i);
+                long tick = (event.getTick() * ticksPerBeat + TICKS_PER_BEAT / 2) / TICKS_PER_BEAT;
+                convertedTrack.add(new MidiEvent(event.getMessage(), tick));
+            }
+        }
+        return converted;
+    }
+    
+    
+    /**
+     * Brings a sequence previously returned by {@link #compile(Score)} up to date with edits made to the score since.
+     * Only the children of parts that were edited are recompiled, and the events after them are moved to their new
+     * ticks in place. If parts were added to or removed from the score, or it has been compiled into another sequence
+     * since, or patching fails, it is compiled again from scratch.
+     * 
+     * @param score
+     *            the score that was compiled
+     * @param sequence
+     *            the sequence it was compiled into
+     * @return the up to date sequence, which is a new sequence only if the score had to be compiled from scratch
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public static Sequence update(Score score, Sequence sequence)
+        throws MusicException
+    {
+        return update(score, sequence, ForkJoinPool.commonPool());
+    }
+    
+    
+    public static Sequence update(Score score, Sequence sequence, ForkJoinPool pool)
+        throws MusicException
+    {
+        if (score.havePartsChanged() || score.getScoreContext().getCompiledSequence() != sequence)
+        {
+            return compile(score, pool);
+        }
+        long started = System.nanoTime();
+        try
+        {
+            score.patchTracks(pool);
+            PlaybackMetrics.getInstance().recordCompile(System.nanoTime() - started);
+        }
+        catch (RuntimeException e)
+        {
+            // The tracks may be half patched, so start again in a new sequence rather than trust them
+            LOGGER.log(Level.WARNING, "Unable to patch " + score.getTitle() + ", compiling it again", e);
+            return compile(score, pool);
+        }
+        return sequence;
+    }
+}
@@ -1,14 +1,134 @@
-package com.javasharp.model;
-
-public class ScoreContext
-{
-    private int           tempoBPM;
-    private TimeSignature timeSignature;
-    
-    
-    public void initialize()
-        throws MusicException
-    {
-        
-    }
-}
+package com.javasharp.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+public class ScoreContext
+{
+    /**
+     * The fastest tempo a MIDI file can hold, with beats of a microsecond.
+     */
+    public static final int  MAX_TEMPO_BPM     = (int)TimeUnit.MINUTES.toMicros(1);
+    
+    /**
+     * The slowest tempo a MIDI file can hold, whose beats are as long as the 24 bits of a tempo event allow.
+     */
+    public static final int  MIN_TEMPO_BPM     = (int)Math.ceil(TimeUnit.MINUTES.toMicros(1) / (double)0xFFFFFF);
+    
+    private static final int DEFAULT_TEMPO_BPM = 120;
+    
+    private int              tempoBPM;
+    private TimeSignature    timeSignature;
+    
+    private Track[]          tracks;
+    private Sequence         compiledSequence;
+    private ForkJoinPool     pool;
+    
+    
+    public ScoreContext()
+    {
+        tempoBPM = DEFAULT_TEMPO_BPM;
+    }
+    
+    
+    public void initialize()
+        throws MusicException
+    {
+        
+    }
+    
+    
+    public int getTempoBPM()
+    {
+        return tempoBPM;
+    }
+    
+    
+    public void setTempoBPM(int tempoBPM)
+    {
+        this.tempoBPM = tempoBPM;
+    }
+    
+    
+    /**
+     * Whether a tempo can be played and written to a MIDI file.
+     * 
+     * @param tempoBPM
+     *            the tempo in beats per minute
+     * @return true if the tempo is from {@link #MIN_TEMPO_BPM} to {@link #MAX_TEMPO_BPM}
+     */
+    public static boolean isValidTempo(int tempoBPM)
+    {
+        return tempoBPM >= MIN_TEMPO_BPM && tempoBPM <= MAX_TEMPO_BPM;
+    }
+    
+    
+    /**
+     * Starts compiling into a sequence. One track is created up front for each child of the score, in order, so the
+     * tracks come out in the same order however the parts are scheduled.
+     * 
+     * @param sequence
+     *            the sequence to compile into, or null when compiling is finished
+     * @param trackCount
+     *            the number of tracks to create
+     * @param compilePool
+     *            the pool to compile parts on, or null to compile them one after another
+     */
+    void beginSequence(Sequence sequence, int trackCount, ForkJoinPool compilePool)
+    {
+        pool = compilePool;
+        if (sequence == null)
+        {
+            tracks = null;
+            return;
+        }
+        compiledSequence = sequence;
+        tracks = new Track[trackCount];
+        for (int i = 0; i < trackCount; i++)
+        {
+            tracks[i] = sequence.createTrack();
+        }
+    }
+    
+    
+    /**
+     * Gets the track of a part in the sequence currently being compiled.
+     * 
+     * @param partIndex
+     *            the index of the part in the score
+     * @return the track of the part
+     */
+    public Track getTrack(int partIndex)
+    {
+        if (tracks == null)
+        {
+            throw new IllegalStateException("No sequence is being compiled.");
+        }
+        return tracks[partIndex];
+    }
+    
+    
+    /**
+     * Gets the sequence that the parts' compiled tracks were last built for, which is the only sequence that patching
+     * them brings up to date.
+     * 
+     * @return the sequence, or null if the score has never been compiled
+     */
+    Sequence getCompiledSequence()
+    {
+        return compiledSequence;
+    }
+    
+    
+    /**
+     * Gets the pool that parts are compiled on.
+     * 
+     * @return the pool, or null if parts are compiled one after another
+     */
+    public ForkJoinPool getPool()
+    {
+        return pool;
+    }
+}
@@ -0,0 +1,420 @@
+package com.javasharp.model;
+
+import com.javasharp.model.util.MidiUtils;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.midi.Instrument;
+
+/**
+ * Reads and writes scores in the binary .jsharp format.
+ * <p>
+ * A file starts with a header holding the title, tempo and metadata of the score, followed by a table with one fixed
+ * size entry per part giving its instrument, channel, length, number of measures and where its data starts. The data
+ * of each part is a run of measure records, each an entry count followed by that many notes and rests packed the same
+ * way as in a {@link NoteBuffer}. All numbers are big-endian.
+ * <p>
+ * Files are read into memory in one sequential pass and only the header and part table are decoded up front. The
+ * measures of a part are decoded the first time the part is looked at, so opening a large score takes about as long as
+ * reading the file and decoding the parts that are shown. The file is not mapped, so it can be replaced, as saving
+ * does, while parts read from it are still waiting to be decoded, on every platform.
+ */
+public final class ScoreFile
+{
+    public static final String FILE_EXTENSION        = ".jsharp";
+    
+    private static final int   MAGIC                 = 0x4A534850;
+    private static final short VERSION               = 2;
+    
+    /**
+     * The last version that gave part lengths in sixty-fourth notes instead of ticks. Its entries never have a tuplet,
+     * so they read the same in every version.
+     */
+    private static final short SIXTY_FOURTHS_VERSION = 1;
+    private static final int   PART_ENTRY_BYTES      = 32;
+    static final int           NO_INSTRUMENT         = -1;
+    
+    
+    private ScoreFile()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Writes a score to a file. The file is written in one sequential pass to a temporary file next to it, which then
+     * replaces it, so that a failed save never leaves a truncated file behind.
+     * 
+     * @param score
+     *            the score to write
+     * @param file
+     *            the file to write
+     * @throws MusicException
+     *             if the file cannot be written, or the score has children that cannot be saved
+     */
+    public static void write(Score score, File file)
+        throws MusicException
+    {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = null;
+        try
+        {
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                write(score, out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to write " + file, e);
+        }
+        finally
+        {
+            deleteQuietly(temp);
+        }
+    }
+    
+    
+    /**
+     * Opens a score file. The parts of the score are decoded from the file the first time they are used.
+     * 
+     * @param file
+     *            the file to read
+     * @return the score
+     * @throws MusicException
+     *             if the file cannot be read or is not a valid score file
+     */
+    public static Score read(File file)
+        throws MusicException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new MusicException(file + " is too large to open");
+            }
+            buffer = ByteBuffer.allocate((int)channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+                // Keep reading until the whole file is in the buffer
+            }
+            buffer.flip();
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to read " + file, e);
+        }
+        
+        try
+        {
+            return read(buffer, file);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new MusicException(file + " is not a valid score file", e);
+        }
+    }
+    
+    
+    private static void write(Score score, DataOutputStream out)
+        throws IOException, MusicException
+    {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeShort(0);
+        writeString(header, score.getTitle());
+        header.writeInt(score.getScoreContext().getTempoBPM());
+        Metadata metadata = score.getMetadata();
+        header.writeInt(metadata.getKeys().size());
+        for (String key : metadata.getKeys())
+        {
+            writeString(header, key);
+            writeString(header, metadata.getMetaData(key));
+        }
+        header.writeInt(score.getChildCount());
+        
+        List<Part> parts = new ArrayList<>(score.getChildCount());
+        for (int i = 0; i < score.getChildCount(); i++)
+        {
+            Instructable<ScoreContext> child = score.getChild(i);
+            if (!(child instanceof Part))
+            {
+                throw new MusicException("Unable to save " + child.getClass().getSimpleName() + " in a score");
+            }
+            parts.add((Part)child);
+        }
+        
+        // The size of every part is known before it is written, so the table can go first and the file can be
+        // written front to back
+        long offset = headerBytes.size() + (long)parts.size() * PART_ENTRY_BYTES;
+        for (Part part : parts)
+        {
+            PartContext context = part.getPartContext();
+            Instrument instrument = context.getInstrument();
+            header.writeInt(instrument == null ? NO_INSTRUMENT : instrument.getPatch().getBank());
+            header.writeInt(instrument == null ? NO_INSTRUMENT : instrument.getPatch().getProgram());
+            header.writeInt(context.getChannel());
+            header.writeInt(part.getLength());
+            header.writeInt(part.getChildCount());
+            header.writeLong(offset);
+            int size = getPartSize(part);
+            header.writeInt(size);
+            offset += size;
+        }
+        headerBytes.writeTo(out);
+        
+        for (Part part : parts)
+        {
+            for (int i = 0; i < part.getChildCount(); i++)
+            {
+                writeMeasure(out, part.getChild(i));
+            }
+        }
+    }
+    
+    
+    /**
+     * Writes a measure record: the number of notes and rests in the measure followed by each of them packed.
+     * 
+     * @param out
+     *            the stream to write to
+     * @param child
+     *            the measure to write
+     * @throws MusicException
+     *             if the child is not a measure, or has children that cannot be saved
+     */
+    static void writeMeasure(DataOutputStream out, Instructable<PartContext> child)
+        throws IOException, MusicException
+    {
+        NoteBuffer notes = getNotes(child);
+        out.writeInt(notes.size());
+        for (int i = 0; i < notes.size(); i++)
+        {
+            out.writeInt(notes.getEntry(i));
+        }
+    }
+    
+    
+    /**
+     * Reads a measure record written by {@link #writeMeasure}.
+     * 
+     * @param data
+     *            the buffer to read from, positioned at the record
+     * @return a packed measure
+     * @throws BufferUnderflowException
+     *             if the record is truncated
+     * @throws IllegalArgumentException
+     *             if the record has an invalid size or entry
+     */
+    static Measure readMeasure(ByteBuffer data)
+    {
+        int size = data.getInt();
+        if (size < 0 || size > data.remaining() / Integer.BYTES)
+        {
+            throw new IllegalArgumentException("Invalid measure size: " + size);
+        }
+        NoteBuffer notes = new NoteBuffer(Math.max(size, 1));
+        for (int i = 0; i < size; i++)
+        {
+            notes.addEntry(data.getInt());
+        }
+        return new Measure(notes);
+    }
+    
+    
+    private static int getPartSize(Part part)
+        throws MusicException
+    {
+        int size = 0;
+        for (int i = 0; i < part.getChildCount(); i++)
+        {
+            size += Integer.BYTES * (1 + getNotes(part.getChild(i)).size());
+        }
+        return size;
+    }
+    
+    
+    /**
+     * Gets the notes and rests of a measure packed, packing them if the measure holds them as objects.
+     * 
+     * @param child
+     *            the measure
+     * @return the packed notes, which must not be changed
+     * @throws MusicException
+     *             if the child is not a measure, or has children that cannot be packed
+     */
+    static NoteBuffer getNotes(Instructable<PartContext> child)
+        throws MusicException
+    {
+        if (!(child instanceof Measure))
+        {
+            throw new MusicException("Unable to save " + child.getClass().getSimpleName() + " in a part");
+        }
+        Measure measure = (Measure)child;
+        if (measure.isPacked())
+        {
+            return measure.getNotes();
+        }
+        
+        NoteBuffer notes = new NoteBuffer(measure.getChildCount());
+        for (int i = 0; i < measure.getChildCount(); i++)
+        {
+            Instructable<PartContext> note = measure.getChild(i);
+            if (!notes.insert(i, note))
+            {
+                throw new MusicException("Unable to save " + note.getClass().getSimpleName() + " in a measure");
+            }
+        }
+        return notes;
+    }
+    
+    
+    private static Score read(ByteBuffer buffer, File file)
+        throws MusicException
+    {
+        if (buffer.getInt() != MAGIC)
+        {
+            throw new MusicException(file + " is not a score file");
+        }
+        short version = buffer.getShort();
+        if (version > VERSION)
+        {
+            throw new MusicException(file + " was saved by a newer version of the program");
+        }
+        buffer.getShort();
+        
+        Score score = new Score();
+        score.setTitle(readString(buffer));
+        ScoreContext scoreContext = score.getScoreContext();
+        int tempoBPM = buffer.getInt();
+        if (!ScoreContext.isValidTempo(tempoBPM))
+        {
+            throw new IllegalArgumentException("Invalid tempo: " + tempoBPM);
+        }
+        scoreContext.setTempoBPM(tempoBPM);
+        int metadataCount = buffer.getInt();
+        for (int i = 0; i < metadataCount; i++)
+        {
+            score.getMetadata().addMetaData(readString(buffer), readString(buffer));
+        }
+        
+        int partCount = buffer.getInt();
+        for (int i = 0; i < partCount; i++)
+        {
+            int bank = buffer.getInt();
+            int program = buffer.getInt();
+            int channel = buffer.getInt();
+            int length = buffer.getInt();
+            if (version <= SIXTY_FOURTHS_VERSION)
+            {
+                length *= Length.TICKS_PER_SIXTY_FOURTH;
+            }
+            int measureCount = buffer.getInt();
+            long offset = buffer.getLong();
+            int size = buffer.getInt();
+            if (offset < 0 || size < 0 || offset + size > buffer.limit())
+            {
+                throw new MusicException(file + " is truncated");
+            }
+            
+            ByteBuffer data = buffer.duplicate();
+            data.position((int)offset);
+            data.limit((int)offset + size);
+            ByteBuffer partData = data.slice();
+            int partIndex = i;
+            score.addChild(new Part(getInstrument(bank, program), channel, scoreContext, length, () -> {
+                try
+                {
+                    // Decode from the start of the part every time, so that a corrupt part fails the same way on
+                    // every access instead of going on from wherever the last attempt stopped
+                    return readMeasures(partData.duplicate(), measureCount);
+                }
+                catch (BufferUnderflowException | IllegalArgumentException e)
+                {
+                    throw new IllegalStateException("Part " + partIndex + " of " + file + " is corrupt", e);
+                }
+            }));
+        }
+        // Loading the score is not an edit anyone can undo
+        score.getHistory().clear();
+        return score;
+    }
+    
+    
+    private static List<Measure> readMeasures(ByteBuffer data, int measureCount)
+    {
+        List<Measure> measures = new ArrayList<>(measureCount);
+        for (int i = 0; i < measureCount; i++)
+        {
+            measures.add(readMeasure(data));
+        }
+        return measures;
+    }
+    
+    
+    static Instrument getInstrument(int bank, int program)
+        throws MusicException
+    {
+        if (bank == NO_INSTRUMENT)
+        {
+            return null;
+        }
+        // Keep the patch even if this soundbank does not have it, so that saving the score again does not lose it
+        return MidiUtils.getInstrumentOrPlaceholder(bank, program);
+    }
+    
+    
+    private static void writeString(DataOutputStream out, String string)
+        throws IOException
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+        {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    
+    private static void deleteQuietly(Path path)
+    {
+        if (path != null)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e)
+            {
+                // Only a leftover temporary file
+            }
+        }
+    }
+}
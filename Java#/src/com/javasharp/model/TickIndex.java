@@ -0,0 +1,129 @@
+package com.javasharp.model;
+
+import java.util.Arrays;
+
+/**
+ * A prefix sum (Fenwick) tree over the lengths of the children of a group. It finds the tick at which a child starts,
+ * and the child playing at a tick, in O(log n), and is updated in O(log n) when the length of one child changes.
+ */
+public final class TickIndex
+{
+    private int[] tree;
+    private int[] lengths;
+    private int   size;
+    
+    
+    public TickIndex()
+    {
+        tree = new int[1];
+        lengths = new int[0];
+    }
+    
+    
+    /**
+     * Rebuilds the index from the current children of a group in O(n).
+     * 
+     * @param group
+     *            the group to index
+     */
+    public void rebuild(GroupInstructable<?, ?> group)
+    {
+        size = group.getChildCount();
+        if (lengths.length < size)
+        {
+            int capacity = Math.max(size, 2 * lengths.length);
+            lengths = new int[capacity];
+            tree = new int[capacity + 1];
+        }
+        else
+        {
+            Arrays.fill(tree, 0, size + 1, 0);
+        }
+        
+        for (int i = 0; i < size; i++)
+        {
+            lengths[i] = group.getChild(i).getLength();
+            tree[i + 1] += lengths[i];
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= size)
+            {
+                tree[parent] += tree[i + 1];
+            }
+        }
+    }
+    
+    
+    public int size()
+    {
+        return size;
+    }
+    
+    
+    /**
+     * Changes the length of one child.
+     * 
+     * @param index
+     *            the index of the child
+     * @param length
+     *            its new length
+     */
+    public void setLength(int index, int length)
+    {
+        int delta = length - lengths[index];
+        lengths[index] = length;
+        for (int i = index + 1; i <= size; i += i & -i)
+        {
+            tree[i] += delta;
+        }
+    }
+    
+    
+    /**
+     * Gets the tick at which a child starts, which is the total length of the children before it.
+     * 
+     * @param index
+     *            the index of the child, or the number of children to get the total length
+     * @return the start tick of the child
+     */
+    public int getStartTick(int index)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int tick = 0;
+        for (int i = index; i > 0; i -= i & -i)
+        {
+            tick += tree[i];
+        }
+        return tick;
+    }
+    
+    
+    /**
+     * Gets the child that is playing at a tick. Children with no length are never returned.
+     * 
+     * @param tick
+     *            the tick
+     * @return the index of the child, or the number of children if the tick is at or after the end
+     */
+    public int getIndexAt(int tick)
+    {
+        if (tick < 0)
+        {
+            throw new IllegalArgumentException("Tick must not be negative: " + tick);
+        }
+        int index = 0;
+        int remaining = tick;
+        for (int step = Integer.highestOneBit(Math.max(size, 1)); step > 0; step >>= 1)
+        {
+            int next = index + step;
+            if (next <= size && tree[next] <= remaining)
+            {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return index;
+    }
+}
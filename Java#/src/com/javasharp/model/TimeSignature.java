@@ -1,6 +1,6 @@
-package com.javasharp.model;
-
-public class TimeSignature
-{
-    
-}
+package com.javasharp.model;
+
+public class TimeSignature
+{
+    
+}
@@ -0,0 +1,55 @@
+package com.javasharp.model;
+
+/**
+ * A tuplet that a note or rest is played in, which fits some number of notes into the time of a smaller number of
+ * notes of the same written length, such as three eighth notes in the time of two.
+ */
+public enum Tuplet
+{
+    NONE("None", 1, 1),
+    TRIPLET("Triplet", 3, 2),
+    QUINTUPLET("Quintuplet", 5, 4),
+    SEXTUPLET("Sextuplet", 6, 4),
+    SEPTUPLET("Septuplet", 7, 4);
+    
+    private final String name;
+    private final int    actual;
+    private final int    normal;
+    
+    
+    private Tuplet(String name, int actual, int normal)
+    {
+        this.name = name;
+        this.actual = actual;
+        this.normal = normal;
+    }
+    
+    
+    /**
+     * Gets how many notes the tuplet plays.
+     * 
+     * @return the number of notes played
+     */
+    public int getActual()
+    {
+        return actual;
+    }
+    
+    
+    /**
+     * Gets how many notes the tuplet takes the time of.
+     * 
+     * @return the number of notes whose time is taken
+     */
+    public int getNormal()
+    {
+        return normal;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
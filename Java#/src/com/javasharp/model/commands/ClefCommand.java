@@ -1,14 +1,14 @@
-package com.javasharp.model.commands;
-
-import com.javasharp.model.PartContext;
-import com.javasharp.model.ScoreContext;
-
-public class ClefCommand
-    extends CommandInstructable<PartContext>
-{
-    @Override
-    public void instruct(PartContext context)
-    {
-        // TODO modify context
-    }
-}
+package com.javasharp.model.commands;
+
+import com.javasharp.model.PartContext;
+import com.javasharp.model.ScoreContext;
+
+public class ClefCommand
+    extends CommandInstructable<PartContext>
+{
+    @Override
+    public void instruct(PartContext context)
+    {
+        // TODO modify context
+    }
+}
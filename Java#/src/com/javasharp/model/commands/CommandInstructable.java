@@ -1,21 +1,32 @@
-package com.javasharp.model.commands;
-
-import com.javasharp.model.Instructable;
-import com.javasharp.model.TimeSignature;
-
-public abstract class CommandInstructable<T>
-    implements Instructable<T>
-{
-    @Override
-    public final int getLength()
-    {
-        return 0;
-    }
-    
-    
-    @Override
-    public final void onTimeSignatureChanged(TimeSignature timeSignature)
-    {
-        // Do nothing
-    }
-}
+package com.javasharp.model.commands;
+
+import com.javasharp.model.Instructable;
+import com.javasharp.model.TimeSignature;
+import com.javasharp.model.util.ContentHash;
+
+public abstract class CommandInstructable<T>
+    implements Instructable<T>
+{
+    @Override
+    public final int getLength()
+    {
+        return 0;
+    }
+    
+    
+    @Override
+    public final void onTimeSignatureChanged(TimeSignature timeSignature)
+    {
+        // Do nothing
+    }
+    
+    
+    /**
+     * Commands have no state of their own by default, so every command of a class hashes the same.
+     */
+    @Override
+    public long getContentHash()
+    {
+        return ContentHash.start(getClass());
+    }
+}
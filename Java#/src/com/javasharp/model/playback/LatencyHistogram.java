@@ -0,0 +1,144 @@
+package com.javasharp.model.playback;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative durations in nanoseconds. Values below 16 ns are counted exactly and larger
+ * values fall into eight buckets per power of two, so every recorded value is known to within 12.5%. Recording never
+ * allocates or blocks, so it is safe to call from a playback thread.
+ */
+public final class LatencyHistogram
+{
+    private static final int     EXACT_BUCKETS       = 16;
+    private static final int     SUB_BUCKET_BITS     = 3;
+    private static final int     SUB_BUCKETS         = 1 << SUB_BUCKET_BITS;
+    private static final int     FIRST_INEXACT_POWER = 4;
+    private static final int     NUM_BUCKETS         = EXACT_BUCKETS + (Long.SIZE - FIRST_INEXACT_POWER) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts;
+    private final AtomicLong      count;
+    private final AtomicLong      sum;
+    private final AtomicLong      max;
+    
+    
+    public LatencyHistogram()
+    {
+        counts = new AtomicLongArray(NUM_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+    
+    
+    /**
+     * Records a duration. Negative durations are recorded as zero.
+     * 
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+        {
+            // Retry until this value is stored or a larger one is
+        }
+    }
+    
+    
+    public long getCount()
+    {
+        return count.get();
+    }
+    
+    
+    public long getMax()
+    {
+        return max.get();
+    }
+    
+    
+    public double getMean()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : (double)sum.get() / n;
+    }
+    
+    
+    /**
+     * Gets an upper bound on the given percentile of the recorded durations.
+     * 
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the largest duration the bucket holding the percentile can contain, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long n = count.get();
+        if (n == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+            {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    
+    public void reset()
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", getCount(),
+            getMean() / 1000, getPercentile(50) / 1000.0, getPercentile(99) / 1000.0, getPercentile(99.9) / 1000.0,
+            getMax() / 1000.0);
+    }
+    
+    
+    private static int bucketOf(long value)
+    {
+        if (value < EXACT_BUCKETS)
+        {
+            return (int)value;
+        }
+        int power = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)(value >>> (power - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return EXACT_BUCKETS + (power - FIRST_INEXACT_POWER) * SUB_BUCKETS + subBucket;
+    }
+    
+    
+    private static long upperBoundOf(int bucket)
+    {
+        if (bucket < EXACT_BUCKETS)
+        {
+            return bucket;
+        }
+        int power = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + FIRST_INEXACT_POWER;
+        long subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << (power - SUB_BUCKET_BITS)) - 1;
+    }
+}
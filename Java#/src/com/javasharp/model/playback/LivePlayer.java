@@ -0,0 +1,654 @@
+package com.javasharp.model.playback;
+
+import com.javasharp.model.MusicException;
+import com.javasharp.model.Part;
+import com.javasharp.model.Score;
+import com.javasharp.model.ScoreCompiler;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Plays a score while it is being edited. The score is compiled once when playback starts, and after each edit
+ * {@link #scoreChanged()} recompiles only the children of the parts that changed, with
+ * {@link ScoreCompiler#update(Score, Sequence)}. The playback thread splices the result in at the next bar line of
+ * the first part: what it has already taken of the current bar plays as it was, and the new version plays from the bar
+ * line on. Notes sounding at the bar line that the new version does not carry on are released there, so a swap never
+ * leaves a note hanging, and playback never stops for one.
+ * <p>
+ * The score is not safe to use from more than one thread, so it must only be edited, and the player told about it,
+ * from one thread, and nothing else may compile it while it plays. The playback thread only reads the compiled
+ * tracks, and never waits for them while they are being patched: it plays on from the events it has already taken and
+ * takes more once the patch is done.
+ */
+public final class LivePlayer
+{
+    public static final int         DEFAULT_LOOK_AHEAD_TICKS = StreamingPlayer.DEFAULT_LOOK_AHEAD_TICKS;
+    
+    private static final int        NUM_CHANNELS             = 16;
+    private static final int        NUM_PITCHES              = 128;
+    private static final int        ALL_NOTES_OFF            = 123;
+    private static final int        NONE                     = -1;
+    private static final long       MICROS_PER_MINUTE        = TimeUnit.MINUTES.toMicros(1);
+    private static final long       RETRY_NANOS              = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final Receiver          receiver;
+    private final int               lookAheadTicks;
+    private final PlaybackMetrics   metrics;
+    private final LatencyHistogram  swapLatency;
+    private final ReentrantLock     lock;
+    
+    // Guarded by lock
+    private Score                   score;
+    private Sequence                sequence;
+    private boolean                 newSequence;
+    private double                  nanosPerTick;
+    private int[]                   barTicks;
+    private boolean                 changed;
+    private long                    changedNanos;
+    
+    private volatile boolean        playing;
+    private volatile long           playTick;
+    private Thread                  thread;
+    
+    // Only used by the playback thread
+    private final ArrayDeque<Entry> window;
+    private final boolean[]         sounding;
+    private Track[]                 tracks;
+    private int[]                   cursors;
+    private long                    pulledTick;
+    private long                    sentTick;
+    private long                    startNanos;
+    private double                  playNanosPerTick;
+    
+    
+    public LivePlayer(Score score, Receiver receiver)
+    {
+        this(score, receiver, DEFAULT_LOOK_AHEAD_TICKS);
+    }
+    
+    
+    /**
+     * Creates a live player for a score.
+     * 
+     * @param score
+     *            the score to play
+     * @param receiver
+     *            the receiver to send events to
+     * @param lookAheadTicks
+     *            how far ahead of the playback position events are taken from the compiled score, which should be at
+     *            least a bar so that an edit can always wait for the next bar line
+     */
+    public LivePlayer(Score score, Receiver receiver, int lookAheadTicks)
+    {
+        this.score = score;
+        this.receiver = receiver;
+        this.lookAheadTicks = lookAheadTicks;
+        metrics = PlaybackMetrics.getInstance();
+        swapLatency = new LatencyHistogram();
+        lock = new ReentrantLock();
+        window = new ArrayDeque<>();
+        sounding = new boolean[NUM_CHANNELS * NUM_PITCHES];
+    }
+    
+    
+    /**
+     * Compiles the score and starts playing it from the beginning.
+     * 
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public synchronized void start()
+        throws MusicException
+    {
+        if (playing)
+        {
+            return;
+        }
+        joinStoppedThread();
+        Sequence compiled = ScoreCompiler.compile(score);
+        lock.lock();
+        try
+        {
+            sequence = compiled;
+            newSequence = false;
+            nanosPerTick = getNanosPerTick(score);
+            changed = false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        playTick = 0;
+        playing = true;
+        thread = new Thread(this::play, "Java# live playback");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    
+    public synchronized void stop()
+    {
+        playing = false;
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    
+    /**
+     * Waits for the thread of the last run to exit once it has been stopped, so that it cannot go on sending into the
+     * next run or end it from its cleanup.
+     */
+    private void joinStoppedThread()
+    {
+        if (thread == null)
+        {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    public boolean isPlaying()
+    {
+        return playing;
+    }
+    
+    
+    /**
+     * Waits for playback to finish, either at the end of the score or after {@link #stop()}.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void await()
+        throws InterruptedException
+    {
+        Thread playThread;
+        synchronized (this)
+        {
+            playThread = thread;
+        }
+        if (playThread != null)
+        {
+            playThread.join();
+        }
+    }
+    
+    
+    public synchronized Score getScore()
+    {
+        return score;
+    }
+    
+    
+    /**
+     * Plays the edits made to the score since the player was last told about any, from the next bar line. Must be
+     * called from the thread that edits the score.
+     * 
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public synchronized void scoreChanged()
+        throws MusicException
+    {
+        setScore(score);
+    }
+    
+    
+    /**
+     * Replaces the score being played from the next bar line, such as when a notation document builds a new one. If it
+     * is the score already playing, this is the same as {@link #scoreChanged()}. Must be called from the thread that
+     * edits the score.
+     * 
+     * @param newScore
+     *            the score to play
+     * @throws MusicException
+     *             if the score cannot be compiled
+     */
+    public synchronized void setScore(Score newScore)
+        throws MusicException
+    {
+        long started = System.nanoTime();
+        if (!playing)
+        {
+            score = newScore;
+            return;
+        }
+        
+        // A new score compiles into tracks of its own, so that can happen without holding up the playback thread
+        Sequence compiled = newScore == score ? null : ScoreCompiler.compile(newScore);
+        int[] bars = getBarTicks(newScore, playTick, lookAheadTicks);
+        lock.lock();
+        try
+        {
+            Sequence updated = compiled != null ? compiled : ScoreCompiler.update(newScore, sequence);
+            newSequence |= updated != sequence;
+            score = newScore;
+            sequence = updated;
+            nanosPerTick = getNanosPerTick(newScore);
+            barTicks = bars;
+            if (!changed)
+            {
+                changed = true;
+                changedNanos = started;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+    
+    
+    /**
+     * Gets how long each change took from being passed to the player until the new version started to play, in
+     * nanoseconds.
+     * 
+     * @return the histogram of swap latencies
+     */
+    public LatencyHistogram getSwapLatency()
+    {
+        return swapLatency;
+    }
+    
+    
+    private static double getNanosPerTick(Score score)
+    {
+        return 1000.0 * MICROS_PER_MINUTE /
+            ((double)score.getScoreContext().getTempoBPM() * ScoreCompiler.TICKS_PER_BEAT);
+    }
+    
+    
+    /**
+     * Finds the bar lines of the first part of a score that playback can reach within the look-ahead of a tick.
+     */
+    private static int[] getBarTicks(Score score, long fromTick, int lookAheadTicks)
+    {
+        if (score.getChildCount() == 0)
+        {
+            return new int[0];
+        }
+        Part part = (Part)score.getChild(0);
+        int from = (int)Math.min(fromTick, Integer.MAX_VALUE - lookAheadTicks);
+        int[] bars = new int[4];
+        int count = 0;
+        for (int index = part.getChildIndexAt(from) + 1; index <= part.getChildCount(); index++)
+        {
+            int tick = part.getChildStartTick(index);
+            if (tick > from + lookAheadTicks)
+            {
+                break;
+            }
+            if (count == bars.length)
+            {
+                bars = Arrays.copyOf(bars, 2 * count);
+            }
+            bars[count++] = tick;
+        }
+        return Arrays.copyOf(bars, count);
+    }
+    
+    
+    private void play()
+    {
+        lock.lock();
+        try
+        {
+            tracks = sequence.getTracks();
+            cursors = new int[tracks.length];
+            playNanosPerTick = nanosPerTick;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        window.clear();
+        Arrays.fill(sounding, false);
+        pulledTick = 0;
+        sentTick = NONE;
+        startNanos = System.nanoTime();
+        
+        try
+        {
+            while (playing)
+            {
+                long nowTick = (long)((System.nanoTime() - startNanos) / playNanosPerTick);
+                playTick = nowTick;
+                long nextTick;
+                boolean pulled = lock.tryLock();
+                if (pulled)
+                {
+                    try
+                    {
+                        if (changed)
+                        {
+                            swap();
+                        }
+                        nextTick = pull(nowTick + lookAheadTicks);
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                }
+                else
+                {
+                    nextTick = pulledTick;
+                }
+                
+                while (!window.isEmpty() && window.peek().dueNanos - System.nanoTime() <= 0)
+                {
+                    send(window.poll());
+                }
+                if (window.isEmpty() && nextTick == NONE)
+                {
+                    break;
+                }
+                
+                long dueNanos = window.isEmpty() ? startNanos + (long)(nextTick * playNanosPerTick) :
+                    window.peek().dueNanos;
+                if (!pulled)
+                {
+                    dueNanos = Math.min(dueNanos, System.nanoTime() + RETRY_NANOS);
+                }
+                LockSupport.parkNanos(dueNanos - System.nanoTime());
+            }
+        }
+        finally
+        {
+            playing = false;
+            recordDropped();
+            silence();
+        }
+    }
+    
+    
+    /**
+     * Takes the events up to a tick from the tracks, in tick order.
+     * 
+     * @return the tick of the next event left in the tracks, or {@link #NONE} if there are none
+     */
+    private long pull(long limitTick)
+    {
+        while (true)
+        {
+            int next = NONE;
+            long nextTick = Long.MAX_VALUE;
+            for (int i = 0; i < tracks.length; i++)
+            {
+                Track track = tracks[i];
+                while (cursors[i] < track.size() && track.get(cursors[i]).getMessage() instanceof MetaMessage)
+                {
+                    cursors[i]++;
+                }
+                if (cursors[i] < track.size() && track.get(cursors[i]).getTick() < nextTick)
+                {
+                    next = i;
+                    nextTick = track.get(cursors[i]).getTick();
+                }
+            }
+            if (next == NONE || nextTick > limitTick)
+            {
+                pulledTick = Math.max(pulledTick, limitTick + 1);
+                return next == NONE ? NONE : nextTick;
+            }
+            MidiEvent event = tracks[next].get(cursors[next]++);
+            window.add(new Entry(event.getMessage(), nextTick, getDueNanos(nextTick)));
+        }
+    }
+    
+    
+    /**
+     * Switches to the latest compiled sequence at the first bar line that has not started playing yet and that the
+     * window reaches, or as soon as possible if there is none.
+     */
+    private void swap()
+    {
+        changed = false;
+        long swapTick = Math.min(sentTick + 1, pulledTick);
+        for (int bar : barTicks)
+        {
+            if (bar > sentTick)
+            {
+                swapTick = Math.min(bar, pulledTick);
+                break;
+            }
+        }
+        
+        // The tracks were patched in place, so what the window holds from the bar line on is from the old version
+        while (!window.isEmpty() && window.peekLast().tick >= swapTick)
+        {
+            window.pollLast();
+        }
+        if (nanosPerTick != playNanosPerTick)
+        {
+            // Keep the bar line where it was in time, and play at the new tempo after it
+            startNanos += (long)(swapTick * (playNanosPerTick - nanosPerTick));
+            playNanosPerTick = nanosPerTick;
+        }
+        
+        tracks = sequence.getTracks();
+        cursors = new int[tracks.length];
+        for (int i = 0; i < tracks.length; i++)
+        {
+            cursors[i] = findTick(tracks[i], swapTick);
+        }
+        releaseHeldNotes(swapTick);
+        if (newSequence)
+        {
+            // Parts only select their instruments at the start of their tracks, so repeat that at the bar line
+            newSequence = false;
+            for (Track track : tracks)
+            {
+                for (int i = 0; i < track.size() && !isNote(track.get(i).getMessage()); i++)
+                {
+                    MidiMessage message = track.get(i).getMessage();
+                    if (message instanceof ShortMessage)
+                    {
+                        window.add(new Entry(message, swapTick, getDueNanos(swapTick)));
+                    }
+                }
+            }
+        }
+        pulledTick = swapTick;
+        swapLatency.record(getDueNanos(swapTick) - changedNanos);
+    }
+    
+    
+    /**
+     * Releases the notes that will be sounding at the bar line, unless the new version carries them on past it.
+     */
+    private void releaseHeldNotes(long swapTick)
+    {
+        boolean[] held = sounding.clone();
+        for (Entry entry : window)
+        {
+            track(held, entry.message);
+        }
+        
+        // A note that the new version turns off before it turns it on again is one it carries on playing
+        int[] firstCommand = new int[held.length];
+        for (int i = 0; i < tracks.length; i++)
+        {
+            Track track = tracks[i];
+            for (int j = cursors[i]; j < track.size() && track.get(j).getTick() < swapTick + lookAheadTicks; j++)
+            {
+                MidiMessage message = track.get(j).getMessage();
+                if (isNote(message))
+                {
+                    ShortMessage note = (ShortMessage)message;
+                    int key = note.getChannel() * NUM_PITCHES + note.getData1();
+                    if (firstCommand[key] == 0)
+                    {
+                        firstCommand[key] = isNoteOn(note) ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF;
+                    }
+                }
+            }
+        }
+        
+        for (int key = 0; key < held.length; key++)
+        {
+            if (held[key] && firstCommand[key] != ShortMessage.NOTE_OFF)
+            {
+                try
+                {
+                    ShortMessage off = new ShortMessage(ShortMessage.NOTE_OFF, key / NUM_PITCHES, key % NUM_PITCHES, 0);
+                    window.add(new Entry(off, swapTick, getDueNanos(swapTick)));
+                }
+                catch (InvalidMidiDataException e)
+                {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Finds the first event of a track at or after a tick.
+     */
+    private static int findTick(Track track, long tick)
+    {
+        int low = 0;
+        int high = track.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (track.get(middle).getTick() < tick)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    
+    private void send(Entry entry)
+    {
+        receiver.send(entry.message, -1);
+        metrics.recordEvent(System.nanoTime() - entry.dueNanos);
+        track(sounding, entry.message);
+        sentTick = entry.tick;
+    }
+    
+    
+    private long getDueNanos(long tick)
+    {
+        return startNanos + (long)(tick * playNanosPerTick);
+    }
+    
+    
+    /**
+     * Updates which notes are sounding with a message.
+     */
+    private static void track(boolean[] notes, MidiMessage message)
+    {
+        if (isNote(message))
+        {
+            ShortMessage note = (ShortMessage)message;
+            notes[note.getChannel() * NUM_PITCHES + note.getData1()] = isNoteOn(note);
+        }
+    }
+    
+    
+    private static boolean isNote(MidiMessage message)
+    {
+        if (!(message instanceof ShortMessage))
+        {
+            return false;
+        }
+        int command = ((ShortMessage)message).getCommand();
+        return command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF;
+    }
+    
+    
+    private static boolean isNoteOn(ShortMessage note)
+    {
+        return note.getCommand() == ShortMessage.NOTE_ON && note.getData2() > 0;
+    }
+    
+    
+    /**
+     * Counts the events left in the window that were already due when playback stopped.
+     */
+    private void recordDropped()
+    {
+        int due = 0;
+        long now = System.nanoTime();
+        for (Entry entry : window)
+        {
+            if (entry.dueNanos - now > 0)
+            {
+                break;
+            }
+            due++;
+        }
+        metrics.recordDropped(due);
+        window.clear();
+    }
+    
+    
+    private void silence()
+    {
+        for (int channel = 0; channel < NUM_CHANNELS; channel++)
+        {
+            try
+            {
+                receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, ALL_NOTES_OFF, 0), -1);
+            }
+            catch (InvalidMidiDataException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+    
+    
+    private static final class Entry
+    {
+        private final MidiMessage message;
+        private final long        tick;
+        private final long        dueNanos;
+        
+        
+        private Entry(MidiMessage message, long tick, long dueNanos)
+        {
+            this.message = message;
+            this.tick = tick;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
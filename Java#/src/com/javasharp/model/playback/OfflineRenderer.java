@@ -0,0 +1,251 @@
+package com.javasharp.model.playback;
+
+import com.javasharp.model.EventStream;
+import com.javasharp.model.MusicException;
+import com.javasharp.model.Score;
+import com.javasharp.model.ScoreCompiler;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Renders a score to audio without playing it. The software synthesizer is opened in stream mode, where it has no
+ * audio line and produces samples only as they are read, so a score renders as fast as the synthesizer can run rather
+ * than in real time, and without any audio hardware.
+ * <p>
+ * Stream mode is only reachable through the JDK's own synthesizer. On Java 9 and later its package has to be exported
+ * with {@code --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED}. The project's JRE container and launch
+ * configurations pass it, and a jar built with {@code META-INF/MANIFEST.MF} exports it through its
+ * {@code Add-Exports} attribute when run with {@code java -jar}.
+ */
+public final class OfflineRenderer
+{
+    /**
+     * CD quality: 44.1 kHz, 16-bit, stereo, little-endian as in a WAV file.
+     */
+    public static final AudioFormat DEFAULT_FORMAT    = new AudioFormat(44100, 16, 2, true, false);
+    
+    /**
+     * How long rendering continues after the end of the score so that the last notes can die away.
+     */
+    public static final long        RELEASE_MICROS    = TimeUnit.SECONDS.toMicros(1);
+    
+    private static final long       MICROS_PER_MINUTE = TimeUnit.MINUTES.toMicros(1);
+    private static final long       MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+    
+    
+    private OfflineRenderer()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Renders a score to a WAV file.
+     * 
+     * @param score
+     *            the score to render, which must not be edited while it renders
+     * @param file
+     *            the file to write
+     * @throws MusicException
+     *             if the synthesizer cannot be opened in stream mode or the file cannot be written
+     */
+    public static void writeWave(Score score, File file)
+        throws MusicException
+    {
+        try (AudioInputStream audio = render(score, DEFAULT_FORMAT))
+        {
+            AudioSystem.write(audio, AudioFileFormat.Type.WAVE, file);
+        }
+        catch (IOException e)
+        {
+            throw new MusicException("Unable to write " + file, e);
+        }
+    }
+    
+    
+    /**
+     * Renders a score to PCM audio. The score is rendered as the returned stream is read, and the synthesizer is
+     * closed when the stream is closed.
+     * 
+     * @param score
+     *            the score to render, which must not be edited while it renders
+     * @param format
+     *            the PCM format to render in
+     * @return the rendered audio, whose length is that of the score plus {@link #RELEASE_MICROS}
+     * @throws MusicException
+     *             if the synthesizer cannot be opened in stream mode
+     */
+    public static AudioInputStream render(Score score, AudioFormat format)
+        throws MusicException
+    {
+        double microsPerTick = (double)MICROS_PER_MINUTE /
+            ((double)score.getScoreContext().getTempoBPM() * ScoreCompiler.TICKS_PER_BEAT);
+        long micros = (long)(score.getLength() * microsPerTick) + RELEASE_MICROS;
+        long frames = (long)(micros * (double)format.getFrameRate() / MICROS_PER_SECOND);
+        
+        Synthesizer synthesizer = openStreamSynthesizer();
+        try
+        {
+            AudioInputStream synthesized = openStream(synthesizer, format);
+            RenderStream render =
+                new RenderStream(new EventStream(score), synthesizer, synthesized, microsPerTick, format);
+            return new AudioInputStream(render, format, frames);
+        }
+        catch (MusicException | RuntimeException e)
+        {
+            synthesizer.close();
+            throw e;
+        }
+    }
+    
+    
+    private static Synthesizer openStreamSynthesizer()
+        throws MusicException
+    {
+        // Not the synthesizer shared through MidiUtils: one that is already open cannot be opened in stream mode
+        try
+        {
+            return MidiSystem.getSynthesizer();
+        }
+        catch (MidiUnavailableException e)
+        {
+            throw new MusicException("Unable to get MIDI synthesizer", e);
+        }
+    }
+    
+    
+    private static AudioInputStream openStream(Synthesizer synthesizer, AudioFormat format)
+        throws MusicException
+    {
+        try
+        {
+            Method openStream = synthesizer.getClass().getMethod("openStream", AudioFormat.class, Map.class);
+            return (AudioInputStream)openStream.invoke(synthesizer, format, null);
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new MusicException(synthesizer.getDeviceInfo().getName() + " cannot render offline", e);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new MusicException(
+                "Offline rendering needs --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED", e);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw new MusicException("Unable to open MIDI synthesizer in stream mode", e.getCause());
+        }
+    }
+    
+    
+    /**
+     * Reads the synthesizer's output up to the time of each event before sending the event, so that only the events
+     * of the audio being read have been pulled from the score.
+     */
+    private static final class RenderStream
+        extends InputStream
+    {
+        private final EventStream      events;
+        private final Synthesizer      synthesizer;
+        private final AudioInputStream synthesized;
+        private final Receiver         receiver;
+        private final double           microsPerTick;
+        private final double           framesPerMicro;
+        private final int              frameSize;
+        
+        private long                   frame;
+        
+        
+        private RenderStream(
+            EventStream events,
+            Synthesizer synthesizer,
+            AudioInputStream synthesized,
+            double microsPerTick,
+            AudioFormat format)
+            throws MusicException
+        {
+            this.events = events;
+            this.synthesizer = synthesizer;
+            this.synthesized = synthesized;
+            this.microsPerTick = microsPerTick;
+            framesPerMicro = format.getFrameRate() / MICROS_PER_SECOND;
+            frameSize = format.getFrameSize();
+            try
+            {
+                receiver = synthesizer.getReceiver();
+            }
+            catch (MidiUnavailableException e)
+            {
+                throw new MusicException("Unable to get MIDI synthesizer receiver", e);
+            }
+        }
+        
+        
+        @Override
+        public int read()
+            throws IOException
+        {
+            throw new IOException("Audio must be read in whole frames");
+        }
+        
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+            throws IOException
+        {
+            long framesToEvent = sendDueEvents();
+            int frames = (int)Math.min(length / frameSize, framesToEvent);
+            int read = synthesized.read(buffer, offset, frames * frameSize);
+            if (read > 0)
+            {
+                frame += read / frameSize;
+            }
+            return read;
+        }
+        
+        
+        @Override
+        public void close()
+            throws IOException
+        {
+            synthesized.close();
+            synthesizer.close();
+        }
+        
+        
+        /**
+         * Sends the events that fall on or before the current frame.
+         * 
+         * @return the number of frames until the next event is due
+         */
+        private long sendDueEvents()
+        {
+            while (events.hasNext())
+            {
+                long micros = (long)(events.peekTick() * microsPerTick);
+                long eventFrame = (long)(micros * framesPerMicro);
+                if (eventFrame > frame)
+                {
+                    return eventFrame - frame;
+                }
+                MidiEvent event = events.next();
+                receiver.send(event.getMessage(), micros);
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
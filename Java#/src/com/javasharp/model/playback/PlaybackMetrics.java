@@ -0,0 +1,251 @@
+package com.javasharp.model.playback;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.VoiceStatus;
+
+/**
+ * How healthy playback has been: how late each event was sent, how many were late or dropped, how many synthesizer
+ * voices were in use and how long scores took to compile. Everything is recorded into lock-free counters and
+ * {@link LatencyHistogram histograms}, so the playback threads never block on it.
+ * <p>
+ * There is one set of metrics for the whole program. It can be watched over JMX once {@link #register()} has been
+ * called, under the name {@value #OBJECT_NAME}.
+ */
+public final class PlaybackMetrics
+    implements PlaybackMetricsMBean
+{
+    public static final String           OBJECT_NAME       = "com.javasharp:type=PlaybackMetrics";
+    
+    /**
+     * How late an event may be sent before it counts as late, which is about where a listener starts to hear it.
+     */
+    public static final long             LATE_NANOS        = TimeUnit.MILLISECONDS.toNanos(5);
+    
+    private static final long            NANOS_PER_MICRO   = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final double          NANOS_PER_MILLI   = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final PlaybackMetrics INSTANCE          = new PlaybackMetrics();
+    
+    private final LatencyHistogram       timingError;
+    private final LatencyHistogram       voicesInUse;
+    private final LatencyHistogram       compileTime;
+    private final AtomicLong             lateEvents;
+    private final AtomicLong             droppedEvents;
+    
+    
+    private PlaybackMetrics()
+    {
+        timingError = new LatencyHistogram();
+        voicesInUse = new LatencyHistogram();
+        compileTime = new LatencyHistogram();
+        lateEvents = new AtomicLong();
+        droppedEvents = new AtomicLong();
+    }
+    
+    
+    public static PlaybackMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    
+    /**
+     * Registers the metrics with the platform MBean server, unless they are registered already.
+     * 
+     * @return false if they could not be registered
+     */
+    public static boolean register()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            return true;
+        }
+        catch (InstanceAlreadyExistsException e)
+        {
+            return true;
+        }
+        catch (JMException e)
+        {
+            return false;
+        }
+    }
+    
+    
+    /**
+     * Records that an event was sent.
+     * 
+     * @param errorNanos
+     *            how much later than its due time the event was sent
+     */
+    public void recordEvent(long errorNanos)
+    {
+        timingError.record(errorNanos);
+        if (errorNanos > LATE_NANOS)
+        {
+            lateEvents.incrementAndGet();
+        }
+    }
+    
+    
+    /**
+     * Records events that were due but were never sent.
+     * 
+     * @param count
+     *            the number of events
+     */
+    public void recordDropped(int count)
+    {
+        if (count > 0)
+        {
+            droppedEvents.addAndGet(count);
+        }
+    }
+    
+    
+    /**
+     * Records how many voices of a synthesizer are sounding right now. Looking at the voices copies their status, so
+     * this is meant to be called now and then rather than for every event.
+     * 
+     * @param synthesizer
+     *            the synthesizer
+     */
+    public void sampleVoices(Synthesizer synthesizer)
+    {
+        int active = 0;
+        for (VoiceStatus voice : synthesizer.getVoiceStatus())
+        {
+            if (voice.active)
+            {
+                active++;
+            }
+        }
+        voicesInUse.record(active);
+    }
+    
+    
+    public void recordCompile(long nanos)
+    {
+        compileTime.record(nanos);
+    }
+    
+    
+    public LatencyHistogram getTimingError()
+    {
+        return timingError;
+    }
+    
+    
+    public LatencyHistogram getVoicesInUse()
+    {
+        return voicesInUse;
+    }
+    
+    
+    public LatencyHistogram getCompileTime()
+    {
+        return compileTime;
+    }
+    
+    
+    @Override
+    public long getEventCount()
+    {
+        return timingError.getCount();
+    }
+    
+    
+    @Override
+    public double getMeanTimingErrorMicros()
+    {
+        return timingError.getMean() / NANOS_PER_MICRO;
+    }
+    
+    
+    @Override
+    public long getP99TimingErrorMicros()
+    {
+        return timingError.getPercentile(99) / NANOS_PER_MICRO;
+    }
+    
+    
+    @Override
+    public long getMaxTimingErrorMicros()
+    {
+        return timingError.getMax() / NANOS_PER_MICRO;
+    }
+    
+    
+    @Override
+    public long getLateEventCount()
+    {
+        return lateEvents.get();
+    }
+    
+    
+    @Override
+    public long getDroppedEventCount()
+    {
+        return droppedEvents.get();
+    }
+    
+    
+    @Override
+    public long getMaxVoicesInUse()
+    {
+        return voicesInUse.getMax();
+    }
+    
+    
+    @Override
+    public long getP99VoicesInUse()
+    {
+        return voicesInUse.getPercentile(99);
+    }
+    
+    
+    @Override
+    public long getCompileCount()
+    {
+        return compileTime.getCount();
+    }
+    
+    
+    @Override
+    public double getMeanCompileMillis()
+    {
+        return compileTime.getMean() / NANOS_PER_MILLI;
+    }
+    
+    
+    @Override
+    public double getMaxCompileMillis()
+    {
+        return compileTime.getMax() / NANOS_PER_MILLI;
+    }
+    
+    
+    @Override
+    public String getSummary()
+    {
+        return String.format("timing p99 %.1f ms, %d late, %d dropped, %d voices at most, compile %.0f ms at most",
+            timingError.getPercentile(99) / NANOS_PER_MILLI, getLateEventCount(), getDroppedEventCount(),
+            getMaxVoicesInUse(), getMaxCompileMillis());
+    }
+    
+    
+    @Override
+    public void reset()
+    {
+        timingError.reset();
+        voicesInUse.reset();
+        compileTime.reset();
+        lateEvents.set(0);
+        droppedEvents.set(0);
+    }
+}
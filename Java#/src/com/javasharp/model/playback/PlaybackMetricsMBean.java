@@ -0,0 +1,45 @@
+package com.javasharp.model.playback;
+
+/**
+ * The management interface of {@link PlaybackMetrics}. Times are in microseconds unless named otherwise.
+ */
+public interface PlaybackMetricsMBean
+{
+    long getEventCount();
+    
+    
+    double getMeanTimingErrorMicros();
+    
+    
+    long getP99TimingErrorMicros();
+    
+    
+    long getMaxTimingErrorMicros();
+    
+    
+    long getLateEventCount();
+    
+    
+    long getDroppedEventCount();
+    
+    
+    long getMaxVoicesInUse();
+    
+    
+    long getP99VoicesInUse();
+    
+    
+    long getCompileCount();
+    
+    
+    double getMeanCompileMillis();
+    
+    
+    double getMaxCompileMillis();
+    
+    
+    String getSummary();
+    
+    
+    void reset();
+}
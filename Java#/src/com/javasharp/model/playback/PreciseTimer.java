@@ -0,0 +1,56 @@
+package com.javasharp.model.playback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for deadlines more precisely than sleeping alone. The thread parks until shortly before the deadline, since
+ * parking can overshoot by the scheduler's timer granularity, and then spins for the rest.
+ */
+final class PreciseTimer
+{
+    /**
+     * How long before a deadline to stop parking and start spinning.
+     */
+    static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    
+    private PreciseTimer()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Parks until the spin window before a deadline. The caller should check for new work when this returns false.
+     * 
+     * @param deadline
+     *            the deadline, in {@link System#nanoTime()} time
+     * @return true if the deadline is within the spin window, false if the thread woke early or was unparked
+     */
+    static boolean parkUntilNear(long deadline)
+    {
+        long remaining = deadline - System.nanoTime() - SPIN_NANOS;
+        if (remaining <= 0)
+        {
+            return true;
+        }
+        LockSupport.parkNanos(remaining);
+        return deadline - System.nanoTime() <= SPIN_NANOS;
+    }
+    
+    
+    /**
+     * Spins until a deadline that is expected to be within the spin window.
+     * 
+     * @param deadline
+     *            the deadline, in {@link System#nanoTime()} time
+     */
+    static void spinUntil(long deadline)
+    {
+        while (System.nanoTime() - deadline < 0)
+        {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.javasharp.model.playback;
+
+import com.javasharp.model.EventStream;
+import com.javasharp.model.Length;
+import com.javasharp.model.Score;
+import com.javasharp.model.ScoreCompiler;
+import com.javasharp.model.util.StartupTimer;
+import com.javasharp.model.util.StartupTimer.Phase;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Plays a score by pulling its events lazily from an {@link EventStream} and sending them to a {@link Receiver} as
+ * they come due, instead of compiling the whole score into a sequence first. Only the events within a bounded
+ * look-ahead window are held in memory, so playback starts as soon as the first measure of each part is instructed and
+ * memory stays flat however long the score is.
+ */
+public final class StreamingPlayer
+{
+    /**
+     * Four whole notes, which is four bars of common time.
+     */
+    public static final int         DEFAULT_LOOK_AHEAD_TICKS = 4 * Length.WHOLE.getLength(0);
+    
+    private static final int        NUM_CHANNELS             = 16;
+    private static final int        ALL_NOTES_OFF            = 123;
+    private static final long       MICROS_PER_MINUTE        = TimeUnit.MINUTES.toMicros(1);
+    
+    // Set once the first note is timed, so that later notes skip the timer
+    private static volatile boolean firstNoteMarked;
+    
+    private final Score             score;
+    private final Receiver          receiver;
+    private final int               lookAheadTicks;
+    private final PlaybackMetrics   metrics;
+    
+    private volatile boolean        playing;
+    private Thread                  thread;
+    
+    
+    public StreamingPlayer(Score score, Receiver receiver)
+    {
+        this(score, receiver, DEFAULT_LOOK_AHEAD_TICKS);
+    }
+    
+    
+    /**
+     * Creates a player for a score.
+     * 
+     * @param score
+     *            the score to play, which must not be edited while it plays
+     * @param receiver
+     *            the receiver to send events to
+     * @param lookAheadTicks
+     *            how far ahead of the playback position events are pulled from the score
+     */
+    public StreamingPlayer(Score score, Receiver receiver, int lookAheadTicks)
+    {
+        this.score = score;
+        this.receiver = receiver;
+        this.lookAheadTicks = lookAheadTicks;
+        metrics = PlaybackMetrics.getInstance();
+    }
+    
+    
+    public synchronized void start()
+    {
+        if (playing)
+        {
+            return;
+        }
+        joinStoppedThread();
+        playing = true;
+        thread = new Thread(this::play, "Java# streaming playback");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    
+    public synchronized void stop()
+    {
+        playing = false;
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    
+    /**
+     * Waits for the thread of the last run to exit once it has been stopped, so that it cannot go on sending into the
+     * next run or end it from its cleanup.
+     */
+    private void joinStoppedThread()
+    {
+        if (thread == null)
+        {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    public boolean isPlaying()
+    {
+        return playing;
+    }
+    
+    
+    /**
+     * Waits for playback to finish, either at the end of the score or after {@link #stop()}.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void await()
+        throws InterruptedException
+    {
+        Thread playThread;
+        synchronized (this)
+        {
+            playThread = thread;
+        }
+        if (playThread != null)
+        {
+            playThread.join();
+        }
+    }
+    
+    
+    private void play()
+    {
+        EventStream stream = new EventStream(score);
+        ArrayDeque<MidiEvent> window = new ArrayDeque<>();
+        double nanosPerTick = 1000.0 * MICROS_PER_MINUTE /
+            ((double)score.getScoreContext().getTempoBPM() * ScoreCompiler.TICKS_PER_BEAT);
+        long startNanos = System.nanoTime();
+        
+        try
+        {
+            while (playing)
+            {
+                long nowTick = (long)((System.nanoTime() - startNanos) / nanosPerTick);
+                while (stream.hasNext() && stream.peekTick() <= nowTick + lookAheadTicks)
+                {
+                    window.add(stream.next());
+                }
+                while (!window.isEmpty() && window.peek().getTick() <= nowTick)
+                {
+                    MidiEvent event = window.poll();
+                    MidiMessage message = event.getMessage();
+                    receiver.send(message, -1);
+                    metrics.recordEvent(System.nanoTime() - (startNanos + (long)(event.getTick() * nanosPerTick)));
+                    if (!firstNoteMarked && message instanceof ShortMessage &&
+                        ((ShortMessage)message).getCommand() == ShortMessage.NOTE_ON)
+                    {
+                        StartupTimer.mark(Phase.FIRST_NOTE);
+                        firstNoteMarked = true;
+                    }
+                }
+                if (window.isEmpty() && !stream.hasNext())
+                {
+                    break;
+                }
+                
+                long nextTick = window.isEmpty() ? stream.peekTick() : window.peek().getTick();
+                long dueNanos = startNanos + (long)(nextTick * nanosPerTick);
+                LockSupport.parkNanos(dueNanos - System.nanoTime());
+            }
+        }
+        finally
+        {
+            playing = false;
+            recordDropped(window, (long)((System.nanoTime() - startNanos) / nanosPerTick));
+            silence();
+        }
+    }
+    
+    
+    /**
+     * Counts the events left in the window that were already due when playback stopped.
+     */
+    private void recordDropped(ArrayDeque<MidiEvent> window, long nowTick)
+    {
+        int due = 0;
+        for (MidiEvent event : window)
+        {
+            if (event.getTick() > nowTick)
+            {
+                break;
+            }
+            due++;
+        }
+        metrics.recordDropped(due);
+    }
+    
+    
+    private void silence()
+    {
+        for (int channel = 0; channel < NUM_CHANNELS; channel++)
+        {
+            try
+            {
+                receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, ALL_NOTES_OFF, 0), -1);
+            }
+            catch (InvalidMidiDataException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.javasharp.model.playback;
+
+import com.javasharp.model.MusicException;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Synthesizer;
+
+/**
+ * Sends MIDI messages straight to a synthesizer's receiver at precise times from a dedicated high priority thread,
+ * without going through a {@link javax.sound.midi.Sequencer}. The thread parks until just before each message is due
+ * and spins for the rest, and records how late every message was actually sent.
+ */
+public final class SynthesizerScheduler
+    implements AutoCloseable
+{
+    private static final long                     VOICE_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private final Synthesizer                     synthesizer;
+    private final Receiver                        receiver;
+    private final PriorityQueue<ScheduledMessage> queue;
+    private final LatencyHistogram                schedulingError;
+    private final PlaybackMetrics                 metrics;
+    
+    private long                                  nextSequenceNumber;
+    private long                                  lastVoiceSample;
+    private volatile boolean                      running;
+    private Thread                                thread;
+    
+    
+    /**
+     * Creates a scheduler for a synthesizer, which must already be open.
+     * 
+     * @param synthesizer
+     *            the synthesizer to play on
+     * @throws MusicException
+     *             if the synthesizer has no receiver available
+     */
+    public SynthesizerScheduler(Synthesizer synthesizer)
+        throws MusicException
+    {
+        this.synthesizer = synthesizer;
+        try
+        {
+            receiver = synthesizer.getReceiver();
+        }
+        catch (MidiUnavailableException e)
+        {
+            throw new MusicException("Unable to get synthesizer receiver", e);
+        }
+        queue = new PriorityQueue<>();
+        schedulingError = new LatencyHistogram();
+        metrics = PlaybackMetrics.getInstance();
+    }
+    
+    
+    public synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "Java# synthesizer scheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+    
+    
+    /**
+     * Schedules a message to be sent at a time.
+     * 
+     * @param message
+     *            the message to send
+     * @param dueNanos
+     *            when to send it, in {@link System#nanoTime()} time
+     */
+    public void schedule(MidiMessage message, long dueNanos)
+    {
+        boolean newHead;
+        synchronized (queue)
+        {
+            ScheduledMessage scheduled = new ScheduledMessage(message, dueNanos, nextSequenceNumber++);
+            queue.add(scheduled);
+            newHead = queue.peek() == scheduled;
+        }
+        if (newHead && thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    
+    /**
+     * Drops every message that has not been sent yet. Messages that were already due count as dropped in the
+     * {@link PlaybackMetrics}.
+     */
+    public void cancelAll()
+    {
+        int overdue = 0;
+        long now = System.nanoTime();
+        synchronized (queue)
+        {
+            for (ScheduledMessage scheduled : queue)
+            {
+                if (scheduled.dueNanos - now <= 0)
+                {
+                    overdue++;
+                }
+            }
+            queue.clear();
+        }
+        metrics.recordDropped(overdue);
+    }
+    
+    
+    /**
+     * Gets how late each message was sent relative to its due time, in nanoseconds.
+     * 
+     * @return the histogram of scheduling errors
+     */
+    public LatencyHistogram getSchedulingError()
+    {
+        return schedulingError;
+    }
+    
+    
+    @Override
+    public synchronized void close()
+    {
+        running = false;
+        cancelAll();
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+        receiver.close();
+    }
+    
+    
+    private void run()
+    {
+        while (running)
+        {
+            ScheduledMessage next;
+            synchronized (queue)
+            {
+                next = queue.peek();
+            }
+            if (next == null)
+            {
+                LockSupport.park(this);
+                continue;
+            }
+            if (!PreciseTimer.parkUntilNear(next.dueNanos))
+            {
+                // Woken early, possibly because an earlier message was scheduled
+                continue;
+            }
+            PreciseTimer.spinUntil(next.dueNanos);
+            
+            synchronized (queue)
+            {
+                // The queue may have changed while spinning, so only take a message that is now due
+                next = queue.peek();
+                if (next != null && next.dueNanos - System.nanoTime() <= 0)
+                {
+                    queue.poll();
+                }
+                else
+                {
+                    next = null;
+                }
+            }
+            if (next != null)
+            {
+                receiver.send(next.message, synthesizer.getMicrosecondPosition());
+                long sent = System.nanoTime();
+                schedulingError.record(sent - next.dueNanos);
+                metrics.recordEvent(sent - next.dueNanos);
+                if (sent - lastVoiceSample >= VOICE_SAMPLE_NANOS)
+                {
+                    lastVoiceSample = sent;
+                    metrics.sampleVoices(synthesizer);
+                }
+            }
+        }
+    }
+    
+    
+    private static final class ScheduledMessage
+        implements Comparable<ScheduledMessage>
+    {
+        private final MidiMessage message;
+        private final long        dueNanos;
+        private final long        sequenceNumber;
+        
+        
+        private ScheduledMessage(MidiMessage message, long dueNanos, long sequenceNumber)
+        {
+            this.message = message;
+            this.dueNanos = dueNanos;
+            this.sequenceNumber = sequenceNumber;
+        }
+        
+        
+        @Override
+        public int compareTo(ScheduledMessage other)
+        {
+            int byTime = Long.compare(dueNanos - other.dueNanos, 0);
+            return byTime != 0 ? byTime : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.javasharp.model.util;
+
+/**
+ * Builds 64-bit content hashes, such as the hashes of the score tree, in which each group's hash is built from its
+ * children's. The hashes are meant for telling quickly whether two pieces of content differ, not for security: equal
+ * content always hashes the same, and different content hashes the same only by a one in 2^64 chance.
+ */
+public final class ContentHash
+{
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    
+    private ContentHash()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Starts a hash for a kind of content, so that different kinds with the same values hash differently.
+     * 
+     * @param kind
+     *            the class of the content
+     * @return the starting hash
+     */
+    public static long start(Class<?> kind)
+    {
+        return mix(kind.getName().hashCode());
+    }
+    
+    
+    /**
+     * Adds a value to a hash. The order values are added in matters.
+     * 
+     * @param hash
+     *            the hash so far
+     * @param value
+     *            the value to add
+     * @return the new hash
+     */
+    public static long add(long hash, long value)
+    {
+        return mix(hash * GOLDEN_GAMMA + value);
+    }
+    
+    
+    /**
+     * Spreads the bits of a value over the whole hash, using the finalizer of SplitMix64.
+     */
+    private static long mix(long value)
+    {
+        long z = value + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,34 +1,208 @@
-package com.javasharp.model.util;
-
-import com.javasharp.model.MusicException;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import javax.sound.midi.Instrument;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.Synthesizer;
-
-public final class MidiUtils
-{
-    private MidiUtils()
-    {
-        throw new AssertionError("Suppress default constructor for noninstantiability");
-    }
-    
-    
-    private static Collection<Instrument> getInstrments()
-        throws MusicException
-    {
-        try (Synthesizer synth = MidiSystem.getSynthesizer())
-        {
-            synth.open();
-            Collection<Instrument> instruments = Arrays.asList(synth.getAvailableInstruments());
-            return Collections.unmodifiableCollection(instruments);
-        }
-        catch (MidiUnavailableException e)
-        {
-            throw new MusicException("Unable to get MIDI instruments", e);
-        }
-    }
-}
+package com.javasharp.model.util;
+
+import com.javasharp.model.MusicException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.sound.midi.Instrument;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Patch;
+import javax.sound.midi.Synthesizer;
+
+/**
+ * Owns the one synthesizer the program uses. Loading a synthesizer's soundbank is slow and takes a lot of memory, so
+ * it is done once, the first time anything needs it, and the same synthesizer is shared by playback, previews and
+ * instrument lookups. Instruments are indexed by patch and by name when they are first looked up.
+ */
+public final class MidiUtils
+{
+    private static Synthesizer              synthesizer;
+    private static Collection<Instrument>   instruments;
+    private static Map<Integer, Instrument> instrumentsByPatch;
+    private static Map<String, Instrument>  instrumentsByName;
+    
+    
+    private MidiUtils()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Gets the shared synthesizer, opening it the first time.
+     * 
+     * @return the open synthesizer
+     * @throws MusicException
+     *             if the synthesizer cannot be opened
+     */
+    public static synchronized Synthesizer getSynthesizer()
+        throws MusicException
+    {
+        Synthesizer synth = getDevice();
+        if (!synth.isOpen())
+        {
+            try
+            {
+                synth.open();
+            }
+            catch (MidiUnavailableException e)
+            {
+                throw new MusicException("Unable to open MIDI synthesizer", e);
+            }
+        }
+        return synth;
+    }
+    
+    
+    /**
+     * Closes the shared synthesizer if it is open. It is opened again the next time it is needed.
+     */
+    public static synchronized void closeSynthesizer()
+    {
+        if (synthesizer != null && synthesizer.isOpen())
+        {
+            synthesizer.close();
+        }
+    }
+    
+    
+    public static Collection<Instrument> getInstruments()
+        throws MusicException
+    {
+        return getIndexedInstruments();
+    }
+    
+    
+    /**
+     * Looks up an instrument by its patch. If several instruments share a patch, such as a drum kit and the melodic
+     * instrument with the same program, the first one in the soundbank is returned.
+     * 
+     * @param bank
+     *            the bank of the instrument
+     * @param program
+     *            the program of the instrument
+     * @return the instrument, or null if there is none with that patch
+     * @throws MusicException
+     *             if the instruments cannot be loaded
+     */
+    public static Instrument getInstrument(int bank, int program)
+        throws MusicException
+    {
+        getIndexedInstruments();
+        return instrumentsByPatch.get(patchKey(bank, program));
+    }
+    
+    
+    /**
+     * Looks up an instrument by name, ignoring case and surrounding whitespace.
+     * 
+     * @param name
+     *            the name of the instrument
+     * @return the instrument, or null if there is none with that name
+     * @throws MusicException
+     *             if the instruments cannot be loaded
+     */
+    public static Instrument getInstrument(String name)
+        throws MusicException
+    {
+        getIndexedInstruments();
+        return instrumentsByName.get(nameKey(name));
+    }
+    
+    
+    /**
+     * Looks up an instrument by its patch, standing in a placeholder that only carries the patch if the soundbank has
+     * no instrument with it. The placeholder still selects the patch when played, on a synthesizer that has it.
+     * 
+     * @param bank
+     *            the bank of the instrument
+     * @param program
+     *            the program of the instrument
+     * @return the instrument or its placeholder
+     * @throws MusicException
+     *             if the instruments cannot be loaded
+     */
+    public static Instrument getInstrumentOrPlaceholder(int bank, int program)
+        throws MusicException
+    {
+        Instrument instrument = getInstrument(bank, program);
+        return instrument != null ? instrument : new MissingInstrument(new Patch(bank, program));
+    }
+    
+    
+    private static synchronized Collection<Instrument> getIndexedInstruments()
+        throws MusicException
+    {
+        if (instruments == null)
+        {
+            // The soundbank can be read without opening the synthesizer, which needs an audio line
+            Instrument[] available = getDevice().getAvailableInstruments();
+            Map<Integer, Instrument> byPatch = new HashMap<>(2 * available.length);
+            Map<String, Instrument> byName = new HashMap<>(2 * available.length);
+            for (Instrument instrument : available)
+            {
+                Patch patch = instrument.getPatch();
+                byPatch.putIfAbsent(patchKey(patch.getBank(), patch.getProgram()), instrument);
+                byName.putIfAbsent(nameKey(instrument.getName()), instrument);
+            }
+            instrumentsByPatch = byPatch;
+            instrumentsByName = byName;
+            instruments = Collections.unmodifiableCollection(Arrays.asList(available));
+        }
+        return instruments;
+    }
+    
+    
+    private static Synthesizer getDevice()
+        throws MusicException
+    {
+        if (synthesizer == null)
+        {
+            try
+            {
+                synthesizer = MidiSystem.getSynthesizer();
+            }
+            catch (MidiUnavailableException e)
+            {
+                throw new MusicException("Unable to get MIDI synthesizer", e);
+            }
+        }
+        return synthesizer;
+    }
+    
+    
+    private static Integer patchKey(int bank, int program)
+    {
+        return (bank << 7) | program;
+    }
+    
+    
+    private static String nameKey(String name)
+    {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    
+    /**
+     * Stands in for an instrument that the soundbank does not have.
+     */
+    private static final class MissingInstrument
+        extends Instrument
+    {
+        private MissingInstrument(Patch patch)
+        {
+            super(null, patch, "Missing instrument", null);
+        }
+        
+        
+        @Override
+        public Object getData()
+        {
+            return null;
+        }
+    }
+}
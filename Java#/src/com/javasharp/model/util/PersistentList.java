@@ -0,0 +1,324 @@
+package com.javasharp.model.util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable list. Inserting, removing or replacing an element returns a new list and leaves the old one as it was,
+ * and the two share every node except the O(log n) on the path to the change, so keeping many versions of a long list
+ * costs little more than keeping one.
+ * <p>
+ * The list is a height-balanced (AVL) tree ordered by position, where each node knows the size of its subtree. Getting,
+ * inserting, removing and replacing an element are all O(log n).
+ * 
+ * @param <E>
+ *            the type of the elements
+ */
+public final class PersistentList<E>
+    implements Iterable<E>
+{
+    /**
+     * Roughly how many bytes one node of the tree takes: an object header and five fields.
+     */
+    public static final int                NODE_BYTES = 32;
+    
+    private static final PersistentList<?> EMPTY      = new PersistentList<>(null);
+    
+    private final Node<E>                  root;
+    
+    
+    private PersistentList(Node<E> root)
+    {
+        this.root = root;
+    }
+    
+    
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentList<E> empty()
+    {
+        return (PersistentList<E>)EMPTY;
+    }
+    
+    
+    /**
+     * Creates a list holding the elements of another list, in O(n).
+     * 
+     * @param elements
+     *            the elements
+     * @return the new list
+     */
+    public static <E> PersistentList<E> copyOf(List<? extends E> elements)
+    {
+        return elements.isEmpty() ? empty() : new PersistentList<>(build(elements, 0, elements.size()));
+    }
+    
+    
+    public int size()
+    {
+        return size(root);
+    }
+    
+    
+    public boolean isEmpty()
+    {
+        return root == null;
+    }
+    
+    
+    /**
+     * Gets the height of the tree, which bounds how many nodes a change creates.
+     * 
+     * @return the height, 0 for an empty list
+     */
+    public int getHeight()
+    {
+        return height(root);
+    }
+    
+    
+    public E get(int index)
+    {
+        checkIndex(index, size() - 1);
+        Node<E> node = root;
+        while (true)
+        {
+            int leftSize = size(node.left);
+            if (index < leftSize)
+            {
+                node = node.left;
+            }
+            else if (index > leftSize)
+            {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+            else
+            {
+                return node.value;
+            }
+        }
+    }
+    
+    
+    public PersistentList<E> add(E element)
+    {
+        return insert(size(), element);
+    }
+    
+    
+    public PersistentList<E> insert(int index, E element)
+    {
+        checkIndex(index, size());
+        return new PersistentList<>(insert(root, index, element));
+    }
+    
+    
+    public PersistentList<E> remove(int index)
+    {
+        checkIndex(index, size() - 1);
+        return new PersistentList<>(remove(root, index));
+    }
+    
+    
+    public PersistentList<E> set(int index, E element)
+    {
+        checkIndex(index, size() - 1);
+        return new PersistentList<>(set(root, index, element));
+    }
+    
+    
+    @Override
+    public Iterator<E> iterator()
+    {
+        return new NodeIterator<>(root);
+    }
+    
+    
+    private static void checkIndex(int index, int max)
+    {
+        if (index < 0 || index > max)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (max + 1));
+        }
+    }
+    
+    
+    private static <E> Node<E> build(List<? extends E> elements, int from, int to)
+    {
+        if (from == to)
+        {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return new Node<>(elements.get(middle), build(elements, from, middle), build(elements, middle + 1, to));
+    }
+    
+    
+    private static <E> Node<E> insert(Node<E> node, int index, E element)
+    {
+        if (node == null)
+        {
+            return new Node<>(element, null, null);
+        }
+        int leftSize = size(node.left);
+        if (index <= leftSize)
+        {
+            return balance(node.value, insert(node.left, index, element), node.right);
+        }
+        return balance(node.value, node.left, insert(node.right, index - leftSize - 1, element));
+    }
+    
+    
+    private static <E> Node<E> remove(Node<E> node, int index)
+    {
+        int leftSize = size(node.left);
+        if (index < leftSize)
+        {
+            return balance(node.value, remove(node.left, index), node.right);
+        }
+        if (index > leftSize)
+        {
+            return balance(node.value, node.left, remove(node.right, index - leftSize - 1));
+        }
+        if (node.left == null)
+        {
+            return node.right;
+        }
+        if (node.right == null)
+        {
+            return node.left;
+        }
+        // Replace the removed node by the first node after it
+        Node<E> first = node.right;
+        while (first.left != null)
+        {
+            first = first.left;
+        }
+        return balance(first.value, node.left, remove(node.right, 0));
+    }
+    
+    
+    private static <E> Node<E> set(Node<E> node, int index, E element)
+    {
+        int leftSize = size(node.left);
+        if (index < leftSize)
+        {
+            return new Node<>(node.value, set(node.left, index, element), node.right);
+        }
+        if (index > leftSize)
+        {
+            return new Node<>(node.value, node.left, set(node.right, index - leftSize - 1, element));
+        }
+        return new Node<>(element, node.left, node.right);
+    }
+    
+    
+    /**
+     * Creates a node from a value and two subtrees whose heights differ by at most two, rotating it back into balance.
+     */
+    private static <E> Node<E> balance(E value, Node<E> left, Node<E> right)
+    {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1)
+        {
+            if (height(left.left) >= height(left.right))
+            {
+                return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+            }
+            return new Node<>(left.right.value, new Node<>(left.value, left.left, left.right.left),
+                new Node<>(value, left.right.right, right));
+        }
+        if (rightHeight > leftHeight + 1)
+        {
+            if (height(right.right) >= height(right.left))
+            {
+                return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+            }
+            return new Node<>(right.left.value, new Node<>(value, left, right.left.left),
+                new Node<>(right.value, right.left.right, right.right));
+        }
+        return new Node<>(value, left, right);
+    }
+    
+    
+    private static int size(Node<?> node)
+    {
+        return node == null ? 0 : node.size;
+    }
+    
+    
+    private static int height(Node<?> node)
+    {
+        return node == null ? 0 : node.height;
+    }
+    
+    
+    private static final class Node<E>
+    {
+        private final E       value;
+        private final Node<E> left;
+        private final Node<E> right;
+        private final int     size;
+        private final int     height;
+        
+        
+        private Node(E value, Node<E> left, Node<E> right)
+        {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            size = size(left) + size(right) + 1;
+            height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+    
+    
+    /**
+     * Walks the tree in order, keeping the path to the next node on a stack.
+     */
+    private static final class NodeIterator<E>
+        implements Iterator<E>
+    {
+        private final Object[] stack;
+        private int            depth;
+        
+        
+        private NodeIterator(Node<E> root)
+        {
+            stack = new Object[height(root)];
+            pushLeft(root);
+        }
+        
+        
+        @Override
+        public boolean hasNext()
+        {
+            return depth > 0;
+        }
+        
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next()
+        {
+            if (depth == 0)
+            {
+                throw new NoSuchElementException();
+            }
+            Node<E> node = (Node<E>)stack[--depth];
+            pushLeft(node.right);
+            return node.value;
+        }
+        
+        
+        private void pushLeft(Node<E> node)
+        {
+            for (Node<E> next = node; next != null; next = next.left)
+            {
+                stack[depth++] = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.javasharp.model.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Records how long after the JVM started each phase of startup was reached, so that time to first frame and time to
+ * first note can be measured. Each phase is recorded and logged the first time it is reached, and ignored after that.
+ */
+public final class StartupTimer
+{
+    private static final Logger           LOGGER = Logger.getLogger(StartupTimer.class.getName());
+    
+    private static final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+    
+    
+    private StartupTimer()
+    {
+        throw new AssertionError("Suppress default constructor for noninstantiability");
+    }
+    
+    
+    /**
+     * Records that a phase has been reached, unless it has been already.
+     * 
+     * @param phase
+     *            the phase
+     * @return true if this was the first time the phase was reached
+     */
+    public static boolean mark(Phase phase)
+    {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        synchronized (phases)
+        {
+            if (phases.putIfAbsent(phase, uptime) != null)
+            {
+                return false;
+            }
+        }
+        LOGGER.info(() -> "Startup: " + phase.getDescription() + " after " + uptime + " ms");
+        return true;
+    }
+    
+    
+    /**
+     * Gets the phases reached so far.
+     * 
+     * @return the milliseconds since the JVM started, by phase, in the order of the phases
+     */
+    public static Map<Phase, Long> getPhases()
+    {
+        synchronized (phases)
+        {
+            return new EnumMap<>(phases);
+        }
+    }
+    
+    
+    public enum Phase
+    {
+        MAIN("main entered"),
+        FRAME_VISIBLE("frame visible"),
+        IMAGES_LOADED("images loaded"),
+        HELP_INDEXED("help indexed"),
+        SYNTHESIZER_READY("synthesizer ready"),
+        FIRST_NOTE("first note played");
+        
+        private final String description;
+        
+        
+        private Phase(String description)
+        {
+            this.description = description;
+        }
+        
+        
+        public String getDescription()
+        {
+            return description;
+        }
+    }
+}
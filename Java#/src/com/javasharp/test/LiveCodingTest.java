@@ -0,0 +1,48 @@
+package com.javasharp.test;
+
+import com.javasharp.model.NotationDocument;
+import com.javasharp.model.playback.LivePlayer;
+import com.javasharp.model.util.MidiUtils;
+import javax.sound.midi.Synthesizer;
+
+public class LiveCodingTest
+{
+    private static final String HEADER      = "tempo 120\npart 0 program 0\n";
+    private static final String BAR         = "| q0 q2 q4 q2 |\n";
+    private static final int    NUM_BARS    = 16;
+    private static final int    NUM_EDITS   = 8;
+    private static final long   EDIT_MILLIS = 1500;
+    
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            Synthesizer synthesizer = MidiUtils.getSynthesizer();
+            NotationDocument document = new NotationDocument();
+            document.setText(HEADER + BAR.repeat(NUM_BARS));
+            LivePlayer player = new LivePlayer(document.getScore(), synthesizer.getReceiver());
+            player.start();
+            
+            // Raise the first note of every bar a step at a time, which should be heard from the next bar each time
+            for (int i = 1; i <= NUM_EDITS && player.isPlaying(); i++)
+            {
+                Thread.sleep(EDIT_MILLIS);
+                for (int bar = 0; bar < NUM_BARS; bar++)
+                {
+                    int offset = HEADER.length() + bar * BAR.length() + "| q".length();
+                    document.edit(offset, 1, Integer.toString(i % 8));
+                }
+                player.setScore(document.getScore());
+            }
+            
+            player.await();
+            System.out.println("Swap latency: " + player.getSwapLatency());
+            MidiUtils.closeSynthesizer();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
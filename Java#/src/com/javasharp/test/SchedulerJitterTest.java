@@ -0,0 +1,44 @@
+package com.javasharp.test;
+
+import com.javasharp.model.playback.SynthesizerScheduler;
+import com.javasharp.model.util.MidiUtils;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+
+public class SchedulerJitterTest
+{
+    private static final int  NUM_NOTES     = 2000;
+    private static final long NOTE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(5);
+    
+    
+    public static void main(String[] args)
+    {
+        try
+        {
+            Synthesizer synthesizer = MidiUtils.getSynthesizer();
+            
+            try (SynthesizerScheduler scheduler = new SynthesizerScheduler(synthesizer))
+            {
+                scheduler.start();
+                long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+                for (int i = 0; i < NUM_NOTES; i++)
+                {
+                    int pitch = 60 + (i % 12);
+                    long due = start + i * NOTE_INTERVAL;
+                    scheduler.schedule(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 60), due);
+                    scheduler.schedule(new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0), due + NOTE_INTERVAL / 2);
+                }
+                
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(start - System.nanoTime() + NUM_NOTES * NOTE_INTERVAL) + 500);
+                System.out.println("Scheduling error: " + scheduler.getSchedulingError());
+            }
+            
+            MidiUtils.closeSynthesizer();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
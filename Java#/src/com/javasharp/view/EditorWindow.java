@@ -1,16 +1,362 @@
-package com.javasharp.view;
-
-import javax.swing.JPanel;
-
-public class EditorWindow
-    extends JPanel
-{
-    private static final long serialVersionUID = 1L;
-    
-    
-    public EditorWindow()
-    {
-        
-    }
-    
-}
+package com.javasharp.view;
+
+import com.javasharp.model.Clef;
+import com.javasharp.model.GroupInstructable;
+import com.javasharp.model.Instructable;
+import com.javasharp.model.LengthedInstructable;
+import com.javasharp.model.Note;
+import com.javasharp.model.Score;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import javax.swing.JPanel;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ * Shows a score as staff notation. Only the systems and measures that intersect the area being painted are drawn, so
+ * the cost of a repaint depends on the size of the window rather than the length of the score. Glyphs come from a
+ * {@link GlyphCache} already scaled to the zoom level, and edits repaint only the measures they touch.
+ * <p>
+ * Layout happens on a {@link LayoutEngine} worker. The window keeps painting with the last layout it was given and
+ * swaps in each new one as it arrives, so edits and resizing never wait for a reflow.
+ */
+public class EditorWindow
+    extends JPanel
+    implements Scrollable
+{
+    private static final long   serialVersionUID = 1L;
+    private static final int    DEFAULT_SPACE    = GlyphCache.SOURCE_SPACE;
+    private static final int    MIN_SPACE        = 4;
+    private static final int    LINES_PER_STAFF  = 5;
+    private static final int    LAST_LINE_POS    = 4;
+    private static final int    NONE             = Integer.MAX_VALUE;
+    
+    private final GlyphCache    glyphs;
+    private final LayoutEngine  layoutEngine;
+    private Score               score;
+    private ScoreLayout         layout;
+    private double              zoom;
+    private int                 space;
+    private boolean             wholeChanged;
+    private int                 changedFrom;
+    private int                 changedTo;
+    
+    
+    public EditorWindow()
+    {
+        glyphs = new GlyphCache();
+        zoom = 1;
+        space = DEFAULT_SPACE;
+        layout = ScoreLayout.compute(null, space, 0);
+        layoutEngine = new LayoutEngine(this::layoutChanged);
+        clearChanged();
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        addComponentListener(new ComponentAdapter()
+        {
+            @Override
+            public void componentResized(ComponentEvent e)
+            {
+                if (getWidth() != layout.getWidth() && score != null)
+                {
+                    relayout();
+                }
+            }
+        });
+    }
+    
+    
+    public void setScore(Score newScore)
+    {
+        score = newScore;
+        relayout();
+    }
+    
+    
+    /**
+     * @return the zoom level, as the scale relative to the size the glyph images are drawn at
+     */
+    public double getZoom()
+    {
+        return zoom;
+    }
+    
+    
+    /**
+     * Sets the zoom level.
+     * 
+     * @param zoom
+     *            the scale relative to the size the glyph images are drawn at
+     */
+    public void setZoom(double zoom)
+    {
+        this.zoom = zoom;
+        space = Math.max(MIN_SPACE, (int)Math.round(zoom * DEFAULT_SPACE));
+        glyphs.setSpace(space);
+        relayout();
+    }
+    
+    
+    /**
+     * Repaints a measure after its contents have changed. It is repainted right away where it is now, and again once
+     * the score has been laid out around it; if that moved any measures, everything from the first one that moved is
+     * repainted.
+     * 
+     * @param measure
+     *            the index of the measure in every part
+     */
+    public void measureChanged(int measure)
+    {
+        changedFrom = Math.min(changedFrom, measure);
+        changedTo = Math.max(changedTo, measure);
+        if (measure < layout.getMeasureCount())
+        {
+            repaint(layout.getMeasureBounds(measure));
+        }
+        layoutEngine.measureChanged(measure);
+    }
+    
+    
+    private void relayout()
+    {
+        wholeChanged = true;
+        layoutEngine.relayout(score, space, getWidth());
+    }
+    
+    
+    private void layoutChanged(ScoreLayout newLayout)
+    {
+        ScoreLayout old = layout;
+        layout = newLayout;
+        if (old.getHeight() != newLayout.getHeight() || old.getWidth() != newLayout.getWidth())
+        {
+            revalidate();
+        }
+        if (wholeChanged)
+        {
+            repaint();
+            wholeChanged = false;
+            clearChanged();
+            return;
+        }
+        
+        int moved = findFirstMoved(old, newLayout, changedFrom, changedTo);
+        if (moved != NONE)
+        {
+            int system = Math.min(newLayout.getSystemOf(Math.min(moved, newLayout.getMeasureCount() - 1)),
+                old.getSystemOf(Math.min(moved, old.getMeasureCount() - 1)));
+            int y = newLayout.getSystemY(Math.max(0, system));
+            repaint(0, y, getWidth(), Math.max(old.getHeight(), newLayout.getHeight()) - y);
+        }
+        int unmoved = Math.min(moved, newLayout.getMeasureCount());
+        for (int measure = changedFrom; measure <= changedTo && measure < unmoved; measure++)
+        {
+            repaint(newLayout.getMeasureBounds(measure));
+        }
+        clearChanged();
+    }
+    
+    
+    /**
+     * Finds the first measure from an index on that is somewhere else in a new layout, or that is only in one of the
+     * layouts. Measures after the changed ones keep their widths, so once a system starts at the same measure in both
+     * layouts past the changes, nothing after it can have moved.
+     * 
+     * @return the index of the measure, or NONE if no measure moved
+     */
+    private static int findFirstMoved(ScoreLayout old, ScoreLayout newLayout, int from, int to)
+    {
+        int common = Math.min(old.getMeasureCount(), newLayout.getMeasureCount());
+        int unmoved = old.getMeasureCount() == newLayout.getMeasureCount() ? NONE : common;
+        for (int measure = from; measure < common; measure++)
+        {
+            int system = old.getSystemOf(measure);
+            if (old.getMeasureX(measure) != newLayout.getMeasureX(measure) ||
+                old.getMeasureWidth(measure) != newLayout.getMeasureWidth(measure) ||
+                system != newLayout.getSystemOf(measure))
+            {
+                return measure;
+            }
+            if (measure > to && old.getFirstMeasure(system) == measure)
+            {
+                return unmoved;
+            }
+        }
+        return unmoved;
+    }
+    
+    
+    private void clearChanged()
+    {
+        changedFrom = NONE;
+        changedTo = -1;
+    }
+    
+    
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        super.paintComponent(g);
+        if (layout.getSystemCount() == 0)
+        {
+            return;
+        }
+        
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstSystem = layout.getSystemAt(clip.y);
+        int lastSystem = layout.getSystemAt(clip.y + clip.height);
+        for (int system = firstSystem; system <= lastSystem; system++)
+        {
+            paintSystem(g, system, clip);
+        }
+    }
+    
+    
+    private void paintSystem(Graphics g, int system, Rectangle clip)
+    {
+        int first = layout.getMeasureAt(system, clip.x);
+        int end = layout.getEndMeasure(system);
+        int left = layout.getStaffLeft();
+        int right = layout.getMeasureX(end - 1) + layout.getMeasureWidth(end - 1);
+        int lineLeft = Math.max(left, clip.x);
+        int lineRight = Math.min(right, clip.x + clip.width);
+        
+        g.setColor(Color.BLACK);
+        for (int part = 0; part < layout.getPartCount(); part++)
+        {
+            int top = layout.getStaffTop(system, part);
+            for (int line = 0; line < LINES_PER_STAFF; line++)
+            {
+                g.drawLine(lineLeft, top + line * space, lineRight, top + line * space);
+            }
+            if (clip.x < layout.getMeasureX(layout.getFirstMeasure(system)))
+            {
+                // Every part starts out in the treble clef
+                GlyphCache.Glyph clef = glyphs.getClef(Clef.TREBLE);
+                if (clef != null)
+                {
+                    clef.draw(g, left, top + 2 * space);
+                }
+            }
+        }
+        
+        for (int measure = first; measure < end && layout.getMeasureX(measure) < clip.x + clip.width; measure++)
+        {
+            paintMeasure(g, system, measure);
+        }
+    }
+    
+    
+    private void paintMeasure(Graphics g, int system, int measure)
+    {
+        int barX = layout.getMeasureX(measure) + layout.getMeasureWidth(measure) - 1;
+        for (int part = 0; part < layout.getPartCount(); part++)
+        {
+            int top = layout.getStaffTop(system, part);
+            g.drawLine(barX, top, barX, top + (LINES_PER_STAFF - 1) * space);
+            
+            Instructable<?> partChild = getChild(score, part);
+            GroupInstructable<?, ?> contents = asGroup(getChild(partChild, measure));
+            for (int i = 0; contents != null && i < contents.getChildCount(); i++)
+            {
+                Instructable<?> child = contents.getChild(i);
+                if (child instanceof LengthedInstructable)
+                {
+                    paintNote(g, (LengthedInstructable<?>)child, layout.getNoteX(measure, i), top + 2 * space);
+                }
+            }
+        }
+    }
+    
+    
+    private void paintNote(Graphics g, LengthedInstructable<?> note, int x, int middleY)
+    {
+        boolean dotted = note.getNumDots() > 0;
+        if (!(note instanceof Note))
+        {
+            GlyphCache.Glyph rest = glyphs.getRest(note.getBaseLength(), dotted);
+            if (rest != null)
+            {
+                rest.draw(g, x, middleY);
+            }
+            return;
+        }
+        
+        int staffPos = ((Note)note).getStaffPos();
+        int y = middleY - staffPos * space / 2;
+        for (int pos = LAST_LINE_POS + 2; pos <= Math.abs(staffPos); pos += 2)
+        {
+            int ledgerY = middleY - Integer.signum(staffPos) * pos * space / 2;
+            g.drawLine(x - space, ledgerY, x + space, ledgerY);
+        }
+        GlyphCache.Glyph glyph = glyphs.getNote(note.getBaseLength(), dotted, staffPos >= 0);
+        if (glyph != null)
+        {
+            glyph.draw(g, x, y);
+        }
+    }
+    
+    
+    private static Instructable<?> getChild(Instructable<?> parent, int index)
+    {
+        GroupInstructable<?, ?> group = asGroup(parent);
+        return group != null && index < group.getChildCount() ? group.getChild(index) : null;
+    }
+    
+    
+    private static GroupInstructable<?, ?> asGroup(Instructable<?> instructable)
+    {
+        return instructable instanceof GroupInstructable ? (GroupInstructable<?, ?>)instructable : null;
+    }
+    
+    
+    @Override
+    public Dimension getPreferredSize()
+    {
+        return new Dimension(layout.getWidth(), layout.getHeight());
+    }
+    
+    
+    @Override
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return getPreferredSize();
+    }
+    
+    
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return 2 * space;
+    }
+    
+    
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+    
+    
+    @Override
+    public boolean getScrollableTracksViewportWidth()
+    {
+        // Systems wrap to the width of the window
+        return true;
+    }
+    
+    
+    @Override
+    public boolean getScrollableTracksViewportHeight()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+package com.javasharp.view;
+
+import com.javasharp.model.Clef;
+import com.javasharp.model.Length;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * The images from res/music_graphics, scaled once to the current staff size so that painting a glyph is a plain image
+ * copy. The images are drawn for a staff space of {@link #SOURCE_SPACE} pixels; changing the staff size throws the
+ * scaled glyphs away and they are scaled again as they are needed.
+ */
+public class GlyphCache
+{
+    /**
+     * The distance between two staff lines that the source images are drawn for.
+     */
+    public static final int                  SOURCE_SPACE     = 10;
+    
+    private static final File                GRAPHICS_FOLDER  = new File("res/music_graphics");
+    private static final int                 SOURCE_HEAD_SIZE = 12;
+    
+    private final Map<String, BufferedImage> sources;
+    private final Map<String, Glyph>         glyphs;
+    private int                              space;
+    
+    
+    public GlyphCache()
+    {
+        sources = new HashMap<>();
+        glyphs = new HashMap<>();
+        space = SOURCE_SPACE;
+    }
+    
+    
+    /**
+     * Sets the staff space that glyphs are scaled to, discarding the glyphs scaled for the old one.
+     * 
+     * @param newSpace
+     *            the distance between two staff lines in pixels
+     */
+    public void setSpace(int newSpace)
+    {
+        if (newSpace != space)
+        {
+            space = newSpace;
+            glyphs.clear();
+        }
+    }
+    
+    
+    /**
+     * Gets a note glyph, anchored at the center of its note head.
+     * 
+     * @param length
+     *            the length of the note
+     * @param dotted
+     *            whether the note has a dot
+     * @param stemDown
+     *            whether the stem points down
+     * @return the glyph, or null if there is no image for it
+     */
+    public Glyph getNote(Length length, boolean dotted, boolean stemDown)
+    {
+        boolean flipped = stemDown && length != Length.WHOLE;
+        String name = "notes/" + getName(length) + (dotted ? "_dotted" : "") + (flipped ? "_flipped" : "");
+        return getGlyph(name, flipped || length == Length.WHOLE ? Anchor.HEAD_AT_TOP : Anchor.HEAD_AT_BOTTOM);
+    }
+    
+    
+    /**
+     * Gets a rest glyph, anchored at its center.
+     * 
+     * @param length
+     *            the length of the rest
+     * @param dotted
+     *            whether the rest has a dot
+     * @return the glyph, or null if there is no image for it
+     */
+    public Glyph getRest(Length length, boolean dotted)
+    {
+        return getGlyph("rests/" + getName(length) + (dotted ? "_dotted" : ""), Anchor.CENTER);
+    }
+    
+    
+    /**
+     * Gets a clef glyph, anchored at its left edge on the line the clef is centered on.
+     * 
+     * @param clef
+     *            the clef
+     * @return the glyph, or null if there is no image for it
+     */
+    public Glyph getClef(Clef clef)
+    {
+        // The tenor clef is the same C clef as the alto clef, only placed on another line
+        Clef image = clef == Clef.TENOR ? Clef.ALTO : clef;
+        return getGlyph("clefs/" + image.name().toLowerCase(Locale.ROOT), Anchor.LEFT);
+    }
+    
+    
+    private Glyph getGlyph(String name, Anchor anchor)
+    {
+        Glyph glyph = glyphs.get(name);
+        if (glyph == null && !glyphs.containsKey(name))
+        {
+            BufferedImage source = getSource(name);
+            if (source != null)
+            {
+                int anchorX = anchor == Anchor.LEFT ? 0 : SOURCE_HEAD_SIZE / 2;
+                int anchorY;
+                switch (anchor)
+                {
+                    case HEAD_AT_TOP:
+                        anchorY = SOURCE_SPACE / 2;
+                        break;
+                    case HEAD_AT_BOTTOM:
+                        anchorY = source.getHeight() - SOURCE_SPACE / 2;
+                        break;
+                    default:
+                        anchorY = source.getHeight() / 2;
+                        break;
+                }
+                glyph = new Glyph(scale(source), scale(anchorX), scale(anchorY));
+            }
+            glyphs.put(name, glyph);
+        }
+        return glyph;
+    }
+    
+    
+    private BufferedImage getSource(String name)
+    {
+        if (!sources.containsKey(name))
+        {
+            BufferedImage source;
+            try
+            {
+                source = ImageIO.read(new File(GRAPHICS_FOLDER, name + ".png"));
+            }
+            catch (IOException e)
+            {
+                source = null;
+            }
+            sources.put(name, source);
+        }
+        return sources.get(name);
+    }
+    
+    
+    private BufferedImage scale(BufferedImage source)
+    {
+        int width = Math.max(1, scale(source.getWidth()));
+        int height = Math.max(1, scale(source.getHeight()));
+        BufferedImage scaled;
+        if (GraphicsEnvironment.isHeadless())
+        {
+            scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        else
+        {
+            // An image in the screen's own format is copied to the screen without any conversion
+            GraphicsConfiguration configuration =
+                GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            scaled = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+    
+    
+    private int scale(int sourcePixels)
+    {
+        return (int)Math.round(sourcePixels * (double)space / SOURCE_SPACE);
+    }
+    
+    
+    private static String getName(Length length)
+    {
+        return length.name().toLowerCase(Locale.ROOT);
+    }
+    
+    
+    /**
+     * Where a glyph is anchored in its source image.
+     */
+    private enum Anchor
+    {
+        HEAD_AT_TOP,
+        HEAD_AT_BOTTOM,
+        CENTER,
+        LEFT
+    }
+    
+    
+    /**
+     * A scaled image and the point in it that is placed where the glyph is drawn.
+     */
+    public static final class Glyph
+    {
+        private final BufferedImage image;
+        private final int           anchorX;
+        private final int           anchorY;
+        
+        
+        private Glyph(BufferedImage image, int anchorX, int anchorY)
+        {
+            this.image = image;
+            this.anchorX = anchorX;
+            this.anchorY = anchorY;
+        }
+        
+        
+        public void draw(Graphics g, int x, int y)
+        {
+            g.drawImage(image, x - anchorX, y - anchorY, null);
+        }
+        
+        
+        public int getWidth()
+        {
+            return image.getWidth();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.javasharp.view;
+
+import com.javasharp.model.util.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+/**
+ * The help pages, as a tree for browsing and an inverted index for searching. The index is built once, on a
+ * background thread, the first time anything asks for it, and is shared by every help dialog after that.
+ * <p>
+ * Each word of a page maps to the pages that use it and how often. Searching looks up every word of the query, the
+ * last one as a prefix so that results show up while it is still being typed, and ranks the pages that have all of
+ * them, with words in a page's title counting for more.
+ */
+final class HelpIndex
+{
+    private static final File                   HELP_FOLDER  = new File("res/help");
+    private static final Pattern                TAG          = Pattern.compile("<[^>]*>");
+    private static final Pattern                WORD         = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int                    TITLE_WEIGHT = 20;
+
+    private static CompletableFuture<HelpIndex> instance;
+
+    private final DefaultMutableTreeNode        root;
+    private final List<HelpItem>                pages;
+    private final NavigableMap<String, int[]>   postings;
+
+
+    private HelpIndex(DefaultMutableTreeNode root, List<HelpItem> pages, NavigableMap<String, int[]> postings)
+    {
+        this.root = root;
+        this.pages = pages;
+        this.postings = postings;
+    }
+
+
+    /**
+     * Gets the help index, starting to build it on a background thread if nothing has asked for it before.
+     *
+     * @return the index, once it is built
+     */
+    static synchronized CompletableFuture<HelpIndex> load()
+    {
+        if (instance == null)
+        {
+            CompletableFuture<HelpIndex> future = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try
+                {
+                    future.complete(build(HELP_FOLDER));
+                }
+                catch (RuntimeException e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }, "Java# help index");
+            thread.setDaemon(true);
+            thread.start();
+            instance = future;
+        }
+        return instance;
+    }
+
+
+    /**
+     * Gets the tree of help pages. The nodes are shared, so they must not be changed.
+     *
+     * @return the root of the tree
+     */
+    DefaultMutableTreeNode getRoot()
+    {
+        return root;
+    }
+
+
+    /**
+     * Finds the pages that contain every word of a query.
+     *
+     * @param query
+     *            the words to look for, the last of which may be unfinished
+     * @return the matching pages, best match first
+     */
+    List<HelpItem> search(String query)
+    {
+        List<String> words = tokenize(query);
+        if (words.isEmpty())
+        {
+            return new ArrayList<>();
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        int[] scores = new int[pages.size()];
+        int[] wordScores = new int[pages.size()];
+        for (int i = 0; i < words.size(); i++)
+        {
+            String word = words.get(i);
+            Arrays.fill(wordScores, 0);
+            if (i == words.size() - 1 && lastIsPrefix)
+            {
+                for (int[] posting : postings.subMap(word, true, word + Character.MAX_VALUE, false).values())
+                {
+                    addPosting(posting, wordScores);
+                }
+            }
+            else
+            {
+                int[] posting = postings.get(word);
+                if (posting != null)
+                {
+                    addPosting(posting, wordScores);
+                }
+            }
+            for (int page = 0; page < scores.length; page++)
+            {
+                // A page that misses any word of the query is out for good
+                if (wordScores[page] == 0 || (i > 0 && scores[page] == 0))
+                {
+                    scores[page] = 0;
+                }
+                else
+                {
+                    scores[page] += wordScores[page];
+                }
+            }
+        }
+
+        List<Integer> matches = new ArrayList<>();
+        for (int page = 0; page < scores.length; page++)
+        {
+            if (scores[page] > 0)
+            {
+                matches.add(page);
+            }
+        }
+        matches.sort(Comparator.comparingInt((Integer page) -> -scores[page]).thenComparing(page -> page));
+        List<HelpItem> results = new ArrayList<>(matches.size());
+        for (int page : matches)
+        {
+            results.add(pages.get(page));
+        }
+        return results;
+    }
+
+
+    private static void addPosting(int[] posting, int[] scores)
+    {
+        for (int i = 0; i < posting.length; i += 2)
+        {
+            scores[posting[i]] += posting[i + 1];
+        }
+    }
+
+
+    private static HelpIndex build(File folder)
+    {
+        DefaultMutableTreeNode root = new DefaultMutableTreeNode(new HelpItem(JavaSharp.PROGRAM_NAME));
+        List<HelpItem> pages = new ArrayList<>();
+        Map<String, Map<Integer, Integer>> counts = new HashMap<>();
+        addNodes(folder, root, pages, counts);
+
+        // Flatten each word's pages into (page, weight) pairs, which take a fraction of the memory of the maps
+        NavigableMap<String, int[]> postings = new TreeMap<>();
+        for (Map.Entry<String, Map<Integer, Integer>> entry : counts.entrySet())
+        {
+            int[] posting = new int[entry.getValue().size() * 2];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> page : new TreeMap<>(entry.getValue()).entrySet())
+            {
+                posting[i++] = page.getKey();
+                posting[i++] = page.getValue();
+            }
+            postings.put(entry.getKey(), posting);
+        }
+        return new HelpIndex(root, pages, postings);
+    }
+
+
+    private static void addNodes(File curFile, DefaultMutableTreeNode node, List<HelpItem> pages,
+        Map<String, Map<Integer, Integer>> counts)
+    {
+        File[] fileList = curFile.listFiles();
+        if (fileList == null)
+        {
+            return;
+        }
+
+        for (File f : fileList)
+        {
+            String fileName = f.getName();
+            if (f.isDirectory())
+            {
+                DefaultMutableTreeNode child = new DefaultMutableTreeNode(new HelpItem(fileName));
+                addNodes(f, child, pages, counts);
+                node.add(child);
+            }
+            else if (fileName.endsWith(FileUtils.HTML_FILE_EXTENSION))
+            {
+                String nameNoExtension = FileUtils.getFileNameNoExtension(fileName);
+                HelpItem item;
+                try
+                {
+                    item = new HelpItem(nameNoExtension, f.toURI().toURL());
+                }
+                catch (MalformedURLException e)
+                {
+                    // If exception is caught, just continue and a node is not added
+                    continue;
+                }
+                node.add(new DefaultMutableTreeNode(item));
+                int page = pages.size();
+                pages.add(item);
+                addWords(nameNoExtension, page, TITLE_WEIGHT, counts);
+                try
+                {
+                    addWords(getText(f), page, 1, counts);
+                }
+                catch (IOException e)
+                {
+                    // The page can still be found by its title
+                }
+            }
+        }
+    }
+
+
+    private static String getText(File page)
+        throws IOException
+    {
+        // Help pages are plain ASCII, and reading them as Latin-1 never fails on a stray byte
+        String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.ISO_8859_1);
+        return TAG.matcher(html).replaceAll(" ").replace("&nbsp;", " ").replace("&amp;", "&");
+    }
+
+
+    private static void addWords(String text, int page, int weight, Map<String, Map<Integer, Integer>> counts)
+    {
+        for (String word : tokenize(text))
+        {
+            counts.computeIfAbsent(word, key -> new HashMap<>()).merge(page, weight, Integer::sum);
+        }
+    }
+
+
+    private static List<String> tokenize(String text)
+    {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find())
+        {
+            words.add(matcher.group());
+        }
+        return words;
+    }
+
+
+    static final class HelpItem
+    {
+        private final String name;
+        private final URL    url;
+
+
+        HelpItem(String name)
+        {
+            this(name, null);
+        }
+
+
+        HelpItem(String name, URL url)
+        {
+            this.name = name;
+            this.url = url;
+        }
+
+
+        URL getUrl()
+        {
+            return url;
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+}
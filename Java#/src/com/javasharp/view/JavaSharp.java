@@ -1,55 +1,268 @@
-package com.javasharp.view;
-
-import java.awt.BorderLayout;
-import java.awt.Dimension;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JOptionPane;
-import com.javasharp.controller.MenuController;
-
-public class JavaSharp
-{
-    public static final String     PROGRAM_NAME  = "Java#";
-    private static final Dimension MIN_DIMENSION = new Dimension(600, 400);
-
-    private final JFrame           mainFrame;
-    private MenuController         menuController;
-
-
-    private JavaSharp()
-    {
-        mainFrame = new JFrame(PROGRAM_NAME);
-        menuController = new MenuController(this);
-
-        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        mainFrame.setMinimumSize(MIN_DIMENSION);
-        mainFrame.setExtendedState(JFrame.MAXIMIZED_BOTH);
-        mainFrame.setLayout(new BorderLayout());
-        mainFrame.setJMenuBar(new MenuBar(menuController));
-        mainFrame.add(new StatusBar(), BorderLayout.SOUTH);
-        mainFrame.add(new HomeScreen(), BorderLayout.CENTER);
-
-        mainFrame.setVisible(true);
-    }
-
-
-    public static void main(String[] args)
-    {
-        new JavaSharp();
-    }
-
-
-    public void showHelpDialog()
-    {
-        new HelpDialog(mainFrame).setVisible(true);
-    }
-
-    public void showAboutDialog()
-    {
-        JLabel label =
-            new JLabel(
-                "<html><center>Created by:<br>Steven Roberts and Taylor Mattison<br>for VT Hacks II 2015<center></html>",
-                JLabel.CENTER);
-        JOptionPane.showMessageDialog(mainFrame, label, "About", JOptionPane.PLAIN_MESSAGE);
-    }
-}
+package com.javasharp.view;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.text.DateFormat;
+import java.util.Date;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import com.javasharp.controller.MenuController;
+import com.javasharp.controller.ScoreFormat;
+import com.javasharp.model.Score;
+import com.javasharp.model.playback.PlaybackMetrics;
+import com.javasharp.model.util.StartupTimer;
+import com.javasharp.model.util.StartupTimer.Phase;
+
+public class JavaSharp
+{
+    public static final String     PROGRAM_NAME  = "Java#";
+    private static final Dimension MIN_DIMENSION = new Dimension(600, 400);
+    private static final double    ZOOM_STEP     = 1.25;
+    private static final double    MIN_ZOOM      = 0.25;
+    private static final double    MAX_ZOOM      = 4;
+
+    private final JFrame           mainFrame;
+    private final StatusBar        statusBar;
+    private final HomeScreen       homeScreen;
+    private EditorWindow           editorWindow;
+    private MenuController         menuController;
+
+
+    private JavaSharp(StartupService startup)
+    {
+        mainFrame = new JFrame(PROGRAM_NAME);
+        statusBar = new StatusBar();
+        homeScreen = new HomeScreen(startup.getHomeImage());
+        menuController = new MenuController(this);
+
+        // Closing the window goes through the same unsaved work prompt as File > Exit
+        mainFrame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        mainFrame.addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowClosing(WindowEvent e)
+            {
+                menuController.exitMenuItem();
+            }
+        });
+        mainFrame.setMinimumSize(MIN_DIMENSION);
+        mainFrame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+        mainFrame.setLayout(new BorderLayout());
+        mainFrame.setJMenuBar(new MenuBar(menuController));
+        mainFrame.add(statusBar, BorderLayout.SOUTH);
+        mainFrame.add(homeScreen, BorderLayout.CENTER);
+
+        mainFrame.setVisible(true);
+        SwingUtilities.invokeLater(() -> StartupTimer.mark(Phase.FRAME_VISIBLE));
+        SwingUtilities.invokeLater(() -> new PlaybackMonitor(statusBar, PlaybackMetrics.getInstance()).start());
+        SwingUtilities.invokeLater(menuController::recoverUnsavedWork);
+    }
+
+
+    public static void main(String[] args)
+    {
+        StartupTimer.mark(Phase.MAIN);
+        PlaybackMetrics.register();
+        // Resources load while the frame is built, instead of one after another on the EDT
+        new JavaSharp(StartupService.start());
+    }
+
+
+    public void showHelpDialog()
+    {
+        new HelpDialog(mainFrame).setVisible(true);
+    }
+
+    /**
+     * Shows a score in the editor, in place of the home screen.
+     *
+     * @param score
+     *            the score to show
+     */
+    public void showScore(Score score)
+    {
+        if (editorWindow == null)
+        {
+            editorWindow = new EditorWindow();
+            mainFrame.remove(homeScreen);
+            mainFrame.add(new JScrollPane(editorWindow), BorderLayout.CENTER);
+            mainFrame.revalidate();
+        }
+        editorWindow.setScore(score);
+    }
+
+
+    /**
+     * Makes the score in the editor one step larger, up to a limit.
+     */
+    public void zoomIn()
+    {
+        zoom(ZOOM_STEP);
+    }
+
+
+    /**
+     * Makes the score in the editor one step smaller, down to a limit.
+     */
+    public void zoomOut()
+    {
+        zoom(1 / ZOOM_STEP);
+    }
+
+
+    private void zoom(double factor)
+    {
+        if (editorWindow != null)
+        {
+            double zoom = Math.min(MAX_ZOOM, Math.max(MIN_ZOOM, editorWindow.getZoom() * factor));
+            if (zoom != editorWindow.getZoom())
+            {
+                editorWindow.setZoom(zoom);
+            }
+        }
+    }
+
+
+    /**
+     * Lays out and repaints the score in the editor from a measure that an edit changed, rather than all of it.
+     *
+     * @param measure
+     *            the index of the measure that changed
+     */
+    public void showMeasureChanged(int measure)
+    {
+        if (editorWindow != null)
+        {
+            editorWindow.measureChanged(measure);
+        }
+    }
+
+
+    /**
+     * Asks the user for a score file or a MIDI file to open.
+     *
+     * @return the chosen file, or null if the user cancelled
+     */
+    public File showOpenDialog()
+    {
+        JFileChooser chooser = createFileChooser("Open", ScoreFormat.SCORE);
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter(ScoreFormat.NOTATION.getDescription(),
+            ScoreFormat.NOTATION.getExtension().substring(1)));
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter(ScoreFormat.MIDI.getDescription(), "mid", "midi"));
+        return chooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION ? chooser.getSelectedFile() : null;
+    }
+
+
+    /**
+     * Asks the user where to save the score.
+     *
+     * @return the chosen file, or null if the user cancelled
+     */
+    public File showSaveDialog()
+    {
+        return showSaveDialog(createFileChooser("Save", ScoreFormat.SCORE), ScoreFormat.SCORE.getExtension());
+    }
+
+
+    /**
+     * Asks the user where to export the score as audio.
+     *
+     * @return the chosen file, or null if the user cancelled
+     */
+    public File showExportDialog()
+    {
+        return showSaveDialog(createFileChooser("Export", ScoreFormat.WAVE), ScoreFormat.WAVE.getExtension());
+    }
+
+
+    private JFileChooser createFileChooser(String title, ScoreFormat format)
+    {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(title);
+        chooser.setFileFilter(new FileNameExtensionFilter(format.getDescription(), format.getExtension().substring(1)));
+        return chooser;
+    }
+
+
+    private File showSaveDialog(JFileChooser chooser, String extension)
+    {
+        if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+        {
+            return null;
+        }
+        File file = chooser.getSelectedFile();
+        return file.getName().contains(".") ? file : new File(file.getPath() + extension);
+    }
+
+
+    /**
+     * Posts a message to the status bar. May be called from any thread.
+     */
+    public void postMessage(String message)
+    {
+        SwingUtilities.invokeLater(() -> statusBar.postMessage(message));
+    }
+
+
+    /**
+     * Posts an error to the status bar. May be called from any thread.
+     */
+    public void postError(String error)
+    {
+        SwingUtilities.invokeLater(() -> statusBar.postError(error));
+    }
+
+
+    /**
+     * Asks the user whether to save the changes to the score before they are lost.
+     *
+     * @param name
+     *            the name of the score
+     * @return {@link JOptionPane#YES_OPTION} to save, {@link JOptionPane#NO_OPTION} to throw the changes away, or
+     *         {@link JOptionPane#CANCEL_OPTION} to keep working
+     */
+    public int showSaveChangesDialog(String name)
+    {
+        int choice = JOptionPane.showConfirmDialog(mainFrame, "Save the changes to " + name + "?", PROGRAM_NAME,
+            JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+        return choice == JOptionPane.CLOSED_OPTION ? JOptionPane.CANCEL_OPTION : choice;
+    }
+
+
+    /**
+     * Asks the user whether to recover work that was left unsaved.
+     *
+     * @param name
+     *            the name of the score
+     * @param time
+     *            when the work was last autosaved, in milliseconds since the epoch
+     * @return {@link JOptionPane#YES_OPTION} to recover the work, {@link JOptionPane#NO_OPTION} to throw it away, or
+     *         {@link JOptionPane#CANCEL_OPTION} to decide the next time
+     */
+    public int showRecoverDialog(String name, long time)
+    {
+        String when = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT).format(new Date(time));
+        int choice = JOptionPane.showConfirmDialog(mainFrame,
+            PROGRAM_NAME + " did not exit cleanly. Recover the unsaved work on " + name + " from " + when + "?",
+            "Recover Unsaved Work", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        return choice == JOptionPane.CLOSED_OPTION ? JOptionPane.CANCEL_OPTION : choice;
+    }
+
+
+    public void showAboutDialog()
+    {
+        JLabel label =
+            new JLabel(
+                "<html><center>Created by:<br>Steven Roberts and Taylor Mattison<br>for VT Hacks II 2015<center></html>",
+                JLabel.CENTER);
+        JOptionPane.showMessageDialog(mainFrame, label, "About", JOptionPane.PLAIN_MESSAGE);
+    }
+}
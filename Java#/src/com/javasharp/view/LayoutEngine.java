@@ -0,0 +1,162 @@
+package com.javasharp.view;
+
+import com.javasharp.model.Score;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Lays out a score on a worker thread so that the event thread never waits for a reflow. Each request bumps a
+ * generation number; a layout that is overtaken by a newer request is abandoned part way, and only a layout for the
+ * newest request is handed to the listener, on the event thread.
+ * <p>
+ * The score is read without locking. A layout that overlaps an edit may see the score half changed, but the edit
+ * always requests a newer layout, so that one is discarded.
+ */
+public final class LayoutEngine
+{
+    private static final int            NONE = Integer.MAX_VALUE;
+    
+    private final Consumer<ScoreLayout> listener;
+    private final ExecutorService       executor;
+    private volatile long               generation;
+    
+    private Score                       score;
+    private int                         space;
+    private int                         width;
+    private int                         dirtyFrom;
+    private boolean                     scheduled;
+    private ScoreLayout                 layout;
+    
+    
+    /**
+     * Creates a layout engine.
+     * 
+     * @param listener
+     *            called on the event thread with each new layout
+     */
+    public LayoutEngine(Consumer<ScoreLayout> listener)
+    {
+        this.listener = listener;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Java# layout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dirtyFrom = NONE;
+    }
+    
+    
+    /**
+     * Lays out a whole score.
+     * 
+     * @param newScore
+     *            the score to lay out, or null for an empty layout
+     * @param newSpace
+     *            the distance between two staff lines in pixels
+     * @param newWidth
+     *            the width to fit the systems into
+     */
+    public synchronized void relayout(Score newScore, int newSpace, int newWidth)
+    {
+        score = newScore;
+        space = newSpace;
+        width = newWidth;
+        request(0);
+    }
+    
+    
+    /**
+     * Lays out the score again from the system holding a changed measure.
+     * 
+     * @param measure
+     *            the index of the measure that changed
+     */
+    public synchronized void measureChanged(int measure)
+    {
+        request(measure);
+    }
+    
+    
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+    
+    
+    private void request(int fromMeasure)
+    {
+        generation++;
+        dirtyFrom = Math.min(dirtyFrom, fromMeasure);
+        if (!scheduled)
+        {
+            scheduled = true;
+            executor.execute(this::run);
+        }
+    }
+    
+    
+    private void run()
+    {
+        while (true)
+        {
+            long started;
+            Score target;
+            int targetSpace;
+            int targetWidth;
+            int from;
+            ScoreLayout previous;
+            synchronized (this)
+            {
+                if (dirtyFrom == NONE)
+                {
+                    scheduled = false;
+                    return;
+                }
+                started = generation;
+                target = score;
+                targetSpace = space;
+                targetWidth = width;
+                from = dirtyFrom;
+                previous = layout;
+                dirtyFrom = NONE;
+            }
+            
+            ScoreLayout result;
+            try
+            {
+                result = ScoreLayout.compute(target, targetSpace, targetWidth, previous, from,
+                    () -> generation != started);
+            }
+            catch (RuntimeException e)
+            {
+                synchronized (this)
+                {
+                    if (generation == started)
+                    {
+                        scheduled = false;
+                        throw e;
+                    }
+                }
+                // The score was edited while it was being read
+                result = null;
+            }
+            
+            synchronized (this)
+            {
+                if (result != null && generation == started)
+                {
+                    layout = result;
+                    ScoreLayout published = result;
+                    SwingUtilities.invokeLater(() -> listener.accept(published));
+                }
+                else
+                {
+                    // Overtaken: the next pass has to cover what this one did not finish
+                    dirtyFrom = Math.min(dirtyFrom, from);
+                }
+            }
+        }
+    }
+}
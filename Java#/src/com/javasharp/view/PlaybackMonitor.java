@@ -0,0 +1,62 @@
+package com.javasharp.view;
+
+import com.javasharp.model.playback.PlaybackMetrics;
+import javax.swing.Timer;
+
+/**
+ * Watches the {@link PlaybackMetrics} from the event thread and tells the user through the status bar when playback
+ * crosses a threshold: an error as soon as any event is sent late or dropped, and a message the first time a score
+ * takes long enough to compile that starting playback would feel slow.
+ */
+final class PlaybackMonitor
+{
+    private static final int      CHECK_MILLIS        = 1000;
+    private static final double   SLOW_COMPILE_MILLIS = 250;
+    
+    private final StatusBar       statusBar;
+    private final PlaybackMetrics metrics;
+    private final Timer           timer;
+    private long                  lateEvents;
+    private long                  droppedEvents;
+    private boolean               slowCompileReported;
+    
+    
+    PlaybackMonitor(StatusBar statusBar, PlaybackMetrics metrics)
+    {
+        this.statusBar = statusBar;
+        this.metrics = metrics;
+        timer = new Timer(CHECK_MILLIS, e -> check());
+    }
+    
+    
+    void start()
+    {
+        timer.start();
+    }
+    
+    
+    void stop()
+    {
+        timer.stop();
+    }
+    
+    
+    private void check()
+    {
+        long late = metrics.getLateEventCount();
+        long dropped = metrics.getDroppedEventCount();
+        if (late > lateEvents || dropped > droppedEvents)
+        {
+            statusBar.postError("Playback stuttered: " + metrics.getSummary());
+        }
+        // The counters go back down if the metrics are reset over JMX
+        lateEvents = late;
+        droppedEvents = dropped;
+        
+        if (!slowCompileReported && metrics.getMaxCompileMillis() > SLOW_COMPILE_MILLIS)
+        {
+            slowCompileReported = true;
+            statusBar.postMessage(String.format("Compiling the score took %.0f ms", metrics.getMaxCompileMillis()));
+        }
+    }
+}
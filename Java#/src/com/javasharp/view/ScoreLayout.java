@@ -0,0 +1,349 @@
+package com.javasharp.view;
+
+import com.javasharp.model.GroupInstructable;
+import com.javasharp.model.Instructable;
+import com.javasharp.model.Score;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Where the measures of a score go on screen: how wide each measure is and which measures share a system, the row of
+ * staves, one per part, that the score wraps onto. All distances are whole multiples of the staff space, so a layout
+ * for one zoom level is the same as any other, only scaled.
+ * <p>
+ * A layout is immutable, so a new one can be built on a worker thread while the editor keeps painting with the last
+ * one. Finding the measures in a rectangle is a binary search, so painting only looks at the measures that are
+ * actually visible.
+ */
+public final class ScoreLayout
+{
+    private static final int SPACES_PER_STAFF      = 10;
+    private static final int SPACES_PER_GAP        = 4;
+    private static final int MARGIN_SPACES         = 2;
+    private static final int CLEF_SPACES           = 4;
+    private static final int NOTE_SPACES           = 3;
+    private static final int PADDING_SPACES        = 2;
+    private static final int MIN_NOTE_COUNT        = 1;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+    
+    private final int        space;
+    private final int        width;
+    private final int        partCount;
+    private final int[]      measureX;
+    private final int[]      measureWidths;
+    private final int[]      systemStarts;
+    
+    
+    private ScoreLayout(int space, int width, int partCount, int[] measureX, int[] measureWidths, int[] systemStarts)
+    {
+        this.space = space;
+        this.width = width;
+        this.partCount = partCount;
+        this.measureX = measureX;
+        this.measureWidths = measureWidths;
+        this.systemStarts = systemStarts;
+    }
+    
+    
+    /**
+     * Lays out a score.
+     * 
+     * @param score
+     *            the score to lay out, or null for an empty layout
+     * @param space
+     *            the distance between two staff lines in pixels
+     * @param width
+     *            the width to fit the systems into
+     * @return the layout
+     */
+    public static ScoreLayout compute(Score score, int space, int width)
+    {
+        return compute(score, space, width, null, 0, () -> false);
+    }
+    
+    
+    /**
+     * Lays out a score again after some of its measures have changed. The systems before the one holding the first
+     * changed measure are kept from the previous layout, and only the rest are laid out again.
+     * 
+     * @param score
+     *            the score to lay out, or null for an empty layout
+     * @param space
+     *            the distance between two staff lines in pixels
+     * @param width
+     *            the width to fit the systems into
+     * @param previous
+     *            the layout before the change, or null to lay out the whole score
+     * @param fromMeasure
+     *            the first measure that changed
+     * @param cancelled
+     *            checked every so often, to give up on a layout that is no longer needed
+     * @return the layout, or null if it was cancelled
+     */
+    static ScoreLayout compute(
+        Score score,
+        int space,
+        int width,
+        ScoreLayout previous,
+        int fromMeasure,
+        BooleanSupplier cancelled)
+    {
+        int partCount = score == null ? 0 : score.getChildCount();
+        int measureCount = 0;
+        for (int part = 0; part < partCount; part++)
+        {
+            measureCount = Math.max(measureCount, getCount(score.getChild(part)));
+        }
+        
+        int firstSystem = 0;
+        if (previous != null && previous.space == space && previous.width == width && previous.partCount == partCount &&
+            previous.getSystemCount() > 0)
+        {
+            // A measure that got narrower may now fit at the end of the system before its own
+            int changedSystem = previous.getSystemOf(Math.min(fromMeasure, previous.getMeasureCount() - 1));
+            if (changedSystem > 0 && previous.systemStarts[changedSystem] == fromMeasure)
+            {
+                changedSystem--;
+            }
+            firstSystem = changedSystem;
+        }
+        int firstMeasure = firstSystem == 0 ? 0 : previous.systemStarts[firstSystem];
+        
+        int[] measureWidths = new int[measureCount];
+        int[] measureX = new int[measureCount];
+        int[] systemStarts = new int[measureCount + 1];
+        if (firstMeasure > 0)
+        {
+            System.arraycopy(previous.measureWidths, 0, measureWidths, 0, firstMeasure);
+            System.arraycopy(previous.measureX, 0, measureX, 0, firstMeasure);
+            System.arraycopy(previous.systemStarts, 0, systemStarts, 0, firstSystem);
+        }
+        
+        for (int part = 0; part < partCount; part++)
+        {
+            GroupInstructable<?, ?> group = asGroup(score.getChild(part));
+            for (int measure = firstMeasure; group != null && measure < group.getChildCount(); measure++)
+            {
+                int notes = Math.max(MIN_NOTE_COUNT, getCount(group.getChild(measure)));
+                int measureWidth = (2 * PADDING_SPACES + notes * NOTE_SPACES) * space;
+                measureWidths[measure] = Math.max(measureWidths[measure], measureWidth);
+                if (measure % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean())
+                {
+                    return null;
+                }
+            }
+        }
+        
+        int systemCount = firstSystem;
+        int firstX = (MARGIN_SPACES + CLEF_SPACES) * space;
+        int right = width - MARGIN_SPACES * space;
+        int x = firstX;
+        for (int measure = firstMeasure; measure < measureCount; measure++)
+        {
+            if (measure == firstMeasure || (x + measureWidths[measure] > right && x > firstX))
+            {
+                systemStarts[systemCount++] = measure;
+                x = firstX;
+            }
+            measureX[measure] = x;
+            x += measureWidths[measure];
+        }
+        systemStarts[systemCount] = measureCount;
+        return new ScoreLayout(space, width, partCount, measureX, measureWidths,
+            Arrays.copyOf(systemStarts, systemCount + 1));
+    }
+    
+    
+    public int getSpace()
+    {
+        return space;
+    }
+    
+    
+    public int getWidth()
+    {
+        return width;
+    }
+    
+    
+    public int getHeight()
+    {
+        return getSystemY(getSystemCount()) + MARGIN_SPACES * space;
+    }
+    
+    
+    public int getPartCount()
+    {
+        return partCount;
+    }
+    
+    
+    public int getMeasureCount()
+    {
+        return measureX.length;
+    }
+    
+    
+    public int getSystemCount()
+    {
+        return systemStarts.length - 1;
+    }
+    
+    
+    public int getSystemHeight()
+    {
+        return (partCount * SPACES_PER_STAFF + SPACES_PER_GAP) * space;
+    }
+    
+    
+    public int getSystemY(int system)
+    {
+        return MARGIN_SPACES * space + system * getSystemHeight();
+    }
+    
+    
+    /**
+     * Gets the y of the top line of a part's staff.
+     * 
+     * @param system
+     *            the index of the system
+     * @param part
+     *            the index of the part
+     * @return the y of the top staff line
+     */
+    public int getStaffTop(int system, int part)
+    {
+        // Leave room for three ledger lines above the staff
+        return getSystemY(system) + part * SPACES_PER_STAFF * space + 3 * space;
+    }
+    
+    
+    public int getStaffLeft()
+    {
+        return MARGIN_SPACES * space;
+    }
+    
+    
+    /**
+     * Gets the system at a y, clamped to the systems there are.
+     * 
+     * @param y
+     *            the y
+     * @return the index of the system
+     */
+    public int getSystemAt(int y)
+    {
+        int system = (y - MARGIN_SPACES * space) / Math.max(1, getSystemHeight());
+        return Math.max(0, Math.min(system, getSystemCount() - 1));
+    }
+    
+    
+    public int getFirstMeasure(int system)
+    {
+        return systemStarts[system];
+    }
+    
+    
+    /**
+     * Gets the index of the measure after the last measure of a system.
+     * 
+     * @param system
+     *            the index of the system
+     * @return the end of the system's measures, exclusive
+     */
+    public int getEndMeasure(int system)
+    {
+        return systemStarts[system + 1];
+    }
+    
+    
+    public int getSystemOf(int measure)
+    {
+        int index = Arrays.binarySearch(systemStarts, 0, systemStarts.length - 1, measure);
+        return index >= 0 ? index : -index - 2;
+    }
+    
+    
+    /**
+     * Gets the first measure of a system that ends after an x.
+     * 
+     * @param system
+     *            the index of the system
+     * @param x
+     *            the x
+     * @return the index of the measure, or the end of the system if no measure of it ends after x
+     */
+    public int getMeasureAt(int system, int x)
+    {
+        int low = systemStarts[system];
+        int high = systemStarts[system + 1];
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (measureX[middle] + measureWidths[middle] <= x)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    
+    public int getMeasureX(int measure)
+    {
+        return measureX[measure];
+    }
+    
+    
+    public int getMeasureWidth(int measure)
+    {
+        return measureWidths[measure];
+    }
+    
+    
+    /**
+     * Gets the x of a note or rest in a measure.
+     * 
+     * @param measure
+     *            the index of the measure
+     * @param index
+     *            the index of the note or rest in the measure
+     * @return the x of the center of its note head
+     */
+    public int getNoteX(int measure, int index)
+    {
+        return measureX[measure] + PADDING_SPACES * space + index * NOTE_SPACES * space + NOTE_SPACES * space / 2;
+    }
+    
+    
+    /**
+     * Gets the area a measure is painted in, across every part of its system.
+     * 
+     * @param measure
+     *            the index of the measure
+     * @return the bounds of the measure
+     */
+    public Rectangle getMeasureBounds(int measure)
+    {
+        return new Rectangle(measureX[measure], getSystemY(getSystemOf(measure)), measureWidths[measure],
+            getSystemHeight());
+    }
+    
+    
+    private static int getCount(Instructable<?> instructable)
+    {
+        GroupInstructable<?, ?> group = asGroup(instructable);
+        return group == null ? 0 : group.getChildCount();
+    }
+    
+    
+    private static GroupInstructable<?, ?> asGroup(Instructable<?> instructable)
+    {
+        return instructable instanceof GroupInstructable ? (GroupInstructable<?, ?>)instructable : null;
+    }
+}
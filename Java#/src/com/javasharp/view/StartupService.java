@@ -0,0 +1,104 @@
+package com.javasharp.view;
+
+import com.javasharp.model.MusicException;
+import com.javasharp.model.util.MidiUtils;
+import com.javasharp.model.util.StartupTimer;
+import com.javasharp.model.util.StartupTimer.Phase;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+
+/**
+ * Loads what the program needs soon after it starts, in parallel on background threads, while the main frame is being
+ * built and shown: the home screen image, the help index and the synthesizer with its soundbank. Nothing waits for
+ * any of it; whoever needs a resource first either finds it ready or waits only for what is left.
+ */
+final class StartupService
+{
+    private static final Logger                   LOGGER     = Logger.getLogger(StartupService.class.getName());
+    private static final File                     HOME_IMAGE = new File("res/music_graphics/music.jpg");
+    private static final int                      THREADS    = 2;
+    
+    private final CompletableFuture<BufferedImage> homeImage;
+    
+    
+    private StartupService(ExecutorService executor)
+    {
+        homeImage = CompletableFuture.supplyAsync(StartupService::readHomeImage, executor);
+        HelpIndex.load().thenRun(() -> StartupTimer.mark(Phase.HELP_INDEXED));
+        executor.execute(StartupService::openSynthesizer);
+    }
+    
+    
+    /**
+     * Starts loading everything in the background.
+     * 
+     * @return the service, for getting at the resources as they are loaded
+     */
+    static StartupService start()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "Java# startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StartupService service = new StartupService(executor);
+        // The threads finish the tasks already given to them and then end
+        executor.shutdown();
+        return service;
+    }
+    
+    
+    /**
+     * Gets the image shown on the home screen.
+     * 
+     * @return the image, once it is loaded, or a future that fails if it cannot be read
+     */
+    CompletableFuture<BufferedImage> getHomeImage()
+    {
+        return homeImage;
+    }
+    
+    
+    private static BufferedImage readHomeImage()
+    {
+        try
+        {
+            BufferedImage image = ImageIO.read(HOME_IMAGE);
+            if (image == null)
+            {
+                throw new IOException("Unknown image format: " + HOME_IMAGE);
+            }
+            StartupTimer.mark(Phase.IMAGES_LOADED);
+            return image;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    
+    private static void openSynthesizer()
+    {
+        try
+        {
+            // Opening the synthesizer loads its soundbank, which is what makes the first note slow to sound
+            MidiUtils.getSynthesizer();
+            MidiUtils.getInstruments();
+            StartupTimer.mark(Phase.SYNTHESIZER_READY);
+        }
+        catch (MusicException e)
+        {
+            // Playback tries again when it is asked for, and reports the error then
+            LOGGER.log(Level.WARNING, "Unable to preload the synthesizer", e);
+        }
+    }
+}